@@ -1,13 +1,22 @@
 package com.gruelbox.transactionoutbox.acceptance;
 
-import com.gruelbox.transactionoutbox.Dialect;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gruelbox.transactionoutbox.*;
 import com.gruelbox.transactionoutbox.testing.AbstractAcceptanceTest;
+import com.gruelbox.transactionoutbox.testing.InterfaceProcessor;
+import com.gruelbox.transactionoutbox.testing.LatchListener;
 import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.JdbcDatabaseContainer;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+@Slf4j
 @SuppressWarnings("WeakerAccess")
 @Testcontainers
 class TestPostgres16 extends AbstractAcceptanceTest {
@@ -30,4 +39,66 @@ class TestPostgres16 extends AbstractAcceptanceTest {
         .password(container.getPassword())
         .build();
   }
+
+  /**
+   * Ordered work is never processed by the scheduling instance, and nothing calls {@link
+   * TransactionOutbox#flush()} here, so the work only gets done if the notification wakes up the
+   * listening instance.
+   */
+  @Test
+  void notifyWakesListeningInstance() throws Exception {
+    var persistor =
+        DefaultPersistor.builder()
+            .dialect(connectionDetails().dialect())
+            .notifyChannel("txno_test")
+            .build();
+    var latch = new CountDownLatch(3);
+    var scheduling =
+        TransactionOutbox.builder()
+            .transactionManager(txManager())
+            .persistor(persistor)
+            .instantiator(Instantiator.using(clazz -> (InterfaceProcessor) (foo, bar) -> {}))
+            .build();
+    var listening =
+        TransactionOutbox.builder()
+            .transactionManager(txManager())
+            .persistor(persistor)
+            .instantiator(
+                Instantiator.using(
+                    clazz ->
+                        (InterfaceProcessor)
+                            (foo, bar) -> log.info("Processing ({}, {})", foo, bar)))
+            .listener(new LatchListener(latch))
+            .build();
+    clearOutbox();
+
+    try (var listener =
+        PgNotifyListener.builder()
+            .outbox(listening)
+            .connectionProvider(
+                () -> {
+                  try {
+                    return dataSource.getConnection();
+                  } catch (Exception e) {
+                    throw new RuntimeException(e);
+                  }
+                })
+            .channel("txno_test")
+            .build()) {
+      listener.start();
+      Thread.sleep(500);
+      txManager()
+          .inTransaction(
+              () -> {
+                for (int i = 1; i <= 3; i++) {
+                  scheduling
+                      .with()
+                      .ordered("topic")
+                      .schedule(InterfaceProcessor.class)
+                      .process(i, "x");
+                }
+              });
+      assertTrue(latch.await(10, SECONDS));
+    }
+  }
 }
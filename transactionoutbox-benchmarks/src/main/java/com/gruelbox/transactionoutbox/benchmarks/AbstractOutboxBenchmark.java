@@ -0,0 +1,77 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import static com.gruelbox.transactionoutbox.spi.Utils.uncheck;
+
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.TransactionOutbox.TransactionOutboxBuilder;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Common setup for benchmarks which need a real database and a fully wired {@link
+ * TransactionOutbox}. Each trial gets a fresh, empty outbox table.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractOutboxBenchmark {
+
+  /** A submitter which drops everything, so that only the work of the outbox itself is timed. */
+  protected static final Submitter DISCARD = (entry, localExecutor) -> {};
+
+  @Param({"H2", "POSTGRES"})
+  public String database;
+
+  protected TransactionManager transactionManager;
+  protected DefaultPersistor persistor;
+  protected TransactionOutbox outbox;
+
+  private BenchmarkDatabase db;
+
+  @Setup(Level.Trial)
+  public final void setupOutbox() throws Exception {
+    db = BenchmarkDatabase.start(database);
+    transactionManager = TransactionManager.fromDataSource(db.dataSource());
+    persistor = Persistor.forDialect(db.dialect());
+    outbox =
+        configure(
+                TransactionOutbox.builder()
+                    .transactionManager(transactionManager)
+                    .persistor(persistor)
+                    .instantiator(
+                        Instantiator.using(clazz -> (BenchmarkService) (id, payload) -> {})))
+            .build();
+    outbox.initialize();
+    clearOutbox();
+    afterSetup();
+  }
+
+  @TearDown(Level.Trial)
+  public final void tearDownOutbox() throws Exception {
+    db.close();
+  }
+
+  /**
+   * Applies benchmark-specific configuration to the outbox.
+   *
+   * @param builder The builder, with the transaction manager, persistor and instantiator set.
+   * @return The builder.
+   */
+  protected abstract TransactionOutboxBuilder configure(TransactionOutboxBuilder builder);
+
+  /** Called once the outbox has been initialized, to set up any initial data. */
+  protected void afterSetup() {
+    // No-op by default
+  }
+
+  protected final void clearOutbox() {
+    transactionManager.inTransaction(tx -> uncheck(() -> persistor.clear(tx)));
+  }
+}
@@ -0,0 +1,66 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.Dialect;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import javax.sql.DataSource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+/**
+ * A database instance for benchmarks to run against. H2 runs in-memory; Postgres runs as a real
+ * server process via embedded-postgres, so no Docker is required.
+ */
+@Accessors(fluent = true)
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final class BenchmarkDatabase implements AutoCloseable {
+
+  @Getter private final Dialect dialect;
+  private final HikariDataSource pool;
+  private final AutoCloseable server;
+
+  static BenchmarkDatabase start(String type) throws IOException {
+    switch (type) {
+      case "H2":
+        return new BenchmarkDatabase(
+            Dialect.H2,
+            pool(
+                "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DEFAULT_LOCK_TIMEOUT=60000;MV_STORE=TRUE;DATABASE_TO_UPPER=FALSE",
+                "test",
+                "test"),
+            () -> {});
+      case "POSTGRES":
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder().start();
+        return new BenchmarkDatabase(
+            Dialect.POSTGRESQL_9,
+            pool(postgres.getJdbcUrl("postgres", "postgres"), "postgres", "postgres"),
+            postgres);
+      default:
+        throw new IllegalArgumentException("Unknown database " + type);
+    }
+  }
+
+  private static HikariDataSource pool(String url, String user, String password) {
+    HikariConfig config = new HikariConfig();
+    config.setJdbcUrl(url);
+    config.setUsername(user);
+    config.setPassword(password);
+    config.setMaximumPoolSize(Runtime.getRuntime().availableProcessors() * 2);
+    config.addDataSourceProperty("cachePrepStmts", "true");
+    return new HikariDataSource(config);
+  }
+
+  DataSource dataSource() {
+    return pool;
+  }
+
+  @Override
+  public void close() throws Exception {
+    pool.close();
+    server.close();
+  }
+}
@@ -0,0 +1,18 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+/**
+ * The target of all the benchmarked outbox calls. Does nothing, so only outbox overhead is timed.
+ */
+public interface BenchmarkService {
+
+  String PAYLOAD = "The quick brown fox jumps over the lazy dog";
+
+  void process(int id, String payload);
+
+  /** Class-based equivalent of {@link BenchmarkService}, for exercising subclass proxies. */
+  class ClassBased {
+    public void process(int id, String payload) {
+      // No-op
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox.TransactionOutboxBuilder;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single call to {@link com.gruelbox.transactionoutbox.TransactionOutbox#flush()}
+ * against a fixed backlog. The outbox clock is moved forward past the attempt frequency before each
+ * call, so every entry in the backlog is due again and gets selected and pushed back each time,
+ * without the backlog needing to be recreated.
+ */
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FlushBenchmark extends AbstractOutboxBenchmark {
+
+  private static final Duration ATTEMPT_FREQUENCY = Duration.ofMinutes(2);
+
+  @Param({"100", "1000"})
+  public int backlog;
+
+  @Param({"false", "true"})
+  public boolean ordered;
+
+  private final AtomicReference<Instant> now = new AtomicReference<>(Instant.now());
+
+  @Override
+  protected TransactionOutboxBuilder configure(TransactionOutboxBuilder builder) {
+    return builder
+        .submitter(DISCARD)
+        .attemptFrequency(ATTEMPT_FREQUENCY)
+        .clockProvider(() -> Clock.fixed(now.get(), ZoneOffset.UTC));
+  }
+
+  @Override
+  protected void afterSetup() {
+    for (int i = 0; i < backlog; i += 100) {
+      int start = i;
+      transactionManager.inTransaction(
+          () -> {
+            for (int j = start; j < Math.min(start + 100, backlog); j++) {
+              (ordered ? outbox.with().ordered("topic" + j) : outbox.with())
+                  .schedule(BenchmarkService.class)
+                  .process(j, BenchmarkService.PAYLOAD);
+            }
+          });
+    }
+  }
+
+  @Benchmark
+  public boolean flush() {
+    now.updateAndGet(it -> it.plus(ATTEMPT_FREQUENCY).plusSeconds(1));
+    return outbox.flush();
+  }
+}
@@ -0,0 +1,66 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox.TransactionOutboxBuilder;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the processing path: locking an entry, invoking it and deleting it (or marking it
+ * processed, if it has a unique request id). A fresh entry is scheduled outside the measurement
+ * before each call.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProcessNowBenchmark extends AbstractOutboxBenchmark {
+
+  @Param({"false", "true"})
+  public boolean idempotent;
+
+  private final BlockingQueue<TransactionOutboxEntry> submitted = new LinkedBlockingQueue<>();
+
+  @Override
+  protected TransactionOutboxBuilder configure(TransactionOutboxBuilder builder) {
+    return builder.submitter((entry, localExecutor) -> submitted.add(entry));
+  }
+
+  @State(Scope.Thread)
+  public static class Pending {
+
+    TransactionOutboxEntry entry;
+
+    @Setup(Level.Invocation)
+    public void schedule(ProcessNowBenchmark benchmark) throws InterruptedException {
+      benchmark.transactionManager.inTransaction(
+          () ->
+              (benchmark.idempotent
+                      ? benchmark.outbox.with().uniqueRequestId(UUID.randomUUID().toString())
+                      : benchmark.outbox.with())
+                  .schedule(BenchmarkService.class)
+                  .process(1, BenchmarkService.PAYLOAD));
+      entry = benchmark.submitted.take();
+    }
+  }
+
+  @Benchmark
+  public void processNow(Pending pending) {
+    outbox.processNow(pending.entry);
+  }
+}
@@ -0,0 +1,53 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.spi.ProxyFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what {@code schedule(...)} pays for proxying on every call: creating the proxy and
+ * dispatching a method call through it, for both interfaces and classes.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ProxyFactoryBenchmark {
+
+  private final ProxyFactory proxyFactory = new ProxyFactory();
+
+  @Benchmark
+  public void interfaceProxy(Blackhole blackhole) {
+    proxyFactory
+        .createProxy(
+            BenchmarkService.class,
+            (method, args) -> {
+              blackhole.consume(args);
+              return null;
+            })
+        .process(1, BenchmarkService.PAYLOAD);
+  }
+
+  @Benchmark
+  public void classProxy(Blackhole blackhole) {
+    proxyFactory
+        .createProxy(
+            BenchmarkService.ClassBased.class,
+            (method, args) -> {
+              blackhole.consume(args);
+              return null;
+            })
+        .process(1, BenchmarkService.PAYLOAD);
+  }
+}
@@ -0,0 +1,57 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox.TransactionOutboxBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the write path: scheduling work inside a committed transaction. Submission is discarded
+ * so the result covers proxying, serialization, the insert and the commit, but not processing.
+ *
+ * <p>Run with {@code -t} greater than 1 to measure contention, particularly with {@code
+ * ordered=true}, where every entry goes to the same topic.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ScheduleBenchmark extends AbstractOutboxBenchmark {
+
+  @Param({"false", "true"})
+  public boolean ordered;
+
+  @Param({"1", "10"})
+  public int entriesPerTransaction;
+
+  @Override
+  protected TransactionOutboxBuilder configure(TransactionOutboxBuilder builder) {
+    return builder.submitter(DISCARD);
+  }
+
+  @TearDown(Level.Iteration)
+  public void clear() {
+    clearOutbox();
+  }
+
+  @Benchmark
+  public void schedule() {
+    transactionManager.inTransaction(
+        () -> {
+          for (int i = 0; i < entriesPerTransaction; i++) {
+            (ordered ? outbox.with().ordered("benchmark") : outbox.with())
+                .schedule(BenchmarkService.class)
+                .process(i, BenchmarkService.PAYLOAD);
+          }
+        });
+  }
+}
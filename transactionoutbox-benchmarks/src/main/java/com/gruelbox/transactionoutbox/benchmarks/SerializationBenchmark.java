@@ -0,0 +1,80 @@
+package com.gruelbox.transactionoutbox.benchmarks;
+
+import com.gruelbox.transactionoutbox.BinaryInvocationSerializer;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the default JSON {@link InvocationSerializer} and {@link BinaryInvocationSerializer} in
+ * isolation, in both directions.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+  private final InvocationSerializer serializer =
+      InvocationSerializer.createDefaultJsonSerializer();
+
+  private final Invocation invocation =
+      new Invocation(
+          BenchmarkService.class.getName(),
+          "process",
+          new Class<?>[] {int.class, String.class, Instant.class, Long.class},
+          new Object[] {42, BenchmarkService.PAYLOAD, Instant.now(), 123456789L});
+
+  private final InvocationSerializer binarySerializer =
+      BinaryInvocationSerializer.builder().build();
+
+  private String serialized;
+  private byte[] serializedBinary;
+
+  @Setup
+  public void setup() {
+    serialized = serialize();
+    serializedBinary = serializeBinary();
+  }
+
+  @Benchmark
+  public String serialize() {
+    StringWriter writer = new StringWriter();
+    serializer.serializeInvocation(invocation, writer);
+    return writer.toString();
+  }
+
+  @Benchmark
+  public Invocation deserialize() {
+    return serializer.deserializeInvocation(new StringReader(serialized));
+  }
+
+  @Benchmark
+  public byte[] serializeBinary() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    binarySerializer.serializeInvocation(invocation, out);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public Invocation deserializeBinary() {
+    return binarySerializer.deserializeInvocation(new ByteArrayInputStream(serializedBinary));
+  }
+}
@@ -0,0 +1,98 @@
+package com.gruelbox.transactionoutbox;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Saves and loads {@link TransactionOutboxEntry}s for an {@link AsyncTransactionOutbox}. The
+ * non-blocking counterpart of {@link Persistor}, with the same semantics for each operation, except
+ * that failures are signalled by completing the returned stage exceptionally rather than by
+ * throwing.
+ *
+ * <p>Implementations share the schema of {@link DefaultPersistor}, but need not apply migrations
+ * themselves.
+ */
+public interface AsyncPersistor {
+
+  /**
+   * Saves a new {@link TransactionOutboxEntry}. Completes with {@link AlreadyScheduledException} if
+   * the record already exists based on the {@code id} or {@code uniqueRequestId}.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param entry The entry to save.
+   * @return Completes when saved.
+   */
+  CompletionStage<Void> save(AsyncTransaction tx, TransactionOutboxEntry entry);
+
+  /**
+   * Deletes a {@link TransactionOutboxEntry} if both the {@code id} and {@code version} match.
+   * Completes with {@link OptimisticLockException} if no such record is found.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param entry The entry to be deleted.
+   * @return Completes when deleted.
+   */
+  CompletionStage<Void> delete(AsyncTransaction tx, TransactionOutboxEntry entry);
+
+  /**
+   * Modifies an existing {@link TransactionOutboxEntry} if both the {@code id} and {@code version}
+   * match, incrementing the version on the entry. Completes with {@link OptimisticLockException} if
+   * no such record is found.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param entry The entry to be updated.
+   * @return Completes when updated.
+   */
+  CompletionStage<Void> update(AsyncTransaction tx, TransactionOutboxEntry entry);
+
+  /**
+   * Attempts to pessimistically lock an existing {@link TransactionOutboxEntry}, reloading its
+   * invocation from the database if successful.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param entry The entry to be locked.
+   * @return Completes with true if the lock was successful.
+   */
+  CompletionStage<Boolean> lock(AsyncTransaction tx, TransactionOutboxEntry entry);
+
+  /**
+   * Clears the blocked flag and resets the attempt count to zero.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param entryId The entry id.
+   * @return Completes with true if the entry was found and was blocked.
+   */
+  CompletionStage<Boolean> unblock(AsyncTransaction tx, String entryId);
+
+  /**
+   * Selects up to a specified maximum number of unordered, non-blocked, unprocessed entries due for
+   * processing, pessimistically locking them.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param batchSize The number of records to select.
+   * @param now The time to use when selecting records.
+   * @return Completes with the records.
+   */
+  CompletionStage<List<TransactionOutboxEntry>> selectBatch(
+      AsyncTransaction tx, int batchSize, Instant now);
+
+  /**
+   * Deletes records which have processed and passed their expiry time, in specified batch sizes.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @param batchSize The maximum number of records to delete.
+   * @param now The time to use when selecting records.
+   * @return Completes with the number of records deleted.
+   */
+  CompletionStage<Integer> deleteProcessedAndExpired(
+      AsyncTransaction tx, int batchSize, Instant now);
+
+  /**
+   * Deletes all records. For testing.
+   *
+   * @param tx The current {@link AsyncTransaction}.
+   * @return Completes when cleared.
+   */
+  CompletionStage<Void> clear(AsyncTransaction tx);
+}
@@ -0,0 +1,24 @@
+package com.gruelbox.transactionoutbox;
+
+/**
+ * Access to a currently-active transaction managed by an {@link AsyncTransactionManager}. The
+ * non-blocking counterpart of {@link Transaction}.
+ */
+public interface AsyncTransaction {
+
+  /**
+   * @param <T> The context type. Coerced on read.
+   * @return An {@link AsyncTransactionManager}-specific object representing the context of this
+   *     transaction, such as the underlying connection, for use by {@link AsyncPersistor}
+   *     implementations.
+   */
+  <T> T context();
+
+  /**
+   * Will be called to perform work immediately after the current transaction is committed. This
+   * will generally run on the thread which completed the commit, so must not block.
+   *
+   * @param runnable The code to run post-commit.
+   */
+  void addPostCommitHook(Runnable runnable);
+}
@@ -0,0 +1,23 @@
+package com.gruelbox.transactionoutbox;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Gives {@link AsyncTransactionOutbox} access to a non-blocking database client, such as R2DBC or
+ * the Vert.x SQL client. The non-blocking counterpart of {@link TransactionManager}.
+ */
+public interface AsyncTransactionManager {
+
+  /**
+   * Runs some work in a new transaction, which is committed if the work completes normally and
+   * rolled back if it completes exceptionally. Post-commit hooks registered with {@link
+   * AsyncTransaction#addPostCommitHook(Runnable)} are run once the commit succeeds.
+   *
+   * @param work The work, which should compose all of its database calls into the stage it returns.
+   * @param <T> The result type.
+   * @return The result of the work, completing once the transaction has been committed or rolled
+   *     back.
+   */
+  <T> CompletionStage<T> transactionally(Function<AsyncTransaction, CompletionStage<T>> work);
+}
@@ -0,0 +1,545 @@
+package com.gruelbox.transactionoutbox;
+
+import static com.gruelbox.transactionoutbox.spi.Utils.logAtLevel;
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+
+import com.gruelbox.transactionoutbox.spi.ProxyFactory;
+import com.gruelbox.transactionoutbox.spi.Utils;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+
+/**
+ * A non-blocking variant of {@link TransactionOutbox}, for reactive applications using a database
+ * client such as R2DBC or the Vert.x SQL client, which schedules and processes work without
+ * blocking the calling thread. Database access goes through an {@link AsyncTransactionManager} and
+ * {@link AsyncPersistor}, and every operation returns a {@link CompletionStage}.
+ *
+ * <p>Usage:
+ *
+ * <pre>transactionManager.transactionally(tx -&gt;
+ *     doSomeWork(tx)
+ *         .thenCompose(__ -&gt; outbox.schedule(tx, MyService.class, s -&gt; s.send("foo"))));
+ * </pre>
+ *
+ * <p>Once the transaction commits, the call is made immediately, and if it fails, reattempted
+ * whenever {@link #flush()} is called, as for {@link TransactionOutbox}. Methods returning a {@link
+ * CompletionStage} are treated as complete, successfully or otherwise, when that stage completes.
+ * Methods may accept an {@link AsyncTransaction} parameter, which is passed {@code null} when
+ * scheduling and the transaction in which the work is processed when it is invoked.
+ *
+ * <p>Only unordered work is supported: there is no equivalent of {@link
+ * TransactionOutbox.ParameterizedScheduleBuilder#ordered(String)}. The {@link Instantiator} is
+ * called on the thread completing the lock, so must not block.
+ */
+@Slf4j
+public final class AsyncTransactionOutbox implements Validatable {
+
+  private final AsyncTransactionManager transactionManager;
+  private final AsyncPersistor persistor;
+  private final Instantiator instantiator;
+  private final Duration attemptFrequency;
+  private final Level logLevelTemporaryFailure;
+  private final int blockAfterAttempts;
+  private final int flushBatchSize;
+  private final int flushConcurrency;
+  private final Supplier<Clock> clockProvider;
+  private final TransactionOutboxListener listener;
+  private final Duration retentionThreshold;
+  private final Validator validator;
+  private final ProxyFactory proxyFactory = new ProxyFactory();
+
+  /**
+   * @param transactionManager Provides transactions. Required.
+   * @param persistor Saves and loads entries. Required.
+   * @param instantiator Responsible for describing a class as a name and creating instances of that
+   *     class at runtime. Defaults to {@link Instantiator#usingReflection()}.
+   * @param attemptFrequency How often tasks should be re-attempted. Defaults to 2 minutes.
+   * @param logLevelTemporaryFailure The log level to use when logging temporary task failures.
+   *     Defaults to {@code WARN}.
+   * @param blockAfterAttempts How many attempts a task should be retried before it is permanently
+   *     blocked. Defaults to 5.
+   * @param flushBatchSize How many items should be attempted in each flush. Defaults to 4096.
+   * @param flushConcurrency How many items in a flushed batch may be processed at the same time.
+   *     Each one holds a connection while its transaction is open, so this should be comfortably
+   *     below the size of the connection pool. Defaults to 16.
+   * @param clockProvider The {@link Clock} source. Defaults to the system clock.
+   * @param listener Event listener. Defaults to none.
+   * @param retentionThreshold The length of time that any request with a unique client id will be
+   *     remembered, such that if the same request is repeated within the threshold period, {@link
+   *     AlreadyScheduledException} will be thrown. Defaults to 7 days.
+   */
+  @Builder
+  AsyncTransactionOutbox(
+      AsyncTransactionManager transactionManager,
+      AsyncPersistor persistor,
+      Instantiator instantiator,
+      Duration attemptFrequency,
+      Level logLevelTemporaryFailure,
+      int blockAfterAttempts,
+      int flushBatchSize,
+      int flushConcurrency,
+      Supplier<Clock> clockProvider,
+      TransactionOutboxListener listener,
+      Duration retentionThreshold) {
+    this.transactionManager = transactionManager;
+    this.persistor = persistor;
+    this.instantiator = Utils.firstNonNull(instantiator, Instantiator::usingReflection);
+    this.attemptFrequency = Utils.firstNonNull(attemptFrequency, () -> Duration.of(2, MINUTES));
+    this.logLevelTemporaryFailure = Utils.firstNonNull(logLevelTemporaryFailure, () -> Level.WARN);
+    this.blockAfterAttempts = blockAfterAttempts < 1 ? 5 : blockAfterAttempts;
+    this.flushBatchSize = flushBatchSize < 1 ? 4096 : flushBatchSize;
+    this.flushConcurrency = flushConcurrency < 1 ? 16 : flushConcurrency;
+    this.clockProvider = clockProvider == null ? Clock::systemDefaultZone : clockProvider;
+    this.listener = Utils.firstNonNull(listener, () -> TransactionOutboxListener.EMPTY);
+    this.retentionThreshold = retentionThreshold == null ? Duration.ofDays(7) : retentionThreshold;
+    this.validator = new Validator(this.clockProvider);
+    validator.validate(this);
+  }
+
+  @Override
+  public void validate(Validator validator) {
+    validator.notNull("transactionManager", transactionManager);
+    validator.valid("persistor", persistor);
+    validator.valid("instantiator", instantiator);
+    validator.notNull("attemptFrequency", attemptFrequency);
+    validator.min("blockAfterAttempts", blockAfterAttempts, 1);
+    validator.min("flushBatchSize", flushBatchSize, 1);
+    validator.min("flushConcurrency", flushConcurrency, 1);
+    validator.notNull("retentionThreshold", retentionThreshold);
+  }
+
+  /**
+   * Saves a call to be made after the transaction commits. The call is recorded by calling exactly
+   * one method on the proxy of {@code clazz} passed to {@code call}.
+   *
+   * <p>Usage:
+   *
+   * <pre>outbox.schedule(tx, MyService.class, s -&gt; s.runMyMethod("with", "some", "arguments"))
+   * </pre>
+   *
+   * @param tx The transaction in which to save the call.
+   * @param clazz The class to proxy.
+   * @param call Makes the call to record on the proxy.
+   * @param <T> The type to proxy.
+   * @return Completes once the call is saved, or exceptionally with {@link
+   *     AlreadyScheduledException} if a {@code uniqueRequestId} is reused.
+   */
+  public <T> CompletionStage<Void> schedule(
+      AsyncTransaction tx, Class<T> clazz, Consumer<? super T> call) {
+    return with().schedule(tx, clazz, call);
+  }
+
+  /**
+   * Starts building a call with additional options, as for {@link TransactionOutbox#with()}.
+   *
+   * @return Builder.
+   */
+  public AsyncScheduleBuilder with() {
+    return new AsyncScheduleBuilder();
+  }
+
+  /**
+   * Selects a batch of work due for processing or reattempting and processes it, as for {@link
+   * TransactionOutbox#flush()}, and then deletes expired idempotency records. Should be called
+   * periodically.
+   *
+   * @return Completes with true if any work was found, once it has all been attempted.
+   */
+  public CompletionStage<Boolean> flush() {
+    Instant now = clockProvider.get().instant();
+    return transactionManager
+        .<List<TransactionOutboxEntry>>transactionally(
+            tx ->
+                persistor
+                    .selectBatch(tx, flushBatchSize, now)
+                    .thenCompose(
+                        batch -> {
+                          // A connection runs one statement at a time, so chain the updates
+                          CompletionStage<Void> pushedBack = completedFuture(null);
+                          for (TransactionOutboxEntry entry : batch) {
+                            pushedBack = pushedBack.thenCompose(__ -> pushBack(tx, entry));
+                          }
+                          return pushedBack.thenApply(__ -> batch);
+                        }))
+        .thenCompose(
+            batch -> {
+              log.debug("Got batch of {}", batch.size());
+              return processAll(batch)
+                  .thenCompose(__ -> expireIdempotencyProtection(now))
+                  .thenApply(__ -> !batch.isEmpty());
+            });
+  }
+
+  /**
+   * Processes the batch using at most {@link #flushConcurrency} parallel chains, each of which
+   * takes the next entry from a shared queue once its previous entry is done. Every entry is
+   * attempted even if another fails; the first failure, if any, fails the returned stage.
+   */
+  private CompletionStage<Void> processAll(List<TransactionOutboxEntry> batch) {
+    Queue<TransactionOutboxEntry> queue = new ConcurrentLinkedQueue<>(batch);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    CompletableFuture<?>[] chains =
+        IntStream.range(0, Math.min(flushConcurrency, batch.size()))
+            .mapToObj(__ -> processQueued(queue, failure).toCompletableFuture())
+            .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(chains)
+        .thenCompose(
+            __ -> failure.get() == null ? completedFuture(null) : failedFuture(failure.get()));
+  }
+
+  private CompletionStage<Void> processQueued(
+      Queue<TransactionOutboxEntry> queue, AtomicReference<Throwable> failure) {
+    TransactionOutboxEntry entry = queue.poll();
+    if (entry == null) {
+      return completedFuture(null);
+    }
+    return processNow(entry)
+        .handle(
+            (__, error) -> {
+              if (error != null) {
+                failure.compareAndSet(null, unwrap(error));
+              }
+              return null;
+            })
+        .thenCompose(__ -> processQueued(queue, failure));
+  }
+
+  /**
+   * Clears a failed entry of its failed state and resets the attempt count so that it will be
+   * retried again on the next flush.
+   *
+   * @param entryId The entry id.
+   * @return Completes with true if the entry was found and was blocked.
+   */
+  public CompletionStage<Boolean> unblock(String entryId) {
+    return transactionManager.transactionally(tx -> unblock(entryId, tx));
+  }
+
+  /**
+   * As {@link #unblock(String)}, but in an existing transaction.
+   *
+   * @param entryId The entry id.
+   * @param tx The transaction.
+   * @return Completes with true if the entry was found and was blocked.
+   */
+  public CompletionStage<Boolean> unblock(String entryId, AsyncTransaction tx) {
+    return persistor
+        .unblock(tx, entryId)
+        .thenApply(
+            unblocked -> {
+              if (unblocked) {
+                log.info("Unblocked {}", entryId);
+              } else {
+                log.info("No blocked entry found for {}", entryId);
+              }
+              return unblocked;
+            });
+  }
+
+  /**
+   * Processes an entry immediately in a new transaction, recording the failure if it fails. For use
+   * by {@link #flush()} and immediately after scheduling; not generally needed by callers.
+   *
+   * @param entry The entry.
+   * @return Completes once the entry has been processed or its failure recorded. Never completes
+   *     exceptionally.
+   */
+  public CompletionStage<Void> processNow(TransactionOutboxEntry entry) {
+    AtomicReference<Object> result = new AtomicReference<>();
+    return transactionManager
+        .<Boolean>transactionally(
+            tx ->
+                persistor
+                    .lock(tx, entry)
+                    .thenCompose(
+                        locked -> {
+                          if (!locked) {
+                            return completedFuture(false);
+                          }
+                          log.info("Processing {}", entry.description());
+                          return invoke(entry, tx)
+                              .thenCompose(
+                                  it -> {
+                                    result.set(it);
+                                    return markProcessed(tx, entry);
+                                  })
+                              .thenApply(__ -> true);
+                        }))
+        .handle(
+            (success, error) -> {
+              if (error != null) {
+                return updateAttemptCount(entry, unwrap(error));
+              }
+              if (success) {
+                log.info("Processed {}", entry.description());
+                listener.success(entry, result.get());
+              } else {
+                log.debug("Skipped task {} - may be locked or already processed", entry.getId());
+              }
+              return CompletableFuture.<Void>completedFuture(null);
+            })
+        .thenCompose(Function.identity());
+  }
+
+  private <T> CompletionStage<Void> schedule(
+      AsyncTransaction tx,
+      Class<T> clazz,
+      Consumer<? super T> call,
+      String uniqueRequestId,
+      int priority,
+      Duration delayForAtLeast) {
+    TransactionOutboxEntry entry;
+    try {
+      entry =
+          TransactionOutboxEntry.builder()
+              .id(UUID.randomUUID().toString())
+              .invocation(record(clazz, call))
+              .nextAttemptTime(
+                  delayForAtLeast == null
+                      ? clockProvider.get().instant()
+                      : clockProvider.get().instant().plus(delayForAtLeast))
+              .uniqueRequestId(uniqueRequestId)
+              .priority(priority)
+              .build();
+      validator.validate(entry);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+    return persistor
+        .save(tx, entry)
+        .thenRun(() -> tx.addPostCommitHook(() -> afterCommit(entry, delayForAtLeast)));
+  }
+
+  private <T> Invocation record(Class<T> clazz, Consumer<? super T> call) {
+    AtomicReference<Invocation> recorded = new AtomicReference<>();
+    T proxy =
+        proxyFactory.createProxy(
+            clazz,
+            (method, args) -> {
+              if (recorded.get() != null) {
+                throw new IllegalStateException("Only one method may be called on the proxy");
+              }
+              Class<?>[] parameterTypes = method.getParameterTypes();
+              Object[] saved = args == null ? new Object[0] : args.clone();
+              for (int i = 0; i < parameterTypes.length; i++) {
+                if (parameterTypes[i] == AsyncTransaction.class) {
+                  saved[i] = null;
+                }
+              }
+              recorded.set(
+                  new Invocation(
+                      instantiator.getName(method.getDeclaringClass()),
+                      method.getName(),
+                      parameterTypes,
+                      saved));
+              return null;
+            });
+    call.accept(proxy);
+    if (recorded.get() == null) {
+      throw new IllegalStateException("No method called on proxy");
+    }
+    return recorded.get();
+  }
+
+  private void afterCommit(TransactionOutboxEntry entry, Duration delayForAtLeast) {
+    listener.scheduled(entry);
+    if (delayForAtLeast == null) {
+      log.info("Scheduled {} for post-commit execution", entry.description());
+      processNow(entry);
+    } else {
+      log.info("Queued {} for execution after at least {}", entry.description(), delayForAtLeast);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private CompletionStage<Object> invoke(TransactionOutboxEntry entry, AsyncTransaction tx) {
+    try {
+      Invocation invocation = entry.getInvocation();
+      Object instance = instantiator.getInstance(invocation.getClassName());
+      log.debug("Created instance {}", instance);
+      Object result = injectTransaction(invocation, tx).invoke(entry, instance, listener);
+      if (result instanceof CompletionStage) {
+        return (CompletionStage<Object>) result;
+      }
+      return completedFuture(result);
+    } catch (InvocationTargetException e) {
+      return failedFuture(e.getCause());
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+
+  private Invocation injectTransaction(Invocation invocation, AsyncTransaction tx) {
+    Class<?>[] parameterTypes = invocation.getParameterTypes();
+    Object[] args = invocation.getArgs() == null ? new Object[0] : invocation.getArgs().clone();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (parameterTypes[i] == AsyncTransaction.class) {
+        args[i] = tx;
+      }
+    }
+    return new Invocation(
+        invocation.getClassName(),
+        invocation.getMethodName(),
+        parameterTypes,
+        args,
+        invocation.getMdc());
+  }
+
+  private CompletionStage<Void> markProcessed(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    if (entry.getUniqueRequestId() == null) {
+      return persistor.delete(tx, entry);
+    }
+    log.debug("Deferring deletion of {} by {}", entry.description(), retentionThreshold);
+    entry.setProcessed(true);
+    entry.setLastAttemptTime(Instant.now(clockProvider.get()));
+    entry.setNextAttemptTime(after(retentionThreshold));
+    return persistor.update(tx, entry);
+  }
+
+  private CompletionStage<Void> pushBack(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    try {
+      entry.setLastAttemptTime(clockProvider.get().instant());
+      entry.setNextAttemptTime(after(attemptFrequency));
+      validator.validate(entry);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+    return persistor.update(tx, entry);
+  }
+
+  private CompletionStage<Void> updateAttemptCount(TransactionOutboxEntry entry, Throwable cause) {
+    entry.setAttempts(entry.getAttempts() + 1);
+    boolean blocked = entry.getAttempts() >= blockAfterAttempts;
+    entry.setBlocked(blocked);
+    return transactionManager
+        .transactionally(tx -> pushBack(tx, entry))
+        .handle(
+            (__, e) -> {
+              if (e != null) {
+                log.error(
+                    "Failed to update attempt count for {}. It may be retried more times than expected.",
+                    entry.description(),
+                    unwrap(e));
+                return null;
+              }
+              listener.failure(entry, cause);
+              if (blocked) {
+                log.error(
+                    "Blocking failing entry {} after {} attempts: {}",
+                    entry.getId(),
+                    entry.getAttempts(),
+                    entry.description(),
+                    cause);
+                listener.blocked(entry, cause);
+              } else {
+                logAtLevel(
+                    log,
+                    logLevelTemporaryFailure,
+                    "Temporarily failed to process entry {} : {}",
+                    entry.getId(),
+                    entry.description(),
+                    cause);
+              }
+              return null;
+            });
+  }
+
+  private CompletionStage<Void> expireIdempotencyProtection(Instant now) {
+    return transactionManager
+        .transactionally(tx -> persistor.deleteProcessedAndExpired(tx, flushBatchSize, now))
+        .thenAccept(
+            count -> {
+              if (count > 0) {
+                log.info("Expired idempotency protection on {} requests", count);
+              }
+            });
+  }
+
+  private Instant after(Duration duration) {
+    return clockProvider.get().instant().plus(duration).truncatedTo(MILLIS);
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  /** Builds a call with additional options. */
+  public final class AsyncScheduleBuilder {
+
+    private String uniqueRequestId;
+    private int priority;
+    private Duration delayForAtLeast;
+
+    private AsyncScheduleBuilder() {}
+
+    /**
+     * @param uniqueRequestId Unique request id, as for {@link
+     *     TransactionOutbox.ParameterizedScheduleBuilder#uniqueRequestId(String)}.
+     * @return Builder.
+     */
+    public AsyncScheduleBuilder uniqueRequestId(String uniqueRequestId) {
+      this.uniqueRequestId = uniqueRequestId;
+      return this;
+    }
+
+    /**
+     * @param priority Priority, as for {@link
+     *     TransactionOutbox.ParameterizedScheduleBuilder#priority(int)}.
+     * @return Builder.
+     */
+    public AsyncScheduleBuilder priority(int priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * @param delayForAtLeast The minimum delay before processing. Delayed work is left for {@link
+     *     #flush()} rather than processed immediately after commit.
+     * @return Builder.
+     */
+    public AsyncScheduleBuilder delayForAtLeast(Duration delayForAtLeast) {
+      this.delayForAtLeast = delayForAtLeast;
+      return this;
+    }
+
+    /**
+     * As {@link AsyncTransactionOutbox#schedule(AsyncTransaction, Class, Consumer)}, with the
+     * options set on this builder.
+     *
+     * @param tx The transaction in which to save the call.
+     * @param clazz The class to proxy.
+     * @param call Makes the call to record on the proxy.
+     * @param <T> The type to proxy.
+     * @return Completes once the call is saved.
+     */
+    public <T> CompletionStage<Void> schedule(
+        AsyncTransaction tx, Class<T> clazz, Consumer<? super T> call) {
+      if (uniqueRequestId != null && uniqueRequestId.length() > 250) {
+        return failedFuture(
+            new IllegalArgumentException("uniqueRequestId may be up to 250 characters"));
+      }
+      return AsyncTransactionOutbox.this.schedule(
+          tx, clazz, call, uniqueRequestId, priority, delayForAtLeast);
+    }
+  }
+}
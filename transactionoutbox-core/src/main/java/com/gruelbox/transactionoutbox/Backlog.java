@@ -0,0 +1,18 @@
+package com.gruelbox.transactionoutbox;
+
+import java.time.Instant;
+import lombok.Value;
+
+/** A summary of the work waiting in the outbox, as returned by {@link Persistor#selectBacklog}. */
+@Value
+public class Backlog {
+
+  /** The number of unprocessed, unblocked records. */
+  long size;
+
+  /**
+   * The earliest {@link TransactionOutboxEntry#getNextAttemptTime()} of any unprocessed, unblocked
+   * record, or null if there are none.
+   */
+  Instant oldestNextAttemptTime;
+}
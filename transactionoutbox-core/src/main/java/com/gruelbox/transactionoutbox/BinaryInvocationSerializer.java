@@ -0,0 +1,559 @@
+package com.gruelbox.transactionoutbox;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import lombok.Builder;
+
+/**
+ * A compact binary alternative to {@link DefaultInvocationSerializer}, supporting exactly the same
+ * types. Where the JSON format repeats a type name for every parameter and argument, this writes a
+ * small numeric code from a fixed table of the supported JDK types, and values are written in
+ * binary rather than as text. Custom types passed to {@link
+ * BinaryInvocationSerializerBuilder#serializableTypes(Set)} are named once per invocation and
+ * referred to by index thereafter. Enums are written by name, and other custom types as GSON JSON.
+ *
+ * <p>{@link DefaultPersistor} and {@link PgSeqPersistor} store the output in the {@code
+ * invocationBinary} column rather than {@code invocation}. Existing rows written as JSON by {@link
+ * DefaultInvocationSerializer} are still read, so this can be swapped in on a live outbox. The
+ * reverse is not true: once binary entries have been written, they can only be read by this class.
+ *
+ * <p>{@link #serializeInvocation(Invocation, Writer)} and {@link #deserializeInvocation(Reader)}
+ * use the JSON format, for use where text is required (such as shipping entries between instances).
+ */
+public final class BinaryInvocationSerializer implements InvocationSerializer {
+
+  private static final int MAGIC = 0xB7;
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int NULL_ARG = 0;
+  private static final int ARG_OF_PARAMETER_TYPE = 1;
+  private static final int ARG_OF_OTHER_TYPE = 2;
+
+  private static final int ARRAY_TYPE = 100;
+  private static final int CUSTOM_TYPE = 101;
+
+  /**
+   * The supported JDK types. A type's code is its position in this list plus one, and is persisted,
+   * so this list may only ever be appended to.
+   */
+  private static final List<Class<?>> TYPE_TABLE =
+      List.of(
+          byte.class,
+          short.class,
+          int.class,
+          long.class,
+          float.class,
+          double.class,
+          boolean.class,
+          char.class,
+          Byte.class,
+          Short.class,
+          Integer.class,
+          Long.class,
+          Float.class,
+          Double.class,
+          Boolean.class,
+          Character.class,
+          BigDecimal.class,
+          String.class,
+          Date.class,
+          UUID.class,
+          DayOfWeek.class,
+          Duration.class,
+          Instant.class,
+          LocalDate.class,
+          LocalDateTime.class,
+          ZonedDateTime.class,
+          Month.class,
+          MonthDay.class,
+          Period.class,
+          Year.class,
+          YearMonth.class,
+          ZoneOffset.class,
+          ChronoUnit.class,
+          Transaction.class,
+          TransactionContextPlaceholder.class,
+          AsyncTransaction.class);
+
+  private static final Map<Class<?>, Integer> TYPE_CODES = new HashMap<>();
+
+  static {
+    for (int i = 0; i < TYPE_TABLE.size(); i++) {
+      TYPE_CODES.put(TYPE_TABLE.get(i), i + 1);
+    }
+  }
+
+  private static final Map<Class<?>, Class<?>> BOXED_TYPES =
+      Map.of(
+          byte.class, Byte.class,
+          short.class, Short.class,
+          int.class, Integer.class,
+          long.class, Long.class,
+          float.class, Float.class,
+          double.class, Double.class,
+          boolean.class, Boolean.class,
+          char.class, Character.class);
+
+  private final DefaultInvocationSerializer jsonSerializer;
+  private final Map<String, Class<?>> customTypes = new HashMap<>();
+
+  /**
+   * @param serializableTypes Additional types to support, as for {@link
+   *     DefaultInvocationSerializer}.
+   */
+  @Builder
+  BinaryInvocationSerializer(Set<Class<?>> serializableTypes) {
+    Set<Class<?>> types = serializableTypes == null ? Set.of() : serializableTypes;
+    this.jsonSerializer = DefaultInvocationSerializer.builder().serializableTypes(types).build();
+    types.forEach(type -> customTypes.put(type.getName(), type));
+  }
+
+  @Override
+  public boolean isBinary() {
+    return true;
+  }
+
+  @Override
+  public void serializeInvocation(Invocation invocation, Writer writer) {
+    jsonSerializer.serializeInvocation(invocation, writer);
+  }
+
+  @Override
+  public Invocation deserializeInvocation(Reader reader) {
+    return jsonSerializer.deserializeInvocation(reader);
+  }
+
+  @Override
+  public void serializeInvocation(Invocation invocation, OutputStream outputStream) {
+    try {
+      var encoder = new Encoder(new DataOutputStream(outputStream));
+      encoder.write(invocation);
+      encoder.out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Cannot serialize " + invocation, e);
+    }
+  }
+
+  @Override
+  public Invocation deserializeInvocation(InputStream inputStream) {
+    InputStream in =
+        inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+    try {
+      in.mark(1);
+      if (in.read() != MAGIC) {
+        // Written as JSON, before switching to this serializer
+        in.reset();
+        return jsonSerializer.deserializeInvocation(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+      }
+      return new Decoder(new DataInputStream(in)).read();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Class<?> boxed(Class<?> type) {
+    return type.isPrimitive() ? BOXED_TYPES.get(type) : type;
+  }
+
+  private final class Encoder {
+
+    private final DataOutputStream out;
+    private final Map<Class<?>, Integer> dictionary = new IdentityHashMap<>();
+
+    Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void write(Invocation invocation) throws IOException {
+      out.writeByte(MAGIC);
+      out.writeByte(FORMAT_VERSION);
+      writeString(invocation.getClassName());
+      writeString(invocation.getMethodName());
+      Class<?>[] parameterTypes = invocation.getParameterTypes();
+      Object[] args = invocation.getArgs();
+      writeVarInt(parameterTypes.length);
+      for (Class<?> parameterType : parameterTypes) {
+        writeType(parameterType);
+      }
+      for (int i = 0; i < parameterTypes.length; i++) {
+        Object arg = args[i];
+        if (arg == null) {
+          out.writeByte(NULL_ARG);
+        } else if (arg.getClass() == boxed(parameterTypes[i])) {
+          out.writeByte(ARG_OF_PARAMETER_TYPE);
+          writeValue(arg.getClass(), arg);
+        } else {
+          out.writeByte(ARG_OF_OTHER_TYPE);
+          writeType(arg.getClass());
+          writeValue(arg.getClass(), arg);
+        }
+      }
+      Map<String, String> mdc = invocation.getMdc();
+      if (mdc == null) {
+        writeVarInt(0);
+      } else {
+        writeVarInt(mdc.size() + 1);
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+          writeString(entry.getKey());
+          writeString(entry.getValue());
+        }
+      }
+    }
+
+    private void writeType(Class<?> type) throws IOException {
+      Integer code = TYPE_CODES.get(type);
+      if (code != null) {
+        writeVarInt(code);
+      } else if (type.isArray()) {
+        writeVarInt(ARRAY_TYPE);
+        writeType(type.getComponentType());
+      } else if (customTypes.get(type.getName()) == type) {
+        writeVarInt(CUSTOM_TYPE);
+        Integer index = dictionary.get(type);
+        if (index == null) {
+          writeVarInt(dictionary.size());
+          writeString(type.getName());
+          dictionary.put(type, dictionary.size());
+        } else {
+          writeVarInt(index);
+        }
+      } else {
+        throw new IllegalArgumentException("Cannot serialize class - not found: " + type.getName());
+      }
+    }
+
+    private void writeValue(Class<?> type, Object value) throws IOException {
+      if (type.isArray()) {
+        writeArray(type.getComponentType(), value);
+      } else if (type == Integer.class) {
+        writeVarLong((Integer) value);
+      } else if (type == Long.class) {
+        writeVarLong((Long) value);
+      } else if (type == String.class) {
+        writeString((String) value);
+      } else if (type == Boolean.class) {
+        out.writeBoolean((Boolean) value);
+      } else if (type == Byte.class) {
+        out.writeByte((Byte) value);
+      } else if (type == Short.class) {
+        out.writeShort((Short) value);
+      } else if (type == Character.class) {
+        out.writeChar((Character) value);
+      } else if (type == Float.class) {
+        out.writeFloat((Float) value);
+      } else if (type == Double.class) {
+        out.writeDouble((Double) value);
+      } else if (type == BigDecimal.class) {
+        writeString(value.toString());
+      } else if (type == Date.class) {
+        writeVarLong(((Date) value).getTime());
+      } else if (type == UUID.class) {
+        out.writeLong(((UUID) value).getMostSignificantBits());
+        out.writeLong(((UUID) value).getLeastSignificantBits());
+      } else if (type == Instant.class) {
+        writeVarLong(((Instant) value).getEpochSecond());
+        writeVarLong(((Instant) value).getNano());
+      } else if (type == Duration.class) {
+        writeVarLong(((Duration) value).getSeconds());
+        writeVarLong(((Duration) value).getNano());
+      } else if (type == LocalDate.class) {
+        writeVarLong(((LocalDate) value).toEpochDay());
+      } else if (type == LocalDateTime.class) {
+        writeVarLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+        writeVarLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+      } else if (type == ZonedDateTime.class) {
+        writeString(((ZonedDateTime) value).format(DateTimeFormatter.ISO_ZONED_DATE_TIME));
+      } else if (type == MonthDay.class) {
+        writeVarLong(((MonthDay) value).getMonthValue());
+        writeVarLong(((MonthDay) value).getDayOfMonth());
+      } else if (type == Period.class) {
+        writeVarLong(((Period) value).getYears());
+        writeVarLong(((Period) value).getMonths());
+        writeVarLong(((Period) value).getDays());
+      } else if (type == Year.class) {
+        writeVarLong(((Year) value).getValue());
+      } else if (type == YearMonth.class) {
+        writeVarLong(((YearMonth) value).getYear());
+        writeVarLong(((YearMonth) value).getMonthValue());
+      } else if (type == ZoneOffset.class) {
+        writeVarLong(((ZoneOffset) value).getTotalSeconds());
+      } else if (type == DayOfWeek.class || type == Month.class || type == ChronoUnit.class) {
+        writeVarLong(((Enum<?>) value).ordinal());
+      } else if (type.isEnum()) {
+        writeString(((Enum<?>) value).name());
+      } else if (customTypes.get(type.getName()) == type) {
+        writeString(jsonSerializer.gson().toJson(value));
+      } else {
+        throw new IllegalArgumentException("Cannot serialize class - not found: " + type.getName());
+      }
+    }
+
+    private void writeArray(Class<?> componentType, Object array) throws IOException {
+      int length = Array.getLength(array);
+      writeVarInt(length);
+      if (componentType == byte.class) {
+        out.write((byte[]) array);
+      } else if (componentType.isPrimitive()) {
+        Class<?> boxedType = boxed(componentType);
+        for (int i = 0; i < length; i++) {
+          writeValue(boxedType, Array.get(array, i));
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          Object element = Array.get(array, i);
+          out.writeBoolean(element != null);
+          if (element != null) {
+            writeValue(componentType, element);
+          }
+        }
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+      while ((value & ~0x7F) != 0) {
+        out.writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      out.writeByte(value);
+    }
+
+    /** Zig-zag encoded, so that small negative numbers are also short. */
+    private void writeVarLong(long value) throws IOException {
+      long zigZag = (value << 1) ^ (value >> 63);
+      while ((zigZag & ~0x7FL) != 0) {
+        out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+        zigZag >>>= 7;
+      }
+      out.writeByte((int) zigZag);
+    }
+  }
+
+  private final class Decoder {
+
+    private final DataInputStream in;
+    private final List<Class<?>> dictionary = new ArrayList<>();
+
+    Decoder(DataInputStream in) {
+      this.in = in;
+    }
+
+    Invocation read() throws IOException {
+      int version = in.readUnsignedByte();
+      if (version != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unsupported invocation format version " + version);
+      }
+      String className = readString();
+      String methodName = readString();
+      int count = readVarInt();
+      Class<?>[] parameterTypes = new Class<?>[count];
+      for (int i = 0; i < count; i++) {
+        parameterTypes[i] = readType();
+      }
+      Object[] args = new Object[count];
+      for (int i = 0; i < count; i++) {
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+          case NULL_ARG:
+            break;
+          case ARG_OF_PARAMETER_TYPE:
+            args[i] = readValue(boxed(parameterTypes[i]));
+            break;
+          case ARG_OF_OTHER_TYPE:
+            args[i] = readValue(readType());
+            break;
+          default:
+            throw new IllegalArgumentException("Invalid argument marker " + kind);
+        }
+      }
+      Map<String, String> mdc = null;
+      int mdcSize = readVarInt();
+      if (mdcSize > 0) {
+        mdc = new LinkedHashMap<>();
+        for (int i = 0; i < mdcSize - 1; i++) {
+          mdc.put(readString(), readString());
+        }
+      }
+      return new Invocation(className, methodName, parameterTypes, args, mdc);
+    }
+
+    private Class<?> readType() throws IOException {
+      int code = readVarInt();
+      if (code == ARRAY_TYPE) {
+        return Array.newInstance(readType(), 0).getClass();
+      }
+      if (code == CUSTOM_TYPE) {
+        int index = readVarInt();
+        if (index < dictionary.size()) {
+          return dictionary.get(index);
+        }
+        String name = readString();
+        Class<?> type = customTypes.get(name);
+        if (type == null) {
+          throw new IllegalArgumentException("Cannot deserialize class - not found: " + name);
+        }
+        dictionary.add(type);
+        return type;
+      }
+      if (code < 1 || code > TYPE_TABLE.size()) {
+        throw new IllegalArgumentException("Cannot deserialize class - unknown type code " + code);
+      }
+      return TYPE_TABLE.get(code - 1);
+    }
+
+    private Object readValue(Class<?> type) throws IOException {
+      if (type.isArray()) {
+        return readArray(type.getComponentType());
+      } else if (type == Integer.class) {
+        return (int) readVarLong();
+      } else if (type == Long.class) {
+        return readVarLong();
+      } else if (type == String.class) {
+        return readString();
+      } else if (type == Boolean.class) {
+        return in.readBoolean();
+      } else if (type == Byte.class) {
+        return in.readByte();
+      } else if (type == Short.class) {
+        return in.readShort();
+      } else if (type == Character.class) {
+        return in.readChar();
+      } else if (type == Float.class) {
+        return in.readFloat();
+      } else if (type == Double.class) {
+        return in.readDouble();
+      } else if (type == BigDecimal.class) {
+        return new BigDecimal(readString());
+      } else if (type == Date.class) {
+        return new Date(readVarLong());
+      } else if (type == UUID.class) {
+        return new UUID(in.readLong(), in.readLong());
+      } else if (type == Instant.class) {
+        return Instant.ofEpochSecond(readVarLong(), readVarLong());
+      } else if (type == Duration.class) {
+        return Duration.ofSeconds(readVarLong(), readVarLong());
+      } else if (type == LocalDate.class) {
+        return LocalDate.ofEpochDay(readVarLong());
+      } else if (type == LocalDateTime.class) {
+        return LocalDateTime.of(
+            LocalDate.ofEpochDay(readVarLong()), LocalTime.ofNanoOfDay(readVarLong()));
+      } else if (type == ZonedDateTime.class) {
+        return ZonedDateTime.parse(readString(), DateTimeFormatter.ISO_ZONED_DATE_TIME);
+      } else if (type == MonthDay.class) {
+        return MonthDay.of((int) readVarLong(), (int) readVarLong());
+      } else if (type == Period.class) {
+        return Period.of((int) readVarLong(), (int) readVarLong(), (int) readVarLong());
+      } else if (type == Year.class) {
+        return Year.of((int) readVarLong());
+      } else if (type == YearMonth.class) {
+        return YearMonth.of((int) readVarLong(), (int) readVarLong());
+      } else if (type == ZoneOffset.class) {
+        return ZoneOffset.ofTotalSeconds((int) readVarLong());
+      } else if (type == DayOfWeek.class || type == Month.class || type == ChronoUnit.class) {
+        return type.getEnumConstants()[(int) readVarLong()];
+      } else if (type.isEnum()) {
+        return enumValue(type, readString());
+      } else {
+        return jsonSerializer.gson().fromJson(readString(), type);
+      }
+    }
+
+    private Object readArray(Class<?> componentType) throws IOException {
+      int length = readVarInt();
+      Object array = Array.newInstance(componentType, length);
+      if (componentType == byte.class) {
+        in.readFully((byte[]) array);
+      } else if (componentType.isPrimitive()) {
+        Class<?> boxedType = boxed(componentType);
+        for (int i = 0; i < length; i++) {
+          Array.set(array, i, readValue(boxedType));
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          if (in.readBoolean()) {
+            Array.set(array, i, readValue(componentType));
+          }
+        }
+      }
+      return array;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object enumValue(Class<?> type, String name) {
+      return Enum.valueOf((Class) type, name);
+    }
+
+    private String readString() throws IOException {
+      byte[] bytes = new byte[readVarInt()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = in.readUnsignedByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private long readVarLong() throws IOException {
+      long zigZag = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.readUnsignedByte();
+        zigZag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package com.gruelbox.transactionoutbox;
+
+import com.gruelbox.transactionoutbox.spi.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+
+/**
+ * Schedules background work using a shared {@link Executor}, but caps how much of it the work for
+ * any one target may occupy at once, so that a slow downstream cannot starve everything else of
+ * threads.
+ *
+ * <p>Work is divided into lanes by the class, or class and method, being invoked. Each lane named
+ * using {@link BulkheadSubmitterBuilder#limit(String, Integer)} may have at most that many tasks
+ * (or batches of tasks) submitted to the executor and not yet finished. Everything else shares a
+ * default lane, limited by {@link BulkheadSubmitterBuilder#defaultLimit(Integer)}. Work submitted
+ * to a lane which is full is left in the database and picked up by {@link
+ * TransactionOutbox#flush()} later, so the database absorbs the backpressure, e.g:
+ *
+ * <pre>BulkheadSubmitter.builder()
+ *     .executor(executor)
+ *     .limit("com.acme.PaymentClient", 4)
+ *     .limit("com.acme.SearchService#reindex", 2)
+ *     .build()</pre>
+ *
+ * <p>Where a method and its class both have a lane, the method's lane is used. The same advice on
+ * configuring the executor applies as for {@link ExecutorSubmitter}.
+ */
+@Slf4j
+public class BulkheadSubmitter implements Submitter, Validatable {
+
+  /** The name of the lane used for work not matching any other lane. */
+  public static final String DEFAULT_LANE = "default";
+
+  private final Executor executor;
+  private final Map<String, Lane> lanes;
+  private final Lane defaultLane;
+  private final Level logLevelWorkQueueSaturation;
+
+  /**
+   * @param executor The executor on which all work runs. Required.
+   * @param limits The maximum number of tasks in flight at once for each lane, keyed by the fully
+   *     qualified class name, or the class name and method name separated by {@code #}.
+   * @param defaultLimit The maximum number of tasks in flight at once for work not matching any of
+   *     {@code limits}. Defaults to no limit beyond that of the executor.
+   * @param logLevelWorkQueueSaturation The log level to use when work submission hits a lane's
+   *     limit or the executor queue limit. Defaults to {@code DEBUG}.
+   */
+  @Builder
+  BulkheadSubmitter(
+      Executor executor,
+      @Singular Map<String, Integer> limits,
+      Integer defaultLimit,
+      Level logLevelWorkQueueSaturation) {
+    this.executor = executor;
+    Map<String, Lane> configured = new HashMap<>();
+    limits.forEach((key, limit) -> configured.put(key, new Lane(key, limit)));
+    this.lanes = configured;
+    this.defaultLane =
+        new Lane(DEFAULT_LANE, defaultLimit == null ? Integer.MAX_VALUE : defaultLimit);
+    this.logLevelWorkQueueSaturation =
+        logLevelWorkQueueSaturation == null ? Level.DEBUG : logLevelWorkQueueSaturation;
+  }
+
+  @Override
+  public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+    Lane lane = laneFor(entry);
+    if (!lane.tryAcquire()) {
+      Utils.logAtLevel(
+          log,
+          logLevelWorkQueueSaturation,
+          "Queued {} for processing when lane {} has capacity",
+          entry.description(),
+          lane.getName());
+      return;
+    }
+    if (start(lane, () -> localExecutor.accept(entry))) {
+      log.debug("Submitted {} for immediate processing", entry.description());
+    }
+  }
+
+  @Override
+  public void submitBatch(
+      List<TransactionOutboxEntry> entries, Consumer<List<TransactionOutboxEntry>> localExecutor) {
+    // Entries for different targets go to different lanes, so split the batch between them
+    Map<Lane, List<TransactionOutboxEntry>> byLane = new LinkedHashMap<>();
+    for (TransactionOutboxEntry entry : entries) {
+      byLane.computeIfAbsent(laneFor(entry), __ -> new ArrayList<>()).add(entry);
+    }
+    byLane.forEach(
+        (lane, laneEntries) -> {
+          if (!lane.tryAcquire()) {
+            Utils.logAtLevel(
+                log,
+                logLevelWorkQueueSaturation,
+                "Queued batch of {} for processing when lane {} has capacity",
+                laneEntries.size(),
+                lane.getName());
+            return;
+          }
+          if (start(lane, () -> localExecutor.accept(laneEntries))) {
+            log.debug("Submitted batch of {} for immediate processing", laneEntries.size());
+          }
+        });
+  }
+
+  /**
+   * Reports the capacity of the executor, as for {@link ExecutorSubmitter#availableCapacity()}.
+   * Lane limits are not taken into account, since which lanes the next work will fall into is not
+   * known.
+   */
+  @Override
+  public int availableCapacity() {
+    return (int) Math.min(Integer.MAX_VALUE, ExecutorSubmitter.capacityOf(executor));
+  }
+
+  /**
+   * @return The lanes, including the {@link #DEFAULT_LANE default lane}, for monitoring.
+   */
+  public Collection<Lane> getLanes() {
+    List<Lane> result = new ArrayList<>(lanes.values());
+    result.add(defaultLane);
+    return Collections.unmodifiableList(result);
+  }
+
+  private Lane laneFor(TransactionOutboxEntry entry) {
+    Invocation invocation = entry.getInvocation();
+    Lane lane = lanes.get(invocation.getClassName() + "#" + invocation.getMethodName());
+    if (lane == null) {
+      lane = lanes.getOrDefault(invocation.getClassName(), defaultLane);
+    }
+    return lane;
+  }
+
+  private boolean start(Lane lane, Runnable work) {
+    try {
+      executor.execute(
+          () -> {
+            try {
+              work.run();
+            } finally {
+              lane.release();
+            }
+          });
+      return true;
+    } catch (RejectedExecutionException e) {
+      lane.reject();
+      Utils.logAtLevel(
+          log,
+          logLevelWorkQueueSaturation,
+          "Queued work in lane {} for processing when executor is available",
+          lane.getName());
+      return false;
+    } catch (Exception e) {
+      lane.release();
+      log.warn("Failed to submit work for execution. It will be re-attempted later.", e);
+      return false;
+    }
+  }
+
+  @Override
+  public void validate(Validator validator) {
+    validator.notNull("executor", executor);
+    lanes.values().forEach(lane -> validator.min("limits." + lane.getName(), lane.getLimit(), 1));
+    validator.min("defaultLimit", defaultLane.getLimit(), 1);
+  }
+
+  /** A group of work sharing a concurrency limit. */
+  public static final class Lane {
+
+    /**
+     * @return The lane name: the class or method it covers, or {@link #DEFAULT_LANE}.
+     */
+    @Getter private final String name;
+
+    /**
+     * @return The maximum number of tasks which may be in flight at once.
+     */
+    @Getter private final int limit;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private Lane(String name, int limit) {
+      this.name = name;
+      this.limit = limit;
+    }
+
+    /**
+     * @return The number of tasks submitted to the executor and not yet finished, whether running
+     *     or queued.
+     */
+    public int getActive() {
+      return active.get();
+    }
+
+    /**
+     * @return The total number of tasks turned away because the lane or executor was full.
+     */
+    public long getRejected() {
+      return rejected.get();
+    }
+
+    private boolean tryAcquire() {
+      int current;
+      do {
+        current = active.get();
+        if (current >= limit) {
+          rejected.incrementAndGet();
+          return false;
+        }
+      } while (!active.compareAndSet(current, current + 1));
+      return true;
+    }
+
+    private void reject() {
+      active.decrementAndGet();
+      rejected.incrementAndGet();
+    }
+
+    private void release() {
+      active.decrementAndGet();
+    }
+  }
+}
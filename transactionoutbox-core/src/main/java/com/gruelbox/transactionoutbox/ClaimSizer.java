@@ -0,0 +1,135 @@
+package com.gruelbox.transactionoutbox;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sizes the claims made by {@link TransactionOutbox#flush()} to the measured throughput of this
+ * instance, so that instances sharing a backlog each take a share in proportion to how fast they
+ * work through it, rather than the first to poll taking everything.
+ *
+ * <p>Keeps enough work in hand to last about {@link #window}: the claim is the number of entries
+ * this instance has recently finished per {@link #window}, less those it has claimed and not yet
+ * finished. Claims never fall below {@link #minimum}, so an instance with no history yet still
+ * makes progress and measures its throughput from there.
+ */
+@Slf4j
+final class ClaimSizer {
+
+  private static final double SMOOTHING = 0.5;
+
+  @Getter private final Duration window;
+  private final int minimum;
+  private final Supplier<Clock> clockProvider;
+
+  /** Claimed entries not yet finished, by id, with the time after which they may be reclaimed. */
+  private final Map<String, Instant> inFlight = new ConcurrentHashMap<>();
+
+  private final Object lock = new Object();
+  private long finished;
+  private long sampledFinished;
+  private Instant sampledAt;
+  private double ratePerSecond;
+
+  ClaimSizer(Duration window, int minimum, Supplier<Clock> clockProvider) {
+    this.window = window;
+    this.minimum = minimum;
+    this.clockProvider = clockProvider;
+  }
+
+  /**
+   * Works out how many entries to claim, waiting up to {@link #window} for work in hand to finish
+   * if there is already enough.
+   *
+   * @param max The most that could be claimed otherwise.
+   * @return The number to claim, or zero if there is still enough work in hand after waiting.
+   */
+  int awaitClaimable(int max) throws InterruptedException {
+    if (max == 0) {
+      return 0;
+    }
+    long deadline = System.nanoTime() + window.toNanos();
+    synchronized (lock) {
+      while (true) {
+        int claimable = claimable(max);
+        long remaining = deadline - System.nanoTime();
+        if (claimable > 0 || remaining <= 0) {
+          return claimable;
+        }
+        log.debug("{} entries in hand; waiting for some to finish", inFlight.size());
+        try {
+          lock.wait(Math.max(1, remaining / 1_000_000));
+        } catch (InterruptedException e) {
+          // Leave the flag set so that a polling loop calling flush() sees it and stops
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Records entries as claimed.
+   *
+   * @param entries The entries.
+   * @param leaseExpiry The time after which they may be claimed again if not finished.
+   */
+  void claimed(Collection<TransactionOutboxEntry> entries, Instant leaseExpiry) {
+    entries.forEach(entry -> inFlight.put(entry.getId(), leaseExpiry));
+  }
+
+  /**
+   * Records a claimed entry as finished, whether or not it succeeded.
+   *
+   * @param entry The entry.
+   */
+  void finished(TransactionOutboxEntry entry) {
+    if (inFlight.remove(entry.getId()) == null) {
+      return;
+    }
+    synchronized (lock) {
+      finished++;
+      lock.notifyAll();
+    }
+  }
+
+  private int claimable(int max) {
+    Instant now = clockProvider.get().instant();
+    purgeExpired(now);
+    sample(now);
+    long target = Math.max(minimum, (long) Math.ceil(ratePerSecond * window.toMillis() / 1000.0));
+    return (int) Math.max(0, Math.min(max, target - inFlight.size()));
+  }
+
+  private void sample(Instant now) {
+    if (sampledAt == null || (inFlight.isEmpty() && finished == sampledFinished)) {
+      // Idle time says nothing about throughput, so start measuring afresh
+      sampledAt = now;
+      sampledFinished = finished;
+      return;
+    }
+    long elapsedMillis = Duration.between(sampledAt, now).toMillis();
+    long count = finished - sampledFinished;
+    if (count == 0 || elapsedMillis < window.toMillis() / 10) {
+      return;
+    }
+    double rate = count * 1000.0 / Math.max(1, elapsedMillis);
+    ratePerSecond = ratePerSecond == 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * ratePerSecond;
+    log.debug("Throughput {}/s, smoothed to {}/s", rate, ratePerSecond);
+    sampledAt = now;
+    sampledFinished = finished;
+  }
+
+  private void purgeExpired(Instant now) {
+    // Entries whose submission was silently rejected never finish, so stop counting them once
+    // another flush could claim them again
+    inFlight.values().removeIf(leaseExpiry -> !leaseExpiry.isAfter(now));
+  }
+}
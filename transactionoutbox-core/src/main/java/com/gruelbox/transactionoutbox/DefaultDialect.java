@@ -25,12 +25,25 @@ class DefaultDialect implements Dialect {
   @Getter private final String deleteExpired;
   @Getter private final String delete;
   @Getter private final String selectBatch;
+  @Getter private final String claimBatch;
+  @Getter private final String notifyPending;
   @Getter private final String lock;
+  @Getter private final String lockBatch;
   @Getter private final String checkSql;
   @Getter private final String deleteOutdatedInAllTopics;
+  @Getter private final String lockSuperseded;
   @Getter private final String fetchNextInAllTopics;
+  @Getter private final String fetchNextInActiveTopics;
+  @Getter private final String checkArchived;
+  @Getter private final String deleteExpiredArchived;
+  @Getter private final String checkProcessed;
+  @Getter private final String fetchPartitions;
+  @Getter private final String fetchUnpartitionedHorizon;
+  @Getter private final String createPartition;
+  @Getter private final String dropPartition;
   @Getter private final String fetchCurrentVersion;
   @Getter private final String fetchNextSequence;
+  @Getter private final boolean multiRowInsert;
   private final Collection<Migration> migrations;
 
   @Override
@@ -66,9 +79,14 @@ class DefaultDialect implements Dialect {
             + " LIMIT {{batchSize}}";
     private String selectBatch =
         "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
-            + "AND blocked = false AND processed = false AND topic = '*' LIMIT {{batchSize}}";
+            + "AND blocked = false AND processed = false AND topic = '*' {{shard}} ORDER BY priority DESC "
+            + "LIMIT {{batchSize}}";
+    private String claimBatch;
+    private String notifyPending;
     private String lock =
-        "SELECT id, invocation FROM {{table}} WHERE id = ? AND version = ? FOR UPDATE";
+        "SELECT id, invocation, invocationBinary FROM {{table}} WHERE id = ? AND version = ? FOR UPDATE";
+    private String lockBatch =
+        "SELECT id, version, invocation, invocationBinary FROM {{table}} WHERE id IN ({{ids}}) FOR UPDATE";
     private String checkSql = "SELECT 1";
     private Map<Integer, Migration> migrations;
     private Function<Boolean, String> booleanValueFrom;
@@ -79,14 +97,31 @@ class DefaultDialect implements Dialect {
             + " AND a.seq <> ("
             + "SELECT MAX(b.seq) FROM {{table}} b WHERE b.topic=a.topic AND b.orderedTakeLast = true AND b.seq IS NOT NULL"
             + ")) v)";
+    // Without skip locking, saving would wait for superseded records being processed
+    private String lockSuperseded;
     private String fetchNextInAllTopics =
         "SELECT {{allFields}} FROM {{table}} a"
             + " WHERE processed = false AND topic <> '*' AND (blocked = false OR orderedTakeLast = false) AND nextAttemptTime < ?"
             + " AND seq = ("
             + "SELECT MIN(seq) FROM {{table}} b WHERE b.topic=a.topic AND b.processed = false"
             + ") LIMIT {{batchSize}}";
+    private String fetchNextInActiveTopics =
+        "SELECT {{allFields}} FROM {{table}} a JOIN ("
+            + "SELECT s.topic AS headTopic, (SELECT MIN(b.seq) FROM {{table}} b WHERE b.topic = s.topic AND b.processed = false) AS headSeq"
+            + " FROM TXNO_SEQUENCE s WHERE s.active = true) h ON a.topic = h.headTopic AND a.seq = h.headSeq"
+            + " WHERE a.processed = false AND (a.blocked = false OR a.orderedTakeLast = false) AND a.nextAttemptTime < ?"
+            + " LIMIT {{batchSize}}";
+    private String checkArchived = "SELECT 1 FROM TXNO_PROCESSED WHERE uniqueRequestId = ?";
+    private String deleteExpiredArchived =
+        "DELETE FROM TXNO_PROCESSED WHERE expiryTime < ? LIMIT {{batchSize}}";
+    private String checkProcessed;
+    private String fetchPartitions;
+    private String fetchUnpartitionedHorizon;
+    private String createPartition;
+    private String dropPartition;
     private String fetchCurrentVersion = "SELECT version FROM TXNO_VERSION FOR UPDATE";
     private String fetchNextSequence = "SELECT seq FROM TXNO_SEQUENCE WHERE topic = ? FOR UPDATE";
+    private boolean multiRowInsert = true;
 
     Builder(String name) {
       this.name = name;
@@ -171,6 +206,61 @@ class DefaultDialect implements Dialect {
               13,
               "Add orderedTakeLast column",
               "ALTER TABLE TXNO_OUTBOX ADD COLUMN orderedTakeLast BOOLEAN NOT NULL DEFAULT false"));
+      migrations.put(
+          14,
+          new Migration(
+              14,
+              "Add binary invocation column",
+              "ALTER TABLE TXNO_OUTBOX ADD COLUMN invocationBinary MEDIUMBLOB NULL"));
+      migrations.put(
+          15,
+          new Migration(
+              15,
+              "Add active flag to sequence table",
+              "ALTER TABLE TXNO_SEQUENCE ADD COLUMN active BOOLEAN NOT NULL DEFAULT true"));
+      migrations.put(
+          16,
+          new Migration(
+              16,
+              "Add index of active topics",
+              "CREATE INDEX IX_TXNO_SEQUENCE_1 ON TXNO_SEQUENCE (active, topic)"));
+      migrations.put(
+          17, new Migration(17, "Partition outbox table for dialects which support it", null));
+      migrations.put(
+          18,
+          new Migration(
+              18,
+              "Add processed request table",
+              "CREATE TABLE TXNO_PROCESSED (uniqueRequestId VARCHAR(250) NOT NULL, id VARCHAR(36) NOT NULL,"
+                  + " expiryTime TIMESTAMP(6), PRIMARY KEY (uniqueRequestId))"));
+      migrations.put(
+          19,
+          new Migration(
+              19,
+              "Add expiry index to processed request table",
+              "CREATE INDEX IX_TXNO_PROCESSED_1 ON TXNO_PROCESSED (expiryTime)"));
+      migrations.put(
+          20,
+          new Migration(
+              20, "Add shard", "ALTER TABLE TXNO_OUTBOX ADD COLUMN shard INT NOT NULL DEFAULT 0"));
+      migrations.put(
+          21,
+          new Migration(
+              21,
+              "Add sharded flush index",
+              "CREATE INDEX IX_TXNO_OUTBOX_5 ON TXNO_OUTBOX (processed, blocked, shard, nextAttemptTime)"));
+      migrations.put(
+          22,
+          new Migration(
+              22,
+              "Add priority",
+              "ALTER TABLE TXNO_OUTBOX ADD COLUMN priority INT NOT NULL DEFAULT 0"));
+      migrations.put(
+          23,
+          new Migration(
+              23,
+              "Add priority flush index",
+              "CREATE INDEX IX_TXNO_OUTBOX_6 ON TXNO_OUTBOX (processed, blocked, priority, nextAttemptTime)"));
     }
 
     Builder setMigration(Migration migration) {
@@ -192,12 +282,25 @@ class DefaultDialect implements Dialect {
           deleteExpired,
           delete,
           selectBatch,
+          claimBatch,
+          notifyPending,
           lock,
+          lockBatch,
           checkSql,
           deleteOutdatedInAllTopics,
+          lockSuperseded,
           fetchNextInAllTopics,
+          fetchNextInActiveTopics,
+          checkArchived,
+          deleteExpiredArchived,
+          checkProcessed,
+          fetchPartitions,
+          fetchUnpartitionedHorizon,
+          createPartition,
+          dropPartition,
           fetchCurrentVersion,
           fetchNextSequence,
+          multiRowInsert,
           migrations.values()) {
         @Override
         public String booleanValue(boolean criteriaValue) {
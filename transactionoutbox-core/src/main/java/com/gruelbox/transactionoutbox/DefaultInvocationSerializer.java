@@ -110,6 +110,10 @@ public final class DefaultInvocationSerializer implements InvocationSerializer {
     return gson.fromJson(reader, Invocation.class);
   }
 
+  Gson gson() {
+    return gson;
+  }
+
   private static final class InvocationJsonSerializer
       implements JsonSerializer<Invocation>, JsonDeserializer<Invocation> {
 
@@ -159,6 +163,7 @@ public final class DefaultInvocationSerializer implements InvocationSerializer {
 
       addClass(Transaction.class);
       addClassPair(TransactionContextPlaceholder.class, "TransactionContext");
+      addClass(AsyncTransaction.class);
 
       serializableClasses.forEach(clazz -> addClassPair(clazz, clazz.getName()));
     }
@@ -1,8 +1,8 @@
 package com.gruelbox.transactionoutbox;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,10 +11,25 @@ import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -38,7 +53,29 @@ import lombok.extern.slf4j.Slf4j;
 public class DefaultPersistor implements Persistor, Validatable {
 
   private static final String ALL_FIELDS =
-      "id, uniqueRequestId, invocation, topic, seq, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version, orderedTakeLast";
+      "id, uniqueRequestId, invocation, invocationBinary, topic, seq, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version, orderedTakeLast, priority";
+
+  private static final String INSERT_FIELDS = ALL_FIELDS + ", shard";
+
+  private static final int INSERT_COLUMNS = INSERT_FIELDS.split(",").length;
+
+  private static final String ROW_PLACEHOLDERS =
+      "(" + String.join(", ", Collections.nCopies(INSERT_COLUMNS, "?")) + ")";
+
+  // SQL Server allows at most 2100 parameters in a statement
+  private static final int MAX_PARAMETERS_PER_INSERT = 2000;
+
+  private static final int MAX_ROWS_PER_INSERT = MAX_PARAMETERS_PER_INSERT / INSERT_COLUMNS;
+
+  // Records are hashed into this many slots, which are divided evenly between however many shards
+  // are claimed from, so the number of shards can change without moving any records
+  private static final int SHARD_SLOTS = 1024;
+
+  // Days of partitions created beyond the retention period, so that records processed before the
+  // next flush still have somewhere to go
+  private static final int PARTITIONS_AHEAD = 2;
+
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
 
   /**
    * @param writeLockTimeoutSeconds How many seconds to wait before timing out on obtaining a write
@@ -84,10 +121,136 @@ public class DefaultPersistor implements Persistor, Validatable {
   private final InvocationSerializer serializer =
       InvocationSerializer.createDefaultJsonSerializer();
 
+  /**
+   * @param notifyChannel If set, a notification is sent on this channel when a transaction commits
+   *     work which will not be processed immediately by the scheduling instance, such as entries in
+   *     ordered topics. Use with {@link PgNotifyListener} so that idle instances can pick up such
+   *     work immediately rather than on their next {@link TransactionOutbox#flush()}. Only
+   *     supported by PostgreSQL. Must be a valid unquoted identifier. Defaults to null (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final String notifyChannel;
+
+  /**
+   * @param compressionThreshold If set, serialized invocations larger than this many bytes (or
+   *     characters, for text serializers) are compressed using Deflate and stored in the {@code
+   *     invocationBinary} column. Rows are read correctly whether compressed or not, so this can be
+   *     enabled, changed or disabled at any time, but not rolled back to a version of this library
+   *     which predates it while compressed rows remain. Defaults to null (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final Integer compressionThreshold;
+
+  /**
+   * @param insertBatchSize If set, entries scheduled without a {@code uniqueRequestId} are not
+   *     written as they are scheduled, but buffered until the transaction commits and then written
+   *     using multi-row {@code INSERT} statements of up to this many rows (capped so that a
+   *     statement binds at most 2000 parameters, currently 133 rows, to stay within SQL Server's
+   *     parameter limit). Sequence numbers for ordered topics are then allocated once per topic
+   *     rather than once per entry. This substantially reduces the cost of scheduling many entries
+   *     in one transaction, but means that entries are not visible in the database, and {@link
+   *     TransactionOutboxEntry#getSequence()} is not set, until the transaction commits. Requires a
+   *     {@link TransactionManager} whose transactions support {@link
+   *     Transaction#addPreCommitHook(Object, java.util.function.Supplier)}; others write each entry
+   *     immediately as usual. Also sets the size of inserts made by {@link #saveBatch(Transaction,
+   *     List)}, which otherwise uses the maximum. Defaults to null (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final Integer insertBatchSize;
+
+  /**
+   * @param allocateSequencesAtCommit If true, entries in ordered topics are written just before the
+   *     transaction commits, in the same way as with {@link #insertBatchSize}, rather than as they
+   *     are scheduled. A topic's next sequence number is held under a row lock in {@code
+   *     TXNO_SEQUENCE} from when it is allocated until the transaction commits, so transactions
+   *     scheduling work in the same topic can only run one at a time. Allocating at commit time
+   *     holds the lock only while committing, so busy topics can be written by many transactions
+   *     concurrently. Topics are also locked in a consistent order, avoiding deadlocks between
+   *     transactions writing to several topics. Entries with a {@code uniqueRequestId} are still
+   *     written immediately. Requires a {@link TransactionManager} whose transactions support
+   *     {@link Transaction#addPreCommitHook(Object, java.util.function.Supplier)}. Defaults to
+   *     false.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final boolean allocateSequencesAtCommit = false;
+
+  /**
+   * @param trackActiveTopics If true, {@link #selectNextInTopics(Transaction, int, Instant)} only
+   *     examines topics marked active in {@code TXNO_SEQUENCE}, finding the next record in each
+   *     using an index lookup, rather than scanning every unprocessed record in every topic. Topics
+   *     are marked active whenever work is scheduled in them, and idle again by {@link
+   *     #deactivateIdleTopics(TransactionManager, int)} once all their work has been processed.
+   *     Only enable this once every application instance writing to the outbox is running a version
+   *     which marks topics active; older versions do not, and work they schedule in idle topics
+   *     would not be processed. Defaults to false.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final boolean trackActiveTopics = false;
+
+  /**
+   * @param archiveProcessed If true, records retained after processing to protect their {@code
+   *     uniqueRequestId} are moved to {@code TXNO_PROCESSED}, which holds only the id, {@code
+   *     uniqueRequestId} and expiry time, rather than being kept in the outbox table. The outbox
+   *     table then only holds work still to be done. Uniqueness is enforced across both tables by
+   *     checking {@code TXNO_PROCESSED} as each request is saved. Records processed before this was
+   *     enabled stay where they are until they expire. Defaults to false.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final boolean archiveProcessed = false;
+
+  /**
+   * @param outdatedSweepInterval Where the dialect supports deleting superseded {@code
+   *     orderedTakeLast} records as newer ones are saved, {@link
+   *     #deleteOutdatedInAllTopics(Transaction)} only sweeps the whole table on its first call and
+   *     then every this many calls, i.e. {@link TransactionOutbox#flush()}es. This catches records
+   *     which were being processed, and so skipped, when they were superseded, along with any
+   *     superseded before upgrading. Other dialects sweep on every call. Defaults to 100.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final int outdatedSweepInterval = 100;
+
+  private final AtomicInteger outdatedSweepCalls = new AtomicInteger();
+
   @Override
   public void validate(Validator validator) {
     validator.notNull("dialect", dialect);
     validator.notNull("tableName", tableName);
+    validator.min("outdatedSweepInterval", outdatedSweepInterval, 1);
+    if (compressionThreshold != null) {
+      validator.min("compressionThreshold", compressionThreshold, 0);
+    }
+    if (insertBatchSize != null) {
+      validator.min("insertBatchSize", insertBatchSize, 1);
+    }
+    if (trackActiveTopics && dialect != null) {
+      validator.isTrue(
+          "trackActiveTopics",
+          dialect.getFetchNextInActiveTopics() != null,
+          "is not supported by dialect %s",
+          dialect);
+    }
+    if (archiveProcessed && dialect != null) {
+      validator.isTrue(
+          "archiveProcessed",
+          dialect.getCheckArchived() != null,
+          "is not supported by dialect %s",
+          dialect);
+    }
+    if (notifyChannel != null && dialect != null) {
+      validator.isTrue(
+          "notifyChannel",
+          dialect.getNotifyPending() != null,
+          "is not supported by dialect %s",
+          dialect);
+      validator.isTrue(
+          "notifyChannel",
+          notifyChannel.matches("[A-Za-z_][A-Za-z0-9_]*"),
+          "must be a valid unquoted identifier");
+    }
   }
 
   @Override
@@ -110,21 +273,33 @@ public class DefaultPersistor implements Persistor, Validatable {
   @Override
   public void save(Transaction tx, TransactionOutboxEntry entry)
       throws SQLException, AlreadyScheduledException {
-    var insertSql =
-        "INSERT INTO "
-            + tableName
-            + " ("
-            + ALL_FIELDS
-            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-    var writer = new StringWriter();
-    serializer.serializeInvocation(entry.getInvocation(), writer);
+    var invocation =
+        SerializedInvocation.serialize(serializer, entry.getInvocation(), compressionThreshold);
+    if (insertBatchSize != null || (allocateSequencesAtCommit && entry.getTopic() != null)) {
+      var deferred =
+          DeferredInserts.in(tx, this, (entries, invocations) -> insert(tx, entries, invocations));
+      if (deferred != null) {
+        if (entry.getUniqueRequestId() == null) {
+          deferred.add(entry, invocation);
+          log.debug("Deferred insert of {}", entry.getId());
+          return;
+        }
+        // Keep sequence numbers in the order entries were scheduled
+        deferred.run();
+      }
+    }
     if (entry.getTopic() != null) {
       setNextSequence(tx, entry);
       log.info("Assigned sequence number {} to topic {}", entry.getSequence(), entry.getTopic());
+      if (entry.isOrderedTakeLast()) {
+        deleteSuperseded(tx, entry.getTopic(), entry.getSequence());
+      }
     }
-    PreparedStatement stmt = tx.prepareBatchStatement(insertSql);
-    setupInsert(entry, writer, stmt);
-    if (entry.getUniqueRequestId() == null) {
+    PreparedStatement stmt = tx.prepareBatchStatement(insertSql(1));
+    setupInsert(entry, invocation, stmt, 1);
+    // Take-last records are written immediately so that later ones in the same transaction can
+    // supersede them
+    if (entry.getUniqueRequestId() == null && !entry.isOrderedTakeLast()) {
       stmt.addBatch();
       log.debug("Inserted {} in batch", entry.description());
     } else {
@@ -138,34 +313,226 @@ public class DefaultPersistor implements Persistor, Validatable {
         }
         throw e;
       }
+      if (entry.getUniqueRequestId() != null && alreadyProcessed(tx, entry)) {
+        throw new AlreadyScheduledException(
+            "Request " + entry.description() + " already exists", null);
+      }
+    }
+  }
+
+  /**
+   * Checks for a retained processed record with the same {@code uniqueRequestId} which the database
+   * cannot check against the unprocessed record, because it is held in another partition or in
+   * {@code TXNO_PROCESSED}, removing the record just inserted if one is found. Any concurrent
+   * transaction processing such a record holds a conflicting lock on the unprocessed record until
+   * it commits, so the insert waits for it and this check sees the result.
+   */
+  private boolean alreadyProcessed(Transaction tx, TransactionOutboxEntry entry)
+      throws SQLException {
+    boolean found =
+        (dialect.getCheckProcessed() != null
+                && exists(
+                    tx,
+                    dialect.getCheckProcessed().replace("{{table}}", tableName),
+                    entry.getUniqueRequestId()))
+            || (archiveProcessed
+                && exists(tx, dialect.getCheckArchived(), entry.getUniqueRequestId()));
+    if (!found) {
+      return false;
+    }
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection().prepareStatement("DELETE FROM " + tableName + " WHERE id = ?")) {
+      stmt.setString(1, entry.getId());
+      stmt.executeUpdate();
+    }
+    return true;
+  }
+
+  private boolean exists(Transaction tx, String sql, String uniqueRequestId) throws SQLException {
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(sql)) {
+      stmt.setString(1, uniqueRequestId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  @Override
+  public void saveBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    DeferredInserts deferred = null;
+    if (insertBatchSize != null || allocateSequencesAtCommit) {
+      deferred =
+          DeferredInserts.in(tx, this, (batch, invocations) -> insert(tx, batch, invocations));
+      if (deferred != null && !allocateSequencesAtCommit) {
+        // Keep sequence numbers in the order entries were scheduled
+        deferred.run();
+      }
+    }
+    List<TransactionOutboxEntry> batch = new ArrayList<>(entries.size());
+    List<SerializedInvocation> invocations = new ArrayList<>(entries.size());
+    for (TransactionOutboxEntry entry : entries) {
+      if (entry.getUniqueRequestId() == null) {
+        var invocation =
+            SerializedInvocation.serialize(serializer, entry.getInvocation(), compressionThreshold);
+        if (deferred != null && allocateSequencesAtCommit && entry.getTopic() != null) {
+          deferred.add(entry, invocation);
+        } else {
+          batch.add(entry);
+          invocations.add(invocation);
+        }
+      } else {
+        insert(tx, batch, invocations);
+        batch.clear();
+        invocations.clear();
+        save(tx, entry);
+      }
+    }
+    insert(tx, batch, invocations);
+  }
+
+  /**
+   * Writes a batch of entries using multi-row inserts, allocating sequence numbers once per topic.
+   * Topics are allocated in name order so that concurrent transactions cannot deadlock.
+   */
+  private void insert(
+      Transaction tx, List<TransactionOutboxEntry> entries, List<SerializedInvocation> invocations)
+      throws SQLException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    Map<String, List<TransactionOutboxEntry>> byTopic = new TreeMap<>();
+    for (TransactionOutboxEntry entry : entries) {
+      if (entry.getTopic() != null) {
+        byTopic.computeIfAbsent(entry.getTopic(), t -> new ArrayList<>()).add(entry);
+      }
+    }
+    for (var topicEntries : byTopic.entrySet()) {
+      long first = allocateSequences(tx, topicEntries.getKey(), topicEntries.getValue().size());
+      long seq = first;
+      for (TransactionOutboxEntry entry : topicEntries.getValue()) {
+        entry.setSequence(seq++);
+      }
+      log.info(
+          "Assigned sequence numbers {}-{} to topic {}", first, seq - 1, topicEntries.getKey());
+    }
+    if (dialect.getLockSuperseded() != null) {
+      Map<String, Long> latest = new HashMap<>();
+      for (TransactionOutboxEntry entry : entries) {
+        if (entry.isOrderedTakeLast()) {
+          latest.merge(entry.getTopic(), entry.getSequence(), Math::max);
+        }
+      }
+      if (!latest.isEmpty()) {
+        for (var topic : latest.entrySet()) {
+          deleteSuperseded(tx, topic.getKey(), topic.getValue());
+        }
+        // Entries superseded within the batch need not be written at all
+        List<TransactionOutboxEntry> kept = new ArrayList<>(entries.size());
+        List<SerializedInvocation> keptInvocations = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+          TransactionOutboxEntry entry = entries.get(i);
+          if (!entry.isOrderedTakeLast()
+              || entry.getSequence().equals(latest.get(entry.getTopic()))) {
+            kept.add(entry);
+            keptInvocations.add(invocations.get(i));
+          }
+        }
+        entries = kept;
+        invocations = keptInvocations;
+      }
     }
+    int rows =
+        !dialect.isMultiRowInsert()
+            ? 1
+            : insertBatchSize == null
+                ? MAX_ROWS_PER_INSERT
+                : Math.min(insertBatchSize, MAX_ROWS_PER_INSERT);
+    int remainder = entries.size() % rows;
+    insertRows(tx, entries, invocations, 0, entries.size() - remainder, rows);
+    insertRows(tx, entries, invocations, entries.size() - remainder, entries.size(), remainder);
+    log.debug("Inserted batch of {}", entries.size());
+  }
+
+  private void insertRows(
+      Transaction tx,
+      List<TransactionOutboxEntry> entries,
+      List<SerializedInvocation> invocations,
+      int from,
+      int to,
+      int rowsPerStatement)
+      throws SQLException {
+    if (from == to) {
+      return;
+    }
+    boolean batch = rowsPerStatement == 1 && to - from > 1;
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(insertSql(rowsPerStatement))) {
+      for (int i = from; i < to; ) {
+        int pos = 1;
+        for (int end = i + rowsPerStatement; i < end; i++) {
+          pos = setupInsert(entries.get(i), invocations.get(i), stmt, pos);
+        }
+        if (batch) {
+          stmt.addBatch();
+        } else {
+          stmt.executeUpdate();
+        }
+      }
+      if (batch) {
+        stmt.executeBatch();
+      }
+    }
+  }
+
+  private String insertSql(int rows) {
+    var sql = new StringBuilder("INSERT INTO ").append(tableName);
+    sql.append(" (").append(INSERT_FIELDS).append(") VALUES ").append(ROW_PLACEHOLDERS);
+    for (int i = 1; i < rows; i++) {
+      sql.append(", ").append(ROW_PLACEHOLDERS);
+    }
+    return sql.toString();
   }
 
   private void setNextSequence(Transaction tx, TransactionOutboxEntry entry) throws SQLException {
+    entry.setSequence(allocateSequences(tx, entry.getTopic(), 1));
+  }
+
+  /**
+   * Allocates consecutive sequence numbers in a topic.
+   *
+   * @return The first sequence number allocated.
+   */
+  private long allocateSequences(Transaction tx, String topic, int count) throws SQLException {
     //noinspection resource
     var seqSelect = tx.prepareBatchStatement(dialect.getFetchNextSequence());
-    seqSelect.setString(1, entry.getTopic());
+    seqSelect.setString(1, topic);
     try (ResultSet rs = seqSelect.executeQuery()) {
       if (rs.next()) {
-        entry.setSequence(rs.getLong(1) + 1L);
+        long first = rs.getLong(1) + 1L;
         //noinspection resource
         var seqUpdate =
-            tx.prepareBatchStatement("UPDATE TXNO_SEQUENCE SET seq = ? WHERE topic = ?");
-        seqUpdate.setLong(1, entry.getSequence());
-        seqUpdate.setString(2, entry.getTopic());
+            tx.prepareBatchStatement(
+                "UPDATE TXNO_SEQUENCE SET seq = ?, active = "
+                    + dialect.booleanValue(true)
+                    + " WHERE topic = ?");
+        seqUpdate.setLong(1, first + count - 1);
+        seqUpdate.setString(2, topic);
         seqUpdate.executeUpdate();
+        return first;
       } else {
         try {
-          entry.setSequence(1L);
           //noinspection resource
           var seqInsert =
               tx.prepareBatchStatement("INSERT INTO TXNO_SEQUENCE (topic, seq) VALUES (?, ?)");
-          seqInsert.setString(1, entry.getTopic());
-          seqInsert.setLong(2, entry.getSequence());
+          seqInsert.setString(1, topic);
+          seqInsert.setLong(2, count);
           seqInsert.executeUpdate();
+          return 1L;
         } catch (Exception e) {
           if (indexViolation(e)) {
-            setNextSequence(tx, entry);
+            return allocateSequences(tx, topic, count);
           } else {
             throw e;
           }
@@ -174,6 +541,45 @@ public class DefaultPersistor implements Persistor, Validatable {
     }
   }
 
+  /**
+   * Deletes {@code orderedTakeLast} records in a topic older than the specified sequence number.
+   * Records currently being processed are left alone where the database can skip locked records,
+   * rather than waiting for them while holding the topic's sequence lock.
+   */
+  private void deleteSuperseded(Transaction tx, String topic, long seq) throws SQLException {
+    if (dialect.getLockSuperseded() == null) {
+      return;
+    }
+    List<String> ids = new ArrayList<>();
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(dialect.getLockSuperseded().replace("{{table}}", tableName))) {
+      stmt.setString(1, topic);
+      stmt.setLong(2, seq);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getString(1));
+        }
+      }
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                "DELETE FROM " + tableName + " WHERE id IN (" + placeholders(ids.size()) + ")")) {
+      int i = 1;
+      for (String id : ids) {
+        stmt.setString(i++, id);
+      }
+      stmt.executeUpdate();
+    }
+    log.debug("Deleted {} records in topic {} superseded by {}", ids.size(), topic, seq);
+  }
+
   private boolean indexViolation(Exception e) {
     return (e instanceof SQLIntegrityConstraintViolationException)
         || (e.getClass().getName().equals("org.postgresql.util.PSQLException")
@@ -182,13 +588,16 @@ public class DefaultPersistor implements Persistor, Validatable {
             && e.getMessage().contains("duplicate key"));
   }
 
-  private void setupInsert(
-      TransactionOutboxEntry entry, StringWriter writer, PreparedStatement stmt)
+  private int setupInsert(
+      TransactionOutboxEntry entry,
+      SerializedInvocation invocation,
+      PreparedStatement stmt,
+      int pos)
       throws SQLException {
-    int pos = 1;
     stmt.setString(pos++, entry.getId());
     stmt.setString(pos++, entry.getUniqueRequestId());
-    stmt.setString(pos++, writer.toString());
+    stmt.setString(pos++, invocation.getText());
+    stmt.setBytes(pos++, invocation.getBinary());
     stmt.setString(pos++, entry.getTopic() == null ? "*" : entry.getTopic());
     if (entry.getSequence() == null) {
       stmt.setObject(pos++, null);
@@ -204,6 +613,23 @@ public class DefaultPersistor implements Persistor, Validatable {
     stmt.setBoolean(pos++, entry.isProcessed());
     stmt.setInt(pos++, entry.getVersion());
     stmt.setBoolean(pos++, entry.isOrderedTakeLast());
+    stmt.setInt(pos++, entry.getPriority());
+    stmt.setInt(pos++, shardSlot(entry));
+    return pos;
+  }
+
+  private static int shardSlot(TransactionOutboxEntry entry) {
+    String key = entry.getTopic() == null ? entry.getId() : entry.getTopic();
+    return Math.floorMod(key.hashCode(), SHARD_SLOTS);
+  }
+
+  @Override
+  public void notifyPending(Transaction tx) throws SQLException {
+    if (notifyChannel == null) {
+      return;
+    }
+    tx.prepareBatchStatement(dialect.getNotifyPending().replace("{{channel}}", notifyChannel))
+        .addBatch();
   }
 
   @Override
@@ -221,27 +647,34 @@ public class DefaultPersistor implements Persistor, Validatable {
   }
 
   @Override
-  public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+  public void deleteBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    // Versions were already checked when the entries were locked
     //noinspection resource
     try (PreparedStatement stmt =
         tx.connection()
             .prepareStatement(
-                // language=MySQL
-                "UPDATE "
+                "DELETE FROM "
                     + tableName
-                    + " "
-                    + "SET lastAttemptTime = ?, nextAttemptTime = ?, attempts = ?, blocked = ?, processed = ?, version = ? "
-                    + "WHERE id = ? and version = ?")) {
-      stmt.setTimestamp(
-          1,
-          entry.getLastAttemptTime() == null ? null : Timestamp.from(entry.getLastAttemptTime()));
-      stmt.setTimestamp(2, Timestamp.from(entry.getNextAttemptTime()));
-      stmt.setInt(3, entry.getAttempts());
-      stmt.setBoolean(4, entry.isBlocked());
-      stmt.setBoolean(5, entry.isProcessed());
-      stmt.setInt(6, entry.getVersion() + 1);
-      stmt.setString(7, entry.getId());
-      stmt.setInt(8, entry.getVersion());
+                    + " WHERE id IN ("
+                    + placeholders(entries.size())
+                    + ")")) {
+      setIds(entries, stmt);
+      if (stmt.executeUpdate() != entries.size()) {
+        throw new OptimisticLockException();
+      }
+      log.debug("Deleted batch of {}", entries.size());
+    }
+  }
+
+  @Override
+  public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    if (archivable(entry)) {
+      archive(tx, List.of(entry));
+      return;
+    }
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(updateSql())) {
+      setupUpdate(entry, stmt);
       if (stmt.executeUpdate() != 1) {
         throw new OptimisticLockException();
       }
@@ -250,6 +683,96 @@ public class DefaultPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public void updateBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    if (archiveProcessed) {
+      List<TransactionOutboxEntry> toArchive = new ArrayList<>();
+      List<TransactionOutboxEntry> toUpdate = new ArrayList<>();
+      for (TransactionOutboxEntry entry : entries) {
+        (archivable(entry) ? toArchive : toUpdate).add(entry);
+      }
+      if (!toArchive.isEmpty()) {
+        archive(tx, toArchive);
+      }
+      if (toUpdate.isEmpty()) {
+        return;
+      }
+      entries = toUpdate;
+    }
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(updateSql())) {
+      for (TransactionOutboxEntry entry : entries) {
+        setupUpdate(entry, stmt);
+        stmt.addBatch();
+      }
+      for (int count : stmt.executeBatch()) {
+        if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+          throw new OptimisticLockException();
+        }
+      }
+      entries.forEach(entry -> entry.setVersion(entry.getVersion() + 1));
+      log.debug("Updated batch of {}", entries.size());
+    }
+  }
+
+  private boolean archivable(TransactionOutboxEntry entry) {
+    return archiveProcessed && entry.isProcessed() && entry.getUniqueRequestId() != null;
+  }
+
+  /** Moves processed records from the outbox table to {@code TXNO_PROCESSED}. */
+  private void archive(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection().prepareStatement(dialect.getDelete().replace("{{table}}", tableName))) {
+      for (TransactionOutboxEntry entry : entries) {
+        stmt.setString(1, entry.getId());
+        stmt.setInt(2, entry.getVersion());
+        stmt.addBatch();
+      }
+      for (int count : stmt.executeBatch()) {
+        if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+          throw new OptimisticLockException();
+        }
+      }
+    }
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                "INSERT INTO TXNO_PROCESSED (uniqueRequestId, id, expiryTime) VALUES (?, ?, ?)")) {
+      for (TransactionOutboxEntry entry : entries) {
+        stmt.setString(1, entry.getUniqueRequestId());
+        stmt.setString(2, entry.getId());
+        stmt.setTimestamp(3, Timestamp.from(entry.getNextAttemptTime()));
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+    log.debug("Moved {} processed records to TXNO_PROCESSED", entries.size());
+  }
+
+  private String updateSql() {
+    // language=MySQL
+    return "UPDATE "
+        + tableName
+        + " "
+        + "SET lastAttemptTime = ?, nextAttemptTime = ?, attempts = ?, blocked = ?, processed = ?, version = ? "
+        + "WHERE id = ? and version = ?";
+  }
+
+  private void setupUpdate(TransactionOutboxEntry entry, PreparedStatement stmt)
+      throws SQLException {
+    stmt.setTimestamp(
+        1, entry.getLastAttemptTime() == null ? null : Timestamp.from(entry.getLastAttemptTime()));
+    stmt.setTimestamp(2, Timestamp.from(entry.getNextAttemptTime()));
+    stmt.setInt(3, entry.getAttempts());
+    stmt.setBoolean(4, entry.isBlocked());
+    stmt.setBoolean(5, entry.isProcessed());
+    stmt.setInt(6, entry.getVersion() + 1);
+    stmt.setString(7, entry.getId());
+    stmt.setInt(8, entry.getVersion());
+  }
+
   @Override
   public boolean lock(Transaction tx, TransactionOutboxEntry entry) throws Exception {
     //noinspection resource
@@ -271,9 +794,7 @@ public class DefaultPersistor implements Persistor, Validatable {
           // Ensure that subsequent processing uses a deserialized invocation rather than
           // the object from the caller, which might not serialize well and thus cause a
           // difference between immediate and retry processing
-          try (Reader invocationStream = rs.getCharacterStream("invocation")) {
-            entry.setInvocation(serializer.deserializeInvocation(invocationStream));
-          }
+          entry.setInvocation(readInvocation(rs));
           return true;
         }
       } catch (SQLTimeoutException e) {
@@ -283,6 +804,55 @@ public class DefaultPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public List<TransactionOutboxEntry> lockBatch(
+      Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    var invocations = new HashMap<String, Invocation>();
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                dialect
+                    .getLockBatch()
+                    .replace("{{table}}", tableName)
+                    .replace("{{ids}}", placeholders(entries.size())))) {
+      setIds(entries, stmt);
+      stmt.setQueryTimeout(writeLockTimeoutSeconds);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          // Read the invocation first; see map(ResultSet)
+          Invocation invocation = readInvocation(rs);
+          invocations.put(rs.getString("id") + ":" + rs.getInt("version"), invocation);
+        }
+      } catch (SQLTimeoutException e) {
+        log.debug("Lock attempt timed out on batch of {}", entries.size());
+        return List.of();
+      }
+    }
+    var locked = new ArrayList<TransactionOutboxEntry>(invocations.size());
+    for (TransactionOutboxEntry entry : entries) {
+      Invocation invocation = invocations.get(entry.getId() + ":" + entry.getVersion());
+      if (invocation != null) {
+        entry.setInvocation(invocation);
+        locked.add(entry);
+      }
+    }
+    log.debug("Locked {} of batch of {}", locked.size(), entries.size());
+    return locked;
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  private static void setIds(List<TransactionOutboxEntry> entries, PreparedStatement stmt)
+      throws SQLException {
+    int pos = 1;
+    for (TransactionOutboxEntry entry : entries) {
+      stmt.setString(pos++, entry.getId());
+    }
+  }
+
   @Override
   public boolean unblock(Transaction tx, String entryId) throws Exception {
     //noinspection resource
@@ -308,28 +878,107 @@ public class DefaultPersistor implements Persistor, Validatable {
   @Override
   public List<TransactionOutboxEntry> selectBatch(Transaction tx, int batchSize, Instant now)
       throws Exception {
+    return selectBatch(tx, batchSize, now, null);
+  }
+
+  private List<TransactionOutboxEntry> selectBatch(
+      Transaction tx, int batchSize, Instant now, int[] slots) throws Exception {
     //noinspection resource
     try (PreparedStatement stmt =
-        tx.connection()
-            .prepareStatement(
-                dialect
-                    .getSelectBatch()
-                    .replace("{{table}}", tableName)
-                    .replace("{{batchSize}}", Integer.toString(batchSize))
-                    .replace("{{allFields}}", ALL_FIELDS))) {
+        tx.connection().prepareStatement(batchSql(dialect.getSelectBatch(), batchSize, slots))) {
       stmt.setTimestamp(1, Timestamp.from(now));
+      setSlots(stmt, 2, slots);
+      var result = new ArrayList<TransactionOutboxEntry>(batchSize);
+      gatherResults(stmt, result);
+      return result;
+    }
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry) throws Exception {
+    return claimBatch(tx, batchSize, now, leaseExpiry, null);
+  }
+
+  @Override
+  public boolean supportsSharding() {
+    String sql =
+        dialect.getClaimBatch() == null ? dialect.getSelectBatch() : dialect.getClaimBatch();
+    return sql.contains("{{shard}}");
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry, int shard, int shards)
+      throws Exception {
+    if (shards == 1 || !supportsSharding()) {
+      return Persistor.super.claimBatch(tx, batchSize, now, leaseExpiry, shard, shards);
+    }
+    int[] slots = {shard * SHARD_SLOTS / shards, (shard + 1) * SHARD_SLOTS / shards};
+    if (slots[0] == slots[1]) {
+      return List.of();
+    }
+    return claimBatch(tx, batchSize, now, leaseExpiry, slots);
+  }
+
+  /**
+   * Claims a batch, optionally restricted to the shard slots from {@code slots[0]} (inclusive) to
+   * {@code slots[1]} (exclusive).
+   */
+  private List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry, int[] slots)
+      throws Exception {
+    if (dialect.getClaimBatch() == null) {
+      List<TransactionOutboxEntry> entries = selectBatch(tx, batchSize, now, slots);
+      List<TransactionOutboxEntry> claimed = new ArrayList<>(entries.size());
+      for (TransactionOutboxEntry entry : entries) {
+        entry.setLastAttemptTime(now);
+        entry.setNextAttemptTime(leaseExpiry);
+        try {
+          update(tx, entry);
+          claimed.add(entry);
+        } catch (OptimisticLockException e) {
+          // Beaten to it by another instance
+        }
+      }
+      return claimed;
+    }
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection().prepareStatement(batchSql(dialect.getClaimBatch(), batchSize, slots))) {
+      stmt.setTimestamp(1, Timestamp.from(leaseExpiry));
+      stmt.setTimestamp(2, Timestamp.from(now));
+      stmt.setTimestamp(3, Timestamp.from(now));
+      setSlots(stmt, 4, slots);
       var result = new ArrayList<TransactionOutboxEntry>(batchSize);
       gatherResults(stmt, result);
+      // Neither RETURNING nor OUTPUT follows the subquery's ORDER BY
+      result.sort(Comparator.comparingInt(TransactionOutboxEntry::getPriority).reversed());
       return result;
     }
   }
 
+  private String batchSql(String sql, int batchSize, int[] slots) {
+    return sql.replace("{{table}}", tableName)
+        .replace("{{batchSize}}", Integer.toString(batchSize))
+        .replace("{{allFields}}", ALL_FIELDS)
+        .replace("{{shard}}", slots == null ? "" : "AND shard >= ? AND shard < ?");
+  }
+
+  private static void setSlots(PreparedStatement stmt, int pos, int[] slots) throws SQLException {
+    if (slots != null) {
+      stmt.setInt(pos, slots[0]);
+      stmt.setInt(pos + 1, slots[1]);
+    }
+  }
+
   @Override
   public Collection<TransactionOutboxEntry> selectNextInTopics(
       Transaction tx, int batchSize, Instant now) throws Exception {
     var sql =
-        dialect
-            .getFetchNextInAllTopics()
+        (trackActiveTopics
+                ? dialect.getFetchNextInActiveTopics()
+                : dialect.getFetchNextInAllTopics())
             .replace("{{table}}", tableName)
             .replace("{{batchSize}}", Integer.toString(batchSize))
             .replace("{{allFields}}", ALL_FIELDS);
@@ -345,6 +994,7 @@ public class DefaultPersistor implements Persistor, Validatable {
   @Override
   public int deleteProcessedAndExpired(Transaction tx, int batchSize, Instant now)
       throws Exception {
+    int deleted;
     //noinspection resource
     try (PreparedStatement stmt =
         tx.connection()
@@ -354,12 +1004,118 @@ public class DefaultPersistor implements Persistor, Validatable {
                     .replace("{{table}}", tableName)
                     .replace("{{batchSize}}", Integer.toString(batchSize)))) {
       stmt.setTimestamp(1, Timestamp.from(now));
-      return stmt.executeUpdate();
+      deleted = stmt.executeUpdate();
     }
+    if (archiveProcessed) {
+      //noinspection resource
+      try (PreparedStatement stmt =
+          tx.connection()
+              .prepareStatement(
+                  dialect
+                      .getDeleteExpiredArchived()
+                      .replace("{{batchSize}}", Integer.toString(batchSize)))) {
+        stmt.setTimestamp(1, Timestamp.from(now));
+        deleted += stmt.executeUpdate();
+      }
+    }
+    return deleted;
+  }
+
+  @Override
+  public int maintainPartitions(
+      TransactionManager transactionManager, Instant now, Duration retention) throws Exception {
+    if (dialect.getFetchPartitions() == null) {
+      return 0;
+    }
+    String prefix = (tableName + "_P").toLowerCase(Locale.ROOT);
+    Set<LocalDate> existing = new HashSet<>();
+    LocalDate horizon =
+        transactionManager.inTransactionReturnsThrows(
+            tx -> {
+              //noinspection resource
+              try (Statement stmt = tx.connection().createStatement();
+                  ResultSet rs =
+                      stmt.executeQuery(
+                          dialect.getFetchPartitions().replace("{{table}}", tableName))) {
+                while (rs.next()) {
+                  String name = rs.getString(1).toLowerCase(Locale.ROOT);
+                  if (name.startsWith(prefix)) {
+                    try {
+                      existing.add(
+                          LocalDate.parse(name.substring(prefix.length()), PARTITION_SUFFIX));
+                    } catch (DateTimeParseException e) {
+                      // Not one of ours
+                    }
+                  }
+                }
+              }
+              //noinspection resource
+              try (Statement stmt = tx.connection().createStatement();
+                  ResultSet rs =
+                      stmt.executeQuery(
+                          dialect.getFetchUnpartitionedHorizon().replace("{{table}}", tableName))) {
+                Timestamp latest = rs.next() ? rs.getTimestamp(1) : null;
+                return latest == null ? null : latest.toLocalDateTime().toLocalDate();
+              }
+            });
+
+    // Timestamps are written in the JVM's time zone, so partitions follow its days
+    ZoneId zone = ZoneId.systemDefault();
+    int dropped = 0;
+    for (LocalDate day : existing) {
+      if (!day.plusDays(1).atStartOfDay(zone).toInstant().isAfter(now)) {
+        transactionManager.inTransactionThrows(
+            tx -> executePartitionDdl(tx, dialect.getDropPartition(), day));
+        log.info("Dropped expired partition {}", partitionName(day));
+        dropped++;
+      }
+    }
+
+    LocalDate from = LocalDateTime.ofInstant(now, zone).toLocalDate();
+    if (horizon != null && !horizon.isBefore(from)) {
+      from = horizon.plusDays(1);
+    }
+    LocalDate to = LocalDateTime.ofInstant(now.plus(retention), zone).toLocalDate();
+    for (LocalDate day = from; !day.isAfter(to.plusDays(PARTITIONS_AHEAD)); day = day.plusDays(1)) {
+      if (!existing.contains(day)) {
+        LocalDate partitionDay = day;
+        try {
+          transactionManager.inTransactionThrows(
+              tx -> executePartitionDdl(tx, dialect.getCreatePartition(), partitionDay));
+          log.info("Created partition {}", partitionName(day));
+        } catch (Exception e) {
+          // Most likely a record for this day has just been stored outside the partitions. Try
+          // again on the next flush, which will start after it.
+          log.warn("Failed to create partition {}, will retry", partitionName(day), e);
+          break;
+        }
+      }
+    }
+    return dropped;
+  }
+
+  private void executePartitionDdl(Transaction tx, String sql, LocalDate day) throws SQLException {
+    //noinspection resource
+    try (Statement stmt = tx.connection().createStatement()) {
+      stmt.execute(
+          sql.replace("{{partition}}", partitionName(day))
+              .replace("{{table}}", tableName)
+              .replace("{{from}}", day.toString())
+              .replace("{{to}}", day.plusDays(1).toString()));
+    }
+  }
+
+  private String partitionName(LocalDate day) {
+    return tableName + "_P" + PARTITION_SUFFIX.format(day);
   }
 
   @Override
   public int deleteOutdatedInAllTopics(Transaction tx) throws Exception {
+    if (dialect.getLockSuperseded() != null
+        && Math.floorMod(outdatedSweepCalls.getAndIncrement(), outdatedSweepInterval) != 0) {
+      // Superseded records are normally deleted as newer ones are saved
+      return 0;
+    }
     //noinspection resource
     try (PreparedStatement stmt =
         tx.connection()
@@ -385,31 +1141,113 @@ public class DefaultPersistor implements Persistor, Validatable {
     if (rs.wasNull()) {
       sequence = null;
     }
+    TransactionOutboxEntry entry =
+        TransactionOutboxEntry.builder()
+            // Reading the invocation *must* occur first because some drivers (ex. SQL Server)
+            // implement true streams that are not buffered in memory. Calling any other getter
+            // on ResultSet before the invocation is read will cause the stream to be closed
+            // prematurely.
+            .invocation(readInvocation(rs))
+            .id(rs.getString("id"))
+            .uniqueRequestId(rs.getString("uniqueRequestId"))
+            .topic("*".equals(topic) ? null : topic)
+            .sequence(sequence)
+            .lastAttemptTime(
+                rs.getTimestamp("lastAttemptTime") == null
+                    ? null
+                    : rs.getTimestamp("lastAttemptTime").toInstant())
+            .nextAttemptTime(rs.getTimestamp("nextAttemptTime").toInstant())
+            .attempts(rs.getInt("attempts"))
+            .blocked(rs.getBoolean("blocked"))
+            .processed(rs.getBoolean("processed"))
+            .version(rs.getInt("version"))
+            .orderedTakeLast(rs.getBoolean("orderedTakeLast"))
+            .priority(rs.getInt("priority"))
+            .build();
+    log.debug("Found {}", entry);
+    return entry;
+  }
+
+  /**
+   * Reads whichever of the text or binary invocation columns is populated, so that entries written
+   * before or after a change of {@link InvocationSerializer} can both be read.
+   */
+  private Invocation readInvocation(ResultSet rs) throws SQLException, IOException {
     try (Reader invocationStream = rs.getCharacterStream("invocation")) {
-      TransactionOutboxEntry entry =
-          TransactionOutboxEntry.builder()
-              // Reading invocationStream *must* occur first because some drivers (ex. SQL Server)
-              // implement true streams that are not buffered in memory. Calling any other getter
-              // on ResultSet before invocationStream is read will cause Reader to be closed
-              // prematurely.
-              .invocation(serializer.deserializeInvocation(invocationStream))
-              .id(rs.getString("id"))
-              .uniqueRequestId(rs.getString("uniqueRequestId"))
-              .topic("*".equals(topic) ? null : topic)
-              .sequence(sequence)
-              .lastAttemptTime(
-                  rs.getTimestamp("lastAttemptTime") == null
-                      ? null
-                      : rs.getTimestamp("lastAttemptTime").toInstant())
-              .nextAttemptTime(rs.getTimestamp("nextAttemptTime").toInstant())
-              .attempts(rs.getInt("attempts"))
-              .blocked(rs.getBoolean("blocked"))
-              .processed(rs.getBoolean("processed"))
-              .version(rs.getInt("version"))
-              .orderedTakeLast(rs.getBoolean("orderedTakeLast"))
-              .build();
-      log.debug("Found {}", entry);
-      return entry;
+      if (invocationStream != null) {
+        return serializer.deserializeInvocation(invocationStream);
+      }
+    }
+    try (InputStream invocationStream = rs.getBinaryStream("invocationBinary")) {
+      if (invocationStream == null) {
+        return null;
+      }
+      try (InputStream in = InvocationCompression.decompressing(invocationStream)) {
+        return serializer.deserializeInvocation(in);
+      }
+    }
+  }
+
+  @Override
+  public int deactivateIdleTopics(TransactionManager transactionManager, int batchSize)
+      throws Exception {
+    if (!trackActiveTopics) {
+      return 0;
+    }
+    Map<String, Long> idle =
+        transactionManager.inTransactionReturnsThrows(
+            tx -> {
+              //noinspection resource
+              try (PreparedStatement stmt =
+                  tx.connection()
+                      .prepareStatement(
+                          "SELECT topic, seq FROM TXNO_SEQUENCE s WHERE active = "
+                              + dialect.booleanValue(true)
+                              + " AND NOT EXISTS (SELECT 1 FROM "
+                              + tableName
+                              + " a WHERE a.topic = s.topic AND a.processed = "
+                              + dialect.booleanValue(false)
+                              + ")")) {
+                stmt.setMaxRows(batchSize);
+                Map<String, Long> result = new HashMap<>();
+                try (ResultSet rs = stmt.executeQuery()) {
+                  while (rs.next()) {
+                    result.put(rs.getString(1), rs.getLong(2));
+                  }
+                }
+                return result;
+              }
+            });
+    int deactivated = 0;
+    for (var topic : idle.entrySet()) {
+      if (transactionManager.inTransactionReturnsThrows(
+          tx -> deactivate(tx, topic.getKey(), topic.getValue()))) {
+        deactivated++;
+      }
+    }
+    if (deactivated > 0) {
+      log.debug("Marked {} topics idle", deactivated);
+    }
+    return deactivated;
+  }
+
+  /**
+   * Marks a topic idle, unless its sequence number has moved on since it was found to be idle. Any
+   * transaction scheduling work in the topic updates the sequence number, and holds a lock on it
+   * until it commits, so this cannot hide newly scheduled work. Each topic is updated in its own
+   * transaction so that we never hold one topic's lock while waiting for another's.
+   */
+  private boolean deactivate(Transaction tx, String topic, long seq) throws SQLException {
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                "UPDATE TXNO_SEQUENCE SET active = "
+                    + dialect.booleanValue(false)
+                    + " WHERE topic = ? AND seq = ?")) {
+      stmt.setString(1, topic);
+      stmt.setLong(2, seq);
+      return stmt.executeUpdate() > 0;
     }
   }
 
@@ -420,6 +1258,30 @@ public class DefaultPersistor implements Persistor, Validatable {
     try (Statement stmt = tx.connection().createStatement()) {
       stmt.execute("DELETE FROM " + tableName);
     }
+    if (archiveProcessed) {
+      //noinspection resource
+      try (Statement stmt = tx.connection().createStatement()) {
+        stmt.execute("DELETE FROM TXNO_PROCESSED");
+      }
+    }
+  }
+
+  @Override
+  public Backlog selectBacklog(Transaction tx) throws SQLException {
+    //noinspection resource
+    try (Statement stmt = tx.connection().createStatement();
+        ResultSet rs =
+            stmt.executeQuery(
+                "SELECT COUNT(*), MIN(nextAttemptTime) FROM "
+                    + tableName
+                    + " WHERE processed = "
+                    + dialect.booleanValue(false)
+                    + " AND blocked = "
+                    + dialect.booleanValue(false))) {
+      rs.next();
+      Timestamp oldest = rs.getTimestamp(2);
+      return new Backlog(rs.getLong(1), oldest == null ? null : oldest.toInstant());
+    }
   }
 
   @Override
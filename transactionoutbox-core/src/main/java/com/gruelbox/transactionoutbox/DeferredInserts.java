@@ -0,0 +1,62 @@
+package com.gruelbox.transactionoutbox;
+
+import com.gruelbox.transactionoutbox.spi.Utils;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entries saved in a transaction whose insertion has been deferred until just before it commits, so
+ * that they can be written together. Registered as a {@link Transaction#addPreCommitHook pre-commit
+ * hook}, once per persistor per transaction.
+ */
+final class DeferredInserts implements Runnable {
+
+  private final List<TransactionOutboxEntry> entries = new ArrayList<>();
+  private final List<SerializedInvocation> invocations = new ArrayList<>();
+  private final Writer writer;
+
+  private DeferredInserts(Writer writer) {
+    this.writer = writer;
+  }
+
+  /**
+   * Gets the deferred inserts for a transaction, registering them if this is the first.
+   *
+   * @param tx The transaction.
+   * @param key Identifies the persistor.
+   * @param writer Writes the entries when the transaction commits.
+   * @return The deferred inserts, or null if the transaction does not support pre-commit hooks.
+   */
+  static DeferredInserts in(Transaction tx, Object key, Writer writer) {
+    try {
+      return tx.addPreCommitHook(key, () -> new DeferredInserts(writer));
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  void add(TransactionOutboxEntry entry, SerializedInvocation invocation) {
+    entries.add(entry);
+    invocations.add(invocation);
+  }
+
+  /** Writes any entries deferred so far. */
+  @Override
+  public void run() {
+    if (entries.isEmpty()) {
+      return;
+    }
+    try {
+      Utils.uncheck(() -> writer.write(entries, invocations));
+    } finally {
+      entries.clear();
+      invocations.clear();
+    }
+  }
+
+  @FunctionalInterface
+  interface Writer {
+    void write(List<TransactionOutboxEntry> entries, List<SerializedInvocation> invocations)
+        throws Exception;
+  }
+}
@@ -14,10 +14,43 @@ public interface Dialect {
    */
   String getDeleteExpired();
 
+  /**
+   * @return Format string for the SQL required to select up to {@code {{batchSize}}} due,
+   *     unblocked, unprocessed records outside any topic, highest {@code priority} first. The
+   *     parameter is the time before which records are due. {@code {{shard}}} is replaced either
+   *     with nothing or with criteria restricting the records to a range of shards, which take two
+   *     further parameters.
+   */
   String getSelectBatch();
 
+  /**
+   * @return Format string for a single statement which selects up to {@code {{batchSize}}} due,
+   *     unblocked, unprocessed records outside any topic, highest {@code priority} first, and
+   *     pushes their {@code nextAttemptTime} forward, returning the updated records. Parameters are
+   *     the new {@code nextAttemptTime}, the new {@code lastAttemptTime} and the time before which
+   *     records are due, in that order, followed by those for {@code {{shard}}} as in {@link
+   *     #getSelectBatch()}. May be null if the database cannot do this in one statement, in which
+   *     case records are selected and updated separately.
+   */
+  String getClaimBatch();
+
   String getLock();
 
+  /**
+   * @return Format string for the SQL required to send a notification to other application
+   *     instances on {@code {{channel}}}, which is delivered only when the current transaction
+   *     commits. May be null if the database does not support this.
+   */
+  String getNotifyPending();
+
+  /**
+   * @return Format string for the SQL required to lock a batch of records by id, skipping any
+   *     already locked where the database supports it. Must select at least {@code id}, {@code
+   *     version}, {@code invocation} and {@code invocationBinary}. {@code {{ids}}} is replaced with
+   *     one parameter placeholder per record.
+   */
+  String getLockBatch();
+
   String getCheckSql();
 
   /**
@@ -26,19 +59,115 @@ public interface Dialect {
    */
   String getDeleteOutdatedInAllTopics();
 
+  /**
+   * @return Format string for the SQL required to select and lock the {@code id}s of {@code
+   *     orderedTakeLast} records in a topic which have been superseded by a newer one, skipping any
+   *     already locked (i.e. being processed). Parameters are the topic and the sequence number of
+   *     the newest record, in that order. May be null, in which case superseded records are only
+   *     removed by {@link #getDeleteOutdatedInAllTopics()}. Should be null for databases which
+   *     cannot skip locked records, since saving would otherwise wait for them to be processed.
+   */
+  default String getLockSuperseded() {
+    return null;
+  }
+
   String getFetchNextInAllTopics();
 
+  /**
+   * @return Format string for the SQL required to select the next record in each topic, like {@link
+   *     #getFetchNextInAllTopics()}, but only considering topics marked active in {@code
+   *     TXNO_SEQUENCE}. May be null if the dialect does not track active topics.
+   */
+  default String getFetchNextInActiveTopics() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to check whether a processed record with the
+   *     specified {@code uniqueRequestId} is still retained. Used by dialects where the database
+   *     cannot enforce uniqueness across processed records, which is then checked after each
+   *     insert. May be null if the database enforces it.
+   */
+  default String getCheckProcessed() {
+    return null;
+  }
+
+  /**
+   * @return SQL required to check whether the processed request table {@code TXNO_PROCESSED} holds
+   *     a record with the specified {@code uniqueRequestId}. Must see records committed by other
+   *     transactions since the current one started, so uses a locking read where the default
+   *     isolation level does not. May be null if the dialect does not support moving processed
+   *     records to this table.
+   */
+  default String getCheckArchived() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to delete up to {@code {{batchSize}}} records from
+   *     {@code TXNO_PROCESSED} which expired before the specified time.
+   */
+  default String getDeleteExpiredArchived() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to list the names of the partitions holding
+   *     processed records. May be null if the dialect does not partition processed records, in
+   *     which case expired records are only removed by {@link #getDeleteExpired()}.
+   */
+  default String getFetchPartitions() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to select the latest {@code nextAttemptTime} of
+   *     processed records not held in any time-based partition. Partitions are only created after
+   *     this time, since records covered by a new partition cannot already be held elsewhere.
+   */
+  default String getFetchUnpartitionedHorizon() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to create partition {@code {{partition}}}, holding
+   *     processed records with a {@code nextAttemptTime} from {@code {{from}}} (inclusive) to
+   *     {@code {{to}}} (exclusive).
+   */
+  default String getCreatePartition() {
+    return null;
+  }
+
+  /**
+   * @return Format string for the SQL required to drop partition {@code {{partition}}}.
+   */
+  default String getDropPartition() {
+    return null;
+  }
+
   String getFetchCurrentVersion();
 
   String getFetchNextSequence();
 
+  /**
+   * @return True if the database supports inserting several rows in one {@code INSERT ... VALUES
+   *     (...), (...)} statement. If not, such inserts are made using a JDBC batch instead.
+   */
+  default boolean isMultiRowInsert() {
+    return true;
+  }
+
   String booleanValue(boolean criteriaValue);
 
   void createVersionTableIfNotExists(Connection connection) throws SQLException;
 
   Stream<Migration> getMigrations();
 
-  Dialect MY_SQL_5 = DefaultDialect.builder("MY_SQL_5").build();
+  Dialect MY_SQL_5 =
+      DefaultDialect.builder("MY_SQL_5")
+          .checkArchived(
+              "SELECT 1 FROM TXNO_PROCESSED WHERE uniqueRequestId = ? LOCK IN SHARE MODE")
+          .build();
   Dialect MY_SQL_8 =
       DefaultDialect.builder("MY_SQL_8")
           .fetchNextInAllTopics(
@@ -54,44 +183,85 @@ public interface Dialect {
                   + " LIMIT {{batchSize}}")
           .selectBatch(
               "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
-                  + "AND blocked = false AND processed = false AND topic = '*' LIMIT {{batchSize}} FOR UPDATE "
-                  + "SKIP LOCKED")
+                  + "AND blocked = false AND processed = false AND topic = '*' {{shard}} ORDER BY priority DESC "
+                  + "LIMIT {{batchSize}} FOR UPDATE SKIP LOCKED")
           .lock(
-              "SELECT id, invocation FROM {{table}} WHERE id = ? AND version = ? FOR "
+              "SELECT id, invocation, invocationBinary FROM {{table}} WHERE id = ? AND version = ? FOR "
                   + "UPDATE SKIP LOCKED")
+          .lockBatch(
+              "SELECT id, version, invocation, invocationBinary FROM {{table}} WHERE id IN ({{ids}}) FOR UPDATE "
+                  + "SKIP LOCKED")
+          .lockSuperseded(
+              "SELECT id FROM {{table}} WHERE topic = ? AND orderedTakeLast = true AND seq < ? FOR UPDATE "
+                  + "SKIP LOCKED")
+          .checkArchived(
+              "SELECT 1 FROM TXNO_PROCESSED WHERE uniqueRequestId = ? LOCK IN SHARE MODE")
           .build();
-  Dialect POSTGRESQL_9 =
-      DefaultDialect.builder("POSTGRESQL_9")
-          .fetchNextInAllTopics(
-              "WITH raw AS(SELECT {{allFields}}, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq)) as rn"
-                  + " FROM {{table}} WHERE processed = false AND topic <> '*')"
-                  + " SELECT * FROM raw WHERE rn = 1 AND (blocked = false OR orderedTakeLast = false) AND nextAttemptTime < ? LIMIT {{batchSize}}")
-          .deleteOutdatedInAllTopics(
-              "WITH raw AS(SELECT id, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq DESC)) as rn"
-                  + " FROM {{table}} WHERE orderedTakeLast = true AND topic <> '*')"
-                  + " DELETE FROM {{table}} WHERE id IN (SELECT raw.id FROM raw WHERE rn > 1)")
-          .deleteExpired(
-              "DELETE FROM {{table}} WHERE id IN "
-                  + "(SELECT id FROM {{table}} WHERE nextAttemptTime < ? AND processed = true AND blocked = false LIMIT {{batchSize}})")
-          .selectBatch(
-              "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
-                  + "AND blocked = false AND processed = false AND topic = '*' LIMIT "
-                  + "{{batchSize}} FOR UPDATE SKIP LOCKED")
-          .lock(
-              "SELECT id, invocation FROM {{table}} WHERE id = ? AND version = ? FOR "
-                  + "UPDATE SKIP LOCKED")
+  Dialect POSTGRESQL_9 = postgresql("POSTGRESQL_9").build();
+
+  /**
+   * PostgreSQL 11 or later, with the outbox partitioned so that expired records are removed by
+   * dropping whole partitions rather than deleting rows. Processed records are held in daily
+   * partitions by expiry time, which are created ahead and dropped once expired as part of {@link
+   * TransactionOutbox#flush()}. Records processed before switching to this dialect are held outside
+   * these partitions and are deleted as normal.
+   *
+   * <p>The database cannot enforce uniqueness of {@code uniqueRequestId} across partitions, so
+   * unprocessed records are checked against processed ones as they are saved. This relies on the
+   * check seeing records processed by other transactions, and so requires {@code READ COMMITTED}
+   * isolation, which is the PostgreSQL default. Likewise, {@code id} is unique within each
+   * partition rather than across the table, since a primary key would have to include the nullable
+   * {@code nextAttemptTime}.
+   *
+   * <p>Converting an existing outbox is an offline migration: the table is copied and dropped under
+   * an {@code ACCESS EXCLUSIVE} lock, which blocks all reads and writes until it completes. On a
+   * large table, stop all instances and allow for a maintenance window before switching dialect.
+   */
+  Dialect POSTGRESQL_PARTITIONED =
+      postgresql("POSTGRESQL_PARTITIONED")
+          .checkProcessed("SELECT 1 FROM {{table}} WHERE uniqueRequestId = ? AND processed = true")
+          .fetchPartitions(
+              "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+                  + " WHERE i.inhparent = to_regclass('{{table}}_PROCESSED')")
+          .fetchUnpartitionedHorizon("SELECT MAX(nextAttemptTime) FROM {{table}}_PROCESSED_DEFAULT")
+          .createPartition(
+              "SET LOCAL lock_timeout = '5s'; CREATE TABLE {{partition}} PARTITION OF"
+                  + " {{table}}_PROCESSED FOR VALUES FROM ('{{from}}') TO ('{{to}}');"
+                  + " CREATE UNIQUE INDEX ON {{partition}} (id)")
+          .dropPartition("SET LOCAL lock_timeout = '5s'; DROP TABLE {{partition}}")
           .changeMigration(
-              5, "ALTER TABLE TXNO_OUTBOX ALTER COLUMN uniqueRequestId TYPE VARCHAR(250)")
-          .changeMigration(6, "ALTER TABLE TXNO_OUTBOX RENAME COLUMN blacklisted TO blocked")
-          .changeMigration(7, "ALTER TABLE TXNO_OUTBOX ADD COLUMN lastAttemptTime TIMESTAMP(6)")
-          .disableMigration(8)
+              17,
+              "CREATE TABLE TXNO_OUTBOX_NEW (LIKE TXNO_OUTBOX INCLUDING DEFAULTS)"
+                  + " PARTITION BY LIST (processed);\n"
+                  + "CREATE TABLE TXNO_OUTBOX_PENDING PARTITION OF TXNO_OUTBOX_NEW DEFAULT;\n"
+                  + "CREATE TABLE TXNO_OUTBOX_PROCESSED PARTITION OF TXNO_OUTBOX_NEW"
+                  + " FOR VALUES IN (true) PARTITION BY RANGE (nextAttemptTime);\n"
+                  + "CREATE TABLE TXNO_OUTBOX_PROCESSED_DEFAULT PARTITION OF TXNO_OUTBOX_PROCESSED"
+                  + " DEFAULT;\n"
+                  + "INSERT INTO TXNO_OUTBOX_NEW SELECT * FROM TXNO_OUTBOX;\n"
+                  + "DROP TABLE TXNO_OUTBOX;\n"
+                  + "ALTER TABLE TXNO_OUTBOX_NEW RENAME TO TXNO_OUTBOX;\n"
+                  + "CREATE INDEX IX_TXNO_OUTBOX_1 ON TXNO_OUTBOX (processed, blocked, nextAttemptTime);\n"
+                  + "CREATE INDEX IX_TXNO_OUTBOX_2 ON TXNO_OUTBOX (topic, processed, seq);\n"
+                  + "CREATE INDEX IX_TXNO_OUTBOX_4 ON TXNO_OUTBOX (uniqueRequestId);\n"
+                  + "CREATE UNIQUE INDEX UX_TXNO_OUTBOX_PENDING_1 ON TXNO_OUTBOX_PENDING"
+                  + " (uniqueRequestId);\n"
+                  + "CREATE UNIQUE INDEX UX_TXNO_OUTBOX_PENDING_2 ON TXNO_OUTBOX_PENDING (id);\n"
+                  + "CREATE UNIQUE INDEX UX_TXNO_OUTBOX_PROCESSED_DEFAULT_1"
+                  + " ON TXNO_OUTBOX_PROCESSED_DEFAULT (id)")
           .build();
 
   Dialect H2 =
       DefaultDialect.builder("H2")
+          .claimBatch(
+              "SELECT {{allFields}} FROM FINAL TABLE (UPDATE {{table}} SET nextAttemptTime = ?, "
+                  + "lastAttemptTime = ? WHERE id IN (SELECT id FROM {{table}} WHERE nextAttemptTime < ? "
+                  + "AND blocked = false AND processed = false AND topic = '*' {{shard}} ORDER BY priority DESC "
+                  + "LIMIT {{batchSize}}))")
           .changeMigration(5, "ALTER TABLE TXNO_OUTBOX ALTER COLUMN uniqueRequestId VARCHAR(250)")
           .changeMigration(6, "ALTER TABLE TXNO_OUTBOX RENAME COLUMN blacklisted TO blocked")
           .disableMigration(8)
+          .changeMigration(14, "ALTER TABLE TXNO_OUTBOX ADD COLUMN invocationBinary BLOB")
           .build();
   Dialect ORACLE =
       DefaultDialect.builder("ORACLE")
@@ -99,6 +269,12 @@ public interface Dialect {
               "WITH cte1 AS (SELECT {{allFields}}, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq)) as rn"
                   + " FROM {{table}} WHERE processed = 0 AND topic <> '*')"
                   + " SELECT * FROM cte1 WHERE rn = 1 AND (blocked = 0 OR orderedTakeLast = 0) AND nextAttemptTime < ? AND ROWNUM <= {{batchSize}}")
+          .fetchNextInActiveTopics(
+              "SELECT {{allFields}} FROM {{table}} a JOIN ("
+                  + "SELECT s.topic AS headTopic, (SELECT MIN(b.seq) FROM {{table}} b WHERE b.topic = s.topic AND b.processed = 0) AS headSeq"
+                  + " FROM TXNO_SEQUENCE s WHERE s.active = 1) h ON a.topic = h.headTopic AND a.seq = h.headSeq"
+                  + " WHERE a.processed = 0 AND (a.blocked = 0 OR a.orderedTakeLast = 0) AND a.nextAttemptTime < ?"
+                  + " AND ROWNUM <= {{batchSize}}")
           .deleteOutdatedInAllTopics(
               "DELETE FROM {{table}} WHERE id IN (SELECT v.id FROM ("
                   + "SELECT a.id FROM {{table}} a WHERE a.topic <> '*' AND a.orderedTakeLast = 1 AND a.seq IS NOT NULL"
@@ -109,13 +285,23 @@ public interface Dialect {
               "DELETE FROM {{table}} WHERE nextAttemptTime < ? AND processed = 1 AND blocked = 0 "
                   + "AND ROWNUM <= {{batchSize}}")
           .selectBatch(
-              "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
-                  + "AND blocked = 0 AND processed = 0 AND topic = '*' AND ROWNUM <= {{batchSize}} FOR UPDATE "
-                  + "SKIP LOCKED")
+              "SELECT {{allFields}} FROM {{table}} WHERE id IN (SELECT id FROM ("
+                  + "SELECT id FROM {{table}} WHERE nextAttemptTime < ? AND blocked = 0 AND processed = 0 "
+                  + "AND topic = '*' {{shard}} ORDER BY priority DESC) WHERE ROWNUM <= {{batchSize}}) "
+                  + "FOR UPDATE SKIP LOCKED")
           .lock(
-              "SELECT id, invocation FROM {{table}} WHERE id = ? AND version = ? FOR "
+              "SELECT id, invocation, invocationBinary FROM {{table}} WHERE id = ? AND version = ? FOR "
                   + "UPDATE SKIP LOCKED")
+          .lockBatch(
+              "SELECT id, version, invocation, invocationBinary FROM {{table}} WHERE id IN ({{ids}}) FOR UPDATE "
+                  + "SKIP LOCKED")
+          .lockSuperseded(
+              "SELECT id FROM {{table}} WHERE topic = ? AND orderedTakeLast = 1 AND seq < ? FOR UPDATE "
+                  + "SKIP LOCKED")
+          .deleteExpiredArchived(
+              "DELETE FROM TXNO_PROCESSED WHERE expiryTime < ? AND ROWNUM <= {{batchSize}}")
           .checkSql("SELECT 1 FROM DUAL")
+          .multiRowInsert(false)
           .changeMigration(
               1,
               "CREATE TABLE TXNO_OUTBOX (\n"
@@ -140,6 +326,14 @@ public interface Dialect {
               "CREATE TABLE TXNO_SEQUENCE (topic VARCHAR(250) NOT NULL, seq NUMBER NOT NULL, CONSTRAINT PK_TXNO_SEQUENCE PRIMARY KEY (topic, seq))")
           .changeMigration(
               13, "ALTER TABLE TXNO_OUTBOX ADD orderedTakeLast NUMBER(1) DEFAULT 0 NOT NULL")
+          .changeMigration(14, "ALTER TABLE TXNO_OUTBOX ADD invocationBinary BLOB")
+          .changeMigration(15, "ALTER TABLE TXNO_SEQUENCE ADD active NUMBER(1) DEFAULT 1 NOT NULL")
+          .changeMigration(
+              18,
+              "CREATE TABLE TXNO_PROCESSED (uniqueRequestId VARCHAR2(250) NOT NULL, id VARCHAR2(36) NOT NULL,"
+                  + " expiryTime TIMESTAMP(6), CONSTRAINT PK_TXNO_PROCESSED PRIMARY KEY (uniqueRequestId))")
+          .changeMigration(20, "ALTER TABLE TXNO_OUTBOX ADD shard NUMBER(10) DEFAULT 0 NOT NULL")
+          .changeMigration(22, "ALTER TABLE TXNO_OUTBOX ADD priority NUMBER(10) DEFAULT 0 NOT NULL")
           .booleanValueFrom(v -> v ? "1" : "0")
           .createVersionTableBy(
               connection -> {
@@ -159,15 +353,26 @@ public interface Dialect {
   Dialect MS_SQL_SERVER =
       DefaultDialect.builder("MS_SQL_SERVER")
           .lock(
-              "SELECT id, invocation FROM {{table}} WITH (UPDLOCK, ROWLOCK, READPAST) WHERE id = ? AND version = ?")
+              "SELECT id, invocation, invocationBinary FROM {{table}} WITH (UPDLOCK, ROWLOCK, READPAST) WHERE id = ? AND version = ?")
+          .lockBatch(
+              "SELECT id, version, invocation, invocationBinary FROM {{table}} WITH (UPDLOCK, ROWLOCK, READPAST) WHERE id IN ({{ids}})")
+          .lockSuperseded(
+              "SELECT id FROM {{table}} WITH (UPDLOCK, ROWLOCK, READPAST) WHERE topic = ? AND orderedTakeLast = 1 AND seq < ?")
           .selectBatch(
               "SELECT TOP ({{batchSize}}) {{allFields}} FROM {{table}} "
-                  + "WITH (UPDLOCK, ROWLOCK, READPAST) WHERE nextAttemptTime < ? AND topic = '*' "
-                  + "AND blocked = 0 AND processed = 0")
+                  + "WITH (UPDLOCK, ROWLOCK, READPAST) WHERE nextAttemptTime < ? AND topic = '*' {{shard}} "
+                  + "AND blocked = 0 AND processed = 0 ORDER BY priority DESC")
+          .claimBatch(
+              "UPDATE {{table}} SET nextAttemptTime = ?, lastAttemptTime = ? OUTPUT INSERTED.* "
+                  + "WHERE id IN (SELECT TOP ({{batchSize}}) id FROM {{table}} WITH (UPDLOCK, ROWLOCK, READPAST) "
+                  + "WHERE nextAttemptTime < ? AND topic = '*' {{shard}} AND blocked = 0 AND processed = 0 "
+                  + "ORDER BY priority DESC)")
           .delete("DELETE FROM {{table}} WITH (ROWLOCK, READPAST) WHERE id = ? and version = ?")
           .deleteExpired(
               "DELETE  TOP ({{batchSize}}) FROM {{table}} "
                   + "WHERE nextAttemptTime < ? AND processed = 1 AND blocked = 0")
+          .deleteExpiredArchived(
+              "DELETE TOP ({{batchSize}}) FROM TXNO_PROCESSED WHERE expiryTime < ?")
           .fetchCurrentVersion("SELECT version FROM TXNO_VERSION WITH (UPDLOCK, ROWLOCK, READPAST)")
           .deleteOutdatedInAllTopics(
               "DELETE FROM {{table}} WHERE id IN (SELECT v.id FROM ("
@@ -181,6 +386,11 @@ public interface Dialect {
                   + " AND seq = ("
                   + "SELECT MIN(seq) FROM {{table}} b WHERE b.topic=a.topic AND b.processed = 0"
                   + ")")
+          .fetchNextInActiveTopics(
+              "SELECT TOP {{batchSize}} {{allFields}} FROM {{table}} a JOIN ("
+                  + "SELECT s.topic AS headTopic, (SELECT MIN(b.seq) FROM {{table}} b WHERE b.topic = s.topic AND b.processed = 0) AS headSeq"
+                  + " FROM TXNO_SEQUENCE s WHERE s.active = 1) h ON a.topic = h.headTopic AND a.seq = h.headSeq"
+                  + " WHERE a.processed = 0 AND (a.blocked = 0 OR a.orderedTakeLast = 0) AND a.nextAttemptTime < ?")
           .fetchNextSequence(
               "SELECT seq FROM TXNO_SEQUENCE WITH (UPDLOCK, ROWLOCK, READPAST) WHERE topic = ?")
           .booleanValueFrom(v -> v ? "1" : "0")
@@ -230,5 +440,57 @@ public interface Dialect {
                 }
               })
           .disableMigration(13)
+          .changeMigration(14, "ALTER TABLE TXNO_OUTBOX ADD invocationBinary VARBINARY(MAX)")
+          .changeMigration(15, "ALTER TABLE TXNO_SEQUENCE ADD active BIT DEFAULT 1 NOT NULL")
+          .changeMigration(
+              18,
+              "CREATE TABLE TXNO_PROCESSED (uniqueRequestId VARCHAR(250) NOT NULL, id VARCHAR(36) NOT NULL,"
+                  + " expiryTime DATETIME2(6), CONSTRAINT PK_TXNO_PROCESSED PRIMARY KEY (uniqueRequestId))")
+          .changeMigration(20, "ALTER TABLE TXNO_OUTBOX ADD shard INT DEFAULT 0 NOT NULL")
+          .changeMigration(22, "ALTER TABLE TXNO_OUTBOX ADD priority INT DEFAULT 0 NOT NULL")
           .build();
+
+  private static DefaultDialect.Builder postgresql(String name) {
+    return DefaultDialect.builder(name)
+        .fetchNextInAllTopics(
+            "WITH raw AS(SELECT {{allFields}}, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq)) as rn"
+                + " FROM {{table}} WHERE processed = false AND topic <> '*')"
+                + " SELECT * FROM raw WHERE rn = 1 AND (blocked = false OR orderedTakeLast = false) AND nextAttemptTime < ? LIMIT {{batchSize}}")
+        .deleteOutdatedInAllTopics(
+            "WITH raw AS(SELECT id, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq DESC)) as rn"
+                + " FROM {{table}} WHERE orderedTakeLast = true AND topic <> '*')"
+                + " DELETE FROM {{table}} WHERE id IN (SELECT raw.id FROM raw WHERE rn > 1)")
+        .deleteExpired(
+            "DELETE FROM {{table}} WHERE id IN "
+                + "(SELECT id FROM {{table}} WHERE nextAttemptTime < ? AND processed = true AND blocked = false LIMIT {{batchSize}})")
+        .selectBatch(
+            "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
+                + "AND blocked = false AND processed = false AND topic = '*' {{shard}} "
+                + "ORDER BY priority DESC LIMIT {{batchSize}} FOR UPDATE SKIP LOCKED")
+        .claimBatch(
+            "UPDATE {{table}} SET nextAttemptTime = ?, lastAttemptTime = ? WHERE id IN "
+                + "(SELECT id FROM {{table}} WHERE nextAttemptTime < ? AND blocked = false "
+                + "AND processed = false AND topic = '*' {{shard}} ORDER BY priority DESC LIMIT {{batchSize}} "
+                + "FOR UPDATE SKIP LOCKED) "
+                + "RETURNING {{allFields}}")
+        .deleteExpiredArchived(
+            "DELETE FROM TXNO_PROCESSED WHERE uniqueRequestId IN (SELECT uniqueRequestId FROM"
+                + " TXNO_PROCESSED WHERE expiryTime < ? LIMIT {{batchSize}})")
+        .notifyPending("NOTIFY {{channel}}")
+        .lock(
+            "SELECT id, invocation, invocationBinary FROM {{table}} WHERE id = ? AND version = ? FOR "
+                + "UPDATE SKIP LOCKED")
+        .lockBatch(
+            "SELECT id, version, invocation, invocationBinary FROM {{table}} WHERE id IN ({{ids}}) FOR UPDATE "
+                + "SKIP LOCKED")
+        .lockSuperseded(
+            "SELECT id FROM {{table}} WHERE topic = ? AND orderedTakeLast = true AND seq < ? FOR UPDATE "
+                + "SKIP LOCKED")
+        .changeMigration(
+            5, "ALTER TABLE TXNO_OUTBOX ALTER COLUMN uniqueRequestId TYPE VARCHAR(250)")
+        .changeMigration(6, "ALTER TABLE TXNO_OUTBOX RENAME COLUMN blacklisted TO blocked")
+        .changeMigration(7, "ALTER TABLE TXNO_OUTBOX ADD COLUMN lastAttemptTime TIMESTAMP(6)")
+        .disableMigration(8)
+        .changeMigration(14, "ALTER TABLE TXNO_OUTBOX ADD COLUMN invocationBinary BYTEA");
+  }
 }
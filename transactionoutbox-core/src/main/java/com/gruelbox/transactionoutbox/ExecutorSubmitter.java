@@ -1,11 +1,15 @@
 package com.gruelbox.transactionoutbox;
 
 import com.gruelbox.transactionoutbox.spi.Utils;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.Consumer;
 import lombok.Builder;
+import lombok.Singular;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.event.Level;
 
@@ -35,6 +39,15 @@ import org.slf4j.event.Level;
  *   <li>The queue can afford to be quite large in most realistic production deployments, and it is
  *       advised that it be so (10000+).
  * </ul>
+ *
+ * <p>Work of a particular {@link TransactionOutboxEntry#getPriority() priority} can be given its
+ * own executor using {@link ExecutorSubmitterBuilder#priorityExecutor(Integer, Executor)}, so that
+ * it is not queued behind lower-priority work already submitted, e.g:
+ *
+ * <pre>ExecutorSubmitter.builder()
+ *     .executor(bulkExecutor)
+ *     .priorityExecutor(10, urgentExecutor)
+ *     .build()</pre>
  */
 @Slf4j
 @Builder
@@ -46,6 +59,14 @@ public class ExecutorSubmitter implements Submitter, Validatable {
   @SuppressWarnings("JavaDoc")
   private final Executor executor;
 
+  /**
+   * @param priorityExecutors Executors to use in place of {@code executor} for work of specific
+   *     priorities. Work of any other priority uses {@code executor}.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Singular
+  private final Map<Integer, Executor> priorityExecutors;
+
   /**
    * @param logLevelWorkQueueSaturation The log level to use when work submission hits the executor
    *     queue limit. This usually indicates saturation and may be of greater interest than the
@@ -58,7 +79,7 @@ public class ExecutorSubmitter implements Submitter, Validatable {
   @Override
   public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
     try {
-      executor.execute(() -> localExecutor.accept(entry));
+      executorFor(entry).execute(() -> localExecutor.accept(entry));
       log.debug("Submitted {} for immediate processing", entry.description());
     } catch (RejectedExecutionException e) {
       Utils.logAtLevel(
@@ -74,6 +95,55 @@ public class ExecutorSubmitter implements Submitter, Validatable {
     }
   }
 
+  @Override
+  public void submitBatch(
+      List<TransactionOutboxEntry> entries, Consumer<List<TransactionOutboxEntry>> localExecutor) {
+    try {
+      executorFor(entries.get(0)).execute(() -> localExecutor.accept(entries));
+      log.debug("Submitted batch of {} for immediate processing", entries.size());
+    } catch (RejectedExecutionException e) {
+      Utils.logAtLevel(
+          log,
+          logLevelWorkQueueSaturation,
+          "Queued batch of {} for processing when executor is available",
+          entries.size());
+    } catch (Exception e) {
+      log.warn(
+          "Failed to submit batch of {} for execution. It will be re-attempted later.",
+          entries.size(),
+          e);
+    }
+  }
+
+  /**
+   * Reports the capacity of the executors if they are all {@link ThreadPoolExecutor}s, whose idle
+   * threads and free queue space can be measured. Any other executor's capacity is unknown.
+   */
+  @Override
+  public int availableCapacity() {
+    long capacity = capacityOf(executor);
+    for (Executor priorityExecutor : priorityExecutors.values()) {
+      capacity += capacityOf(priorityExecutor);
+    }
+    return (int) Math.min(Integer.MAX_VALUE, capacity);
+  }
+
+  static long capacityOf(Executor executor) {
+    if (!(executor instanceof ThreadPoolExecutor)) {
+      return Integer.MAX_VALUE;
+    }
+    ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+    if (pool.isShutdown()) {
+      return 0;
+    }
+    return (long) pool.getQueue().remainingCapacity()
+        + Math.max(0, pool.getMaximumPoolSize() - pool.getActiveCount());
+  }
+
+  private Executor executorFor(TransactionOutboxEntry entry) {
+    return priorityExecutors.getOrDefault(entry.getPriority(), executor);
+  }
+
   @Override
   public void validate(Validator validator) {
     validator.notNull("executor", executor);
@@ -0,0 +1,232 @@
+package com.gruelbox.transactionoutbox;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background worker which repeatedly calls {@link TransactionOutbox#flush()}, adapting the interval
+ * between calls to the amount of work found:
+ *
+ * <ul>
+ *   <li>While {@link TransactionOutbox#flush()} finds work, it is called again immediately.
+ *   <li>Once it finds none, the next call is after {@link #minInterval}, which grows by {@link
+ *       #backoffMultiplier} each time no work is found, up to {@link #maxInterval}.
+ *   <li>As soon as work is found again, the interval drops back to {@link #minInterval}.
+ *   <li>Each delay is randomised by up to {@link #jitter} either way, so that instances started
+ *       together do not all query the database at the same moment.
+ * </ul>
+ *
+ * <p>This keeps latency low under load while cutting the number of idle queries against the outbox
+ * table, particularly with many application instances. {@link #wakeUp()} may be called to trigger
+ * an immediate flush, for example from a {@link PgNotifyListener}.
+ *
+ * <p>If {@link #minInterval} and {@link #maxInterval} are equal, this behaves like the simple
+ * fixed-rate background thread described in the README.
+ *
+ * <p>Usage:
+ *
+ * <pre>FlushScheduler scheduler = FlushScheduler.builder()
+ *     .outbox(outbox)
+ *     .minInterval(Duration.ofSeconds(1))
+ *     .maxInterval(Duration.ofSeconds(30))
+ *     .build();
+ * scheduler.start();
+ * ...
+ * scheduler.close();</pre>
+ *
+ * <p>A scheduler can only be started once. To resume flushing after {@link #close()}, build a new
+ * one.
+ */
+@Slf4j
+@Builder
+public class FlushScheduler implements AutoCloseable, Validatable {
+
+  /**
+   * @param outbox The outbox to flush. Required.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final TransactionOutbox outbox;
+
+  /**
+   * @param minInterval The delay before the next flush after one which found no work, following a
+   *     flush which did. Defaults to 1 second.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Duration minInterval = Duration.ofSeconds(1);
+
+  /**
+   * @param maxInterval The longest delay between flushes while the outbox is idle. Defaults to 30
+   *     seconds.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Duration maxInterval = Duration.ofSeconds(30);
+
+  /**
+   * @param backoffMultiplier The factor by which the delay grows each time a flush finds no work.
+   *     Defaults to 2.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final double backoffMultiplier = 2;
+
+  /**
+   * @param jitter The maximum proportion by which each delay is randomly lengthened or shortened,
+   *     between 0 and 1. Defaults to 0.2 (±20%).
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final double jitter = 0.2;
+
+  private final Object lock = new Object();
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "transaction-outbox-flush");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicReference<ScheduledFuture<?>> next = new AtomicReference<>();
+  private final AtomicLong currentIntervalMillis = new AtomicLong();
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+  private final AtomicBoolean flushing = new AtomicBoolean();
+  private final AtomicLong generation = new AtomicLong();
+
+  @Override
+  public void validate(Validator validator) {
+    validator.notNull("outbox", outbox);
+    validator.notNull("minInterval", minInterval);
+    validator.notNull("maxInterval", maxInterval);
+    if (minInterval != null && maxInterval != null) {
+      validator.isTrue(
+          "maxInterval",
+          maxInterval.compareTo(minInterval) >= 0,
+          "must be at least minInterval (%s)",
+          minInterval);
+    }
+    validator.isTrue("backoffMultiplier", backoffMultiplier >= 1, "must be at least 1");
+    validator.isTrue("jitter", jitter >= 0 && jitter <= 1, "must be between 0 and 1");
+  }
+
+  /**
+   * Starts flushing on a background daemon thread. The first flush is immediate.
+   *
+   * @throws IllegalStateException If already started, or closed.
+   */
+  public void start() {
+    new Validator(Clock::systemDefaultZone).validate(this);
+    synchronized (lock) {
+      if (executor.isShutdown()) {
+        throw new IllegalStateException("Closed");
+      }
+      if (!started.compareAndSet(false, true)) {
+        throw new IllegalStateException("Already started");
+      }
+      currentIntervalMillis.set(minInterval.toMillis());
+      scheduleNext(0);
+    }
+  }
+
+  /**
+   * Triggers a flush as soon as possible, without waiting for the current delay to elapse, and
+   * resets the delay to {@link #minInterval}. If a flush is already in progress, another will
+   * follow it immediately. Has no effect if the scheduler is not running.
+   */
+  public void wakeUp() {
+    synchronized (lock) {
+      if (!started.get() || executor.isShutdown()) {
+        return;
+      }
+      currentIntervalMillis.set(minInterval.toMillis());
+      if (flushing.get()) {
+        wakeUpRequested.set(true);
+      } else {
+        next.get().cancel(false);
+        scheduleNext(0);
+      }
+    }
+  }
+
+  /**
+   * Stops flushing. Waits up to a minute for any in-progress flush to complete, and then interrupts
+   * it.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    synchronized (lock) {
+      ScheduledFuture<?> scheduled = next.get();
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+      executor.shutdown();
+    }
+    if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+      log.warn("Timed out waiting for flush to complete. Interrupting");
+      executor.shutdownNow();
+    }
+  }
+
+  private void scheduleNext(long delayMillis) {
+    long thisGeneration = generation.incrementAndGet();
+    next.set(executor.schedule(() -> run(thisGeneration), delayMillis, TimeUnit.MILLISECONDS));
+  }
+
+  private void run(long thisGeneration) {
+    synchronized (lock) {
+      if (thisGeneration != generation.get()) {
+        // Superseded by wakeUp()
+        return;
+      }
+      flushing.set(true);
+    }
+    boolean foundWork = false;
+    try {
+      while (!Thread.currentThread().isInterrupted() && !executor.isShutdown() && outbox.flush()) {
+        foundWork = true;
+        log.debug("More work to do...");
+      }
+    } catch (Exception e) {
+      log.error("Error flushing transaction outbox. Pausing", e);
+    }
+    synchronized (lock) {
+      flushing.set(false);
+      if (executor.isShutdown()) {
+        return;
+      }
+      long delay;
+      if (wakeUpRequested.getAndSet(false)) {
+        delay = 0;
+      } else if (foundWork) {
+        currentIntervalMillis.set(minInterval.toMillis());
+        delay = jittered(minInterval.toMillis());
+      } else {
+        long interval = currentIntervalMillis.get();
+        currentIntervalMillis.set(
+            Math.min(maxInterval.toMillis(), (long) (interval * backoffMultiplier)));
+        delay = jittered(interval);
+      }
+      log.debug("Next flush in {}ms", delay);
+      scheduleNext(delay);
+    }
+  }
+
+  private long jittered(long delayMillis) {
+    if (jitter == 0 || delayMillis == 0) {
+      return delayMillis;
+    }
+    double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+    return Math.max(0, Math.round(delayMillis * factor));
+  }
+}
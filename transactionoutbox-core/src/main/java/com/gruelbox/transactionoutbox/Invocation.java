@@ -2,7 +2,6 @@ package com.gruelbox.transactionoutbox;
 
 import com.google.gson.annotations.SerializedName;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Map;
 import lombok.Value;
@@ -91,11 +90,15 @@ public class Invocation {
 
   Object invoke(TransactionOutboxEntry entry, Object instance, TransactionOutboxListener listener)
       throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-    Method method = instance.getClass().getDeclaredMethod(methodName, parameterTypes);
-    method.setAccessible(true);
+    InvokerCache.Invoker invoker =
+        InvokerCache.get(
+            instance.getClass(),
+            methodName,
+            parameterTypes == null ? new Class<?>[0] : parameterTypes);
     if (log.isDebugEnabled()) {
-      log.debug("Invoking method {} with args {}", method, Arrays.toString(args));
+      log.debug("Invoking method {} with args {}", invoker.getMethod(), Arrays.toString(args));
     }
-    return listener.wrapInvocation(entry, () -> method.invoke(instance, args));
+    return listener.wrapInvocation(
+        entry, () -> invoker.invoke(instance, args == null ? new Object[0] : args));
   }
 }
@@ -0,0 +1,137 @@
+package com.gruelbox.transactionoutbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+
+/**
+ * Per-thread, reusable buffers for serializing {@link Invocation}s before they are bound to a
+ * statement. A {@link java.io.StringWriter} grows from 16 characters by repeated doubling and then
+ * copies its contents once more to produce the {@link String}, leaving several full-size copies of
+ * a large invocation behind on every save. Reusing the buffer leaves just the final {@link String}
+ * (or byte array, for {@link InvocationSerializer#isBinary() binary} serializers).
+ *
+ * <p>Buffers which have grown beyond {@link #MAX_RETAINED_CAPACITY} are discarded after use rather
+ * than held on to by the thread.
+ */
+final class InvocationBuffer {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+  private static final ThreadLocal<InvocationBuffer> BUFFERS =
+      ThreadLocal.withInitial(InvocationBuffer::new);
+
+  private TextBuffer text;
+  private BinaryBuffer binary;
+
+  private InvocationBuffer() {}
+
+  /**
+   * Serializes an invocation as text using the calling thread's buffer.
+   *
+   * @param serializer The serializer.
+   * @param invocation The invocation.
+   * @return The serialized invocation.
+   */
+  static String serialize(InvocationSerializer serializer, Invocation invocation) {
+    InvocationBuffer buffers = BUFFERS.get();
+    if (buffers.text == null) {
+      buffers.text = new TextBuffer();
+    }
+    TextBuffer writer = buffers.text;
+    try {
+      serializer.serializeInvocation(invocation, writer);
+      return writer.buffer.toString();
+    } finally {
+      if (writer.buffer.capacity() > MAX_RETAINED_CAPACITY) {
+        buffers.text = null;
+      } else {
+        writer.buffer.setLength(0);
+      }
+    }
+  }
+
+  /**
+   * Serializes an invocation to bytes using the calling thread's buffer.
+   *
+   * @param serializer The serializer.
+   * @param invocation The invocation.
+   * @return The serialized invocation.
+   */
+  static byte[] serializeBinary(InvocationSerializer serializer, Invocation invocation) {
+    InvocationBuffer buffers = BUFFERS.get();
+    if (buffers.binary == null) {
+      buffers.binary = new BinaryBuffer();
+    }
+    BinaryBuffer out = buffers.binary;
+    try {
+      serializer.serializeInvocation(invocation, out);
+      return out.toByteArray();
+    } finally {
+      if (out.capacity() > MAX_RETAINED_CAPACITY) {
+        buffers.binary = null;
+      } else {
+        out.reset();
+      }
+    }
+  }
+
+  private static final class TextBuffer extends Writer {
+
+    private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+    @Override
+    public void write(int c) {
+      buffer.append((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      buffer.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      buffer.append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+      buffer.append(csq);
+      return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) {
+      buffer.append(csq, start, end);
+      return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+      buffer.append(c);
+      return this;
+    }
+
+    @Override
+    public void flush() {
+      // No-op
+    }
+
+    @Override
+    public void close() {
+      // No-op. Serializers may close the writer, but the buffer is reused.
+    }
+  }
+
+  private static final class BinaryBuffer extends ByteArrayOutputStream {
+
+    BinaryBuffer() {
+      super(INITIAL_CAPACITY);
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.gruelbox.transactionoutbox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses serialized {@link Invocation}s for storage in the {@code invocationBinary} column.
+ * Compressed payloads are marked with a leading {@link #DEFLATE} byte, which can never start either
+ * UTF-8 JSON or the output of {@link BinaryInvocationSerializer}, so compressed and uncompressed
+ * rows can coexist and are told apart on read.
+ */
+final class InvocationCompression {
+
+  static final int DEFLATE = 0xDF;
+
+  private InvocationCompression() {}
+
+  /**
+   * Compresses a serialized invocation using {@link Deflater#BEST_SPEED}, since it is done inside
+   * the caller's transaction.
+   *
+   * @param serialized The serialized invocation.
+   * @return The compressed invocation, including the header byte.
+   */
+  static byte[] compress(byte[] serialized) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(serialized);
+      deflater.finish();
+      var out = new ByteArrayOutputStream(Math.max(64, serialized.length / 4));
+      out.write(DEFLATE);
+      byte[] chunk = new byte[Math.min(serialized.length + 64, 8192)];
+      while (!deflater.finished()) {
+        out.write(chunk, 0, deflater.deflate(chunk));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Wraps a stream read from the {@code invocationBinary} column so that compressed payloads are
+   * decompressed and anything else is passed through unchanged.
+   *
+   * @param stream The stream.
+   * @return The stream to pass to the {@link InvocationSerializer}.
+   * @throws IOException If reading the header fails.
+   */
+  static InputStream decompressing(InputStream stream) throws IOException {
+    InputStream in = stream.markSupported() ? stream : new BufferedInputStream(stream);
+    in.mark(1);
+    if (in.read() != DEFLATE) {
+      in.reset();
+      return in;
+    }
+    return new InflaterInputStream(in, new Inflater(), 8192) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inf.end();
+        }
+      }
+    };
+  }
+}
@@ -1,7 +1,14 @@
 package com.gruelbox.transactionoutbox;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * {@link Invocation} objects are inherently difficult to serialize safely since they are
@@ -41,4 +48,49 @@ public interface InvocationSerializer {
    * @return The deserialized invocation.
    */
   Invocation deserializeInvocation(Reader reader);
+
+  /**
+   * Indicates whether this serializer's native format is binary. If so, persistors which support it
+   * store the output of {@link #serializeInvocation(Invocation, OutputStream)} in a binary column,
+   * and read it back with {@link #deserializeInvocation(InputStream)}. Otherwise, the text methods
+   * are used.
+   *
+   * @return True if the serializer is binary. False by default.
+   */
+  default boolean isBinary() {
+    return false;
+  }
+
+  /**
+   * Serializes an invocation to the supplied stream. The stream is flushed but not closed.
+   *
+   * <p>By default, wraps the stream in a UTF-8 {@link Writer} and delegates to {@link
+   * #serializeInvocation(Invocation, Writer)}. Override this for formats which can write bytes
+   * directly.
+   *
+   * @param invocation The invocation.
+   * @param outputStream The stream.
+   */
+  default void serializeInvocation(Invocation invocation, OutputStream outputStream) {
+    Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    serializeInvocation(invocation, writer);
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Deserializes an invocation from the supplied stream.
+   *
+   * <p>By default, wraps the stream in a UTF-8 {@link Reader} and delegates to {@link
+   * #deserializeInvocation(Reader)}. Override this for formats which can read bytes directly.
+   *
+   * @param inputStream The stream.
+   * @return The deserialized invocation.
+   */
+  default Invocation deserializeInvocation(InputStream inputStream) {
+    return deserializeInvocation(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+  }
 }
@@ -0,0 +1,119 @@
+package com.gruelbox.transactionoutbox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Value;
+
+/**
+ * Caches the methods called by {@link Invocation#invoke}, so that the reflective lookup and access
+ * checks are only done once per class and method signature rather than on every invocation.
+ *
+ * <p>Entries are held against the class in a {@link ClassValue}, so they do not prevent classes
+ * from being unloaded.
+ */
+final class InvokerCache {
+
+  private static final MethodType GENERIC_TYPE =
+      MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  private static final MethodHandle WRAP_TARGET_EXCEPTION;
+
+  static {
+    try {
+      WRAP_TARGET_EXCEPTION =
+          MethodHandles.lookup()
+              .findStatic(
+                  InvokerCache.class,
+                  "wrapTargetException",
+                  MethodType.methodType(Object.class, Throwable.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static final ClassValue<Map<Signature, Invoker>> CACHE =
+      new ClassValue<>() {
+        @Override
+        protected Map<Signature, Invoker> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private InvokerCache() {}
+
+  static Invoker get(Class<?> clazz, String methodName, Class<?>[] parameterTypes)
+      throws NoSuchMethodException, IllegalAccessException {
+    Map<Signature, Invoker> invokers = CACHE.get(clazz);
+    Signature signature = new Signature(methodName, Arrays.asList(parameterTypes));
+    Invoker invoker = invokers.get(signature);
+    if (invoker == null) {
+      Method method = clazz.getDeclaredMethod(methodName, parameterTypes);
+      method.setAccessible(true);
+      MethodHandle target = MethodHandles.lookup().unreflect(method);
+      // Wrap what the method throws inside the handle, so it can be told apart from failures
+      // converting the arguments, which happen outside it.
+      MethodHandle wrapTargetException =
+          MethodHandles.dropArguments(
+              WRAP_TARGET_EXCEPTION.asType(
+                  MethodType.methodType(target.type().returnType(), Throwable.class)),
+              1,
+              target.type().parameterList());
+      MethodHandle handle =
+          MethodHandles.catchException(target, Throwable.class, wrapTargetException)
+              .asSpreader(Object[].class, parameterTypes.length)
+              .asType(GENERIC_TYPE);
+      invoker = new Invoker(method, handle);
+      Invoker existing = invokers.putIfAbsent(signature, invoker);
+      if (existing != null) {
+        invoker = existing;
+      }
+    }
+    return invoker;
+  }
+
+  @SuppressWarnings("unused")
+  private static Object wrapTargetException(Throwable t) throws InvocationTargetException {
+    throw new InvocationTargetException(t);
+  }
+
+  @Value
+  private static class Signature {
+    String methodName;
+    List<Class<?>> parameterTypes;
+  }
+
+  /** A resolved method, ready to invoke on any instance of the class it was looked up for. */
+  @Value
+  static class Invoker {
+    Method method;
+    MethodHandle handle;
+
+    /**
+     * Calls the method. As with {@link Method#invoke(Object, Object...)}, anything thrown by the
+     * method is wrapped in an {@link InvocationTargetException}, and arguments which do not match
+     * the method's parameters cause an {@link IllegalArgumentException}.
+     */
+    Object invoke(Object instance, Object[] args) throws InvocationTargetException {
+      try {
+        return handle.invokeExact(instance, args);
+      } catch (InvocationTargetException e) {
+        throw e;
+      } catch (RuntimeException e) {
+        // ClassCastException, WrongMethodTypeException etc. from converting the arguments
+        throw new IllegalArgumentException(e.getMessage(), e);
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new UndeclaredThrowableException(t);
+      }
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package com.gruelbox.transactionoutbox;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -42,6 +44,39 @@ public interface Persistor {
    */
   void save(Transaction tx, TransactionOutboxEntry entry) throws Exception;
 
+  /**
+   * Saves a batch of new {@link TransactionOutboxEntry}s, with the same semantics as {@link
+   * #save(Transaction, TransactionOutboxEntry)} for each entry in turn.
+   *
+   * <p>The default implementation simply calls {@link #save(Transaction, TransactionOutboxEntry)}
+   * for each entry.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param entries The entries to save.
+   * @throws Exception Any exception.
+   */
+  default void saveBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    for (TransactionOutboxEntry entry : entries) {
+      save(tx, entry);
+    }
+  }
+
+  /**
+   * Signals other application instances that work has been saved in the current transaction which
+   * will not be picked up by this instance, and can be processed by the next instance to call
+   * {@link TransactionOutbox#flush()}. The signal should only be delivered if the transaction
+   * commits. Called at most once per saved entry, so implementations should expect (and ideally
+   * collapse) repeated calls in the same transaction.
+   *
+   * <p>Does nothing by default, leaving other instances to find the work on their next poll.
+   *
+   * @param tx The current {@link Transaction}.
+   * @throws Exception Any exception.
+   */
+  default void notifyPending(Transaction tx) throws Exception {
+    // No-op
+  }
+
   /**
    * Deletes a {@link TransactionOutboxEntry}.
    *
@@ -80,6 +115,71 @@ public interface Persistor {
    */
   boolean lock(Transaction tx, TransactionOutboxEntry entry) throws Exception;
 
+  /**
+   * Attempts to pessimistically lock a batch of existing {@link TransactionOutboxEntry}s, as used
+   * when {@link TransactionOutbox.TransactionOutboxBuilder#processBatchSize(int)} is greater than
+   * one. Entries which are already locked elsewhere, no longer exist or whose version has changed
+   * are left out of the result. As with {@link #lock(Transaction, TransactionOutboxEntry)}, the
+   * invocation of each locked entry should be reloaded from the database.
+   *
+   * <p>The default implementation simply calls {@link #lock(Transaction, TransactionOutboxEntry)}
+   * for each entry. Implementations should override this to lock the whole batch in a single round
+   * trip where possible.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param entries The entries to be locked.
+   * @return The entries which were locked, in the order they were supplied.
+   * @throws Exception Any exception.
+   */
+  default List<TransactionOutboxEntry> lockBatch(
+      Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    List<TransactionOutboxEntry> locked = new ArrayList<>(entries.size());
+    for (TransactionOutboxEntry entry : entries) {
+      if (lock(tx, entry)) {
+        locked.add(entry);
+      }
+    }
+    return locked;
+  }
+
+  /**
+   * Deletes a batch of {@link TransactionOutboxEntry}s, all of which have already been locked in
+   * the current transaction using {@link #lockBatch(Transaction, List)}. If any of the records are
+   * not found, {@link OptimisticLockException} should be thrown.
+   *
+   * <p>The default implementation simply calls {@link #delete(Transaction, TransactionOutboxEntry)}
+   * for each entry.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param entries The entries to be deleted.
+   * @throws OptimisticLockException If any of the records are not found.
+   * @throws Exception Any other exception.
+   */
+  default void deleteBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    for (TransactionOutboxEntry entry : entries) {
+      delete(tx, entry);
+    }
+  }
+
+  /**
+   * Modifies a batch of existing {@link TransactionOutboxEntry}s, with the same semantics as {@link
+   * #update(Transaction, TransactionOutboxEntry)} for each entry.
+   *
+   * <p>The default implementation simply calls {@link #update(Transaction, TransactionOutboxEntry)}
+   * for each entry.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param entries The entries to be updated.
+   * @throws OptimisticLockException If any of the records are not found with the same id and
+   *     version.
+   * @throws Exception Any other exception.
+   */
+  default void updateBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    for (TransactionOutboxEntry entry : entries) {
+      update(tx, entry);
+    }
+  }
+
   /**
    * Clears the blocked flag and resets the attempt count to zero.
    *
@@ -106,6 +206,74 @@ public interface Persistor {
   List<TransactionOutboxEntry> selectBatch(Transaction tx, int batchSize, Instant now)
       throws Exception;
 
+  /**
+   * Claims up to a specified maximum number of non-blocked records outside any topic which have
+   * passed their {@link TransactionOutboxEntry#getNextAttemptTime()}, by moving their {@code
+   * nextAttemptTime} forward to {@code leaseExpiry} and setting {@code lastAttemptTime} to {@code
+   * now}. Other instances will not select the claimed records again until the lease expires.
+   *
+   * <p>The default implementation calls {@link #selectBatch(Transaction, int, Instant)} followed by
+   * {@link #update(Transaction, TransactionOutboxEntry)} for each record, skipping any which fail
+   * with {@link OptimisticLockException}. Implementations should override this to claim the whole
+   * batch in a single statement where possible.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param batchSize The maximum number of records to claim.
+   * @param now The time to use when selecting records.
+   * @param leaseExpiry The time until which claimed records will not be selected again.
+   * @return The claimed records, as updated.
+   * @throws Exception Any exception.
+   */
+  default List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry) throws Exception {
+    List<TransactionOutboxEntry> entries = selectBatch(tx, batchSize, now);
+    List<TransactionOutboxEntry> claimed = new ArrayList<>(entries.size());
+    for (TransactionOutboxEntry entry : entries) {
+      entry.setLastAttemptTime(now);
+      entry.setNextAttemptTime(leaseExpiry);
+      try {
+        update(tx, entry);
+        claimed.add(entry);
+      } catch (OptimisticLockException e) {
+        // Beaten to it by another instance
+      }
+    }
+    return claimed;
+  }
+
+  /**
+   * @return Whether {@link #claimBatch(Transaction, int, Instant, Instant, int, int)} actually
+   *     splits records between shards. If not, {@link TransactionOutbox#flush()} claims from a
+   *     single shard regardless of {@link TransactionOutbox.TransactionOutboxBuilder#flushShards}.
+   */
+  default boolean supportsSharding() {
+    return false;
+  }
+
+  /**
+   * Like {@link #claimBatch(Transaction, int, Instant, Instant)}, but only claims records in one of
+   * a number of disjoint shards, so that several claims can run in parallel without competing for
+   * the same records. Records are assigned to shards by a hash of their topic, or of their id if
+   * outside any topic.
+   *
+   * <p>The default implementation does not shard records: the first shard claims all of them and
+   * the others none.
+   *
+   * @param tx The current {@link Transaction}.
+   * @param batchSize The maximum number of records to claim.
+   * @param now The time to use when selecting records.
+   * @param leaseExpiry The time until which claimed records will not be selected again.
+   * @param shard The shard to claim from, from zero to {@code shards - 1}.
+   * @param shards The total number of shards.
+   * @return The claimed records, as updated.
+   * @throws Exception Any exception.
+   */
+  default List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry, int shard, int shards)
+      throws Exception {
+    return shard == 0 ? claimBatch(tx, batchSize, now, leaseExpiry) : List.of();
+  }
+
   /**
    * Selects the next items in all the open topics as a batch for processing. Does not lock.
    *
@@ -129,6 +297,42 @@ public interface Persistor {
    */
   int deleteProcessedAndExpired(Transaction tx, int batchSize, Instant now) throws Exception;
 
+  /**
+   * Removes processed records which have passed their expiry time by dropping whole partitions, and
+   * creates the partitions needed for records processed from now on. Called on each {@link
+   * TransactionOutbox#flush()}, before {@link #deleteProcessedAndExpired}, which removes any
+   * expired records held outside such partitions.
+   *
+   * <p>The default implementation does nothing, for persistors which do not partition processed
+   * records.
+   *
+   * @param transactionManager The transaction manager. Each partition is created or dropped in its
+   *     own transaction.
+   * @param now The current time.
+   * @param retention How long processed records are retained, and so how far ahead partitions are
+   *     needed.
+   * @return The number of partitions dropped.
+   * @throws Exception Any exception.
+   */
+  default int maintainPartitions(
+      TransactionManager transactionManager, Instant now, Duration retention) throws Exception {
+    return 0;
+  }
+
+  /**
+   * Summarises the unprocessed, unblocked records in the outbox, for monitoring. This will
+   * generally require scanning the table, so should not be called frequently.
+   *
+   * @param tx The current {@link Transaction}.
+   * @return The backlog summary.
+   * @throws Exception Any exception.
+   * @throws UnsupportedOperationException If not supported by the implementation, which is the
+   *     default.
+   */
+  default Backlog selectBacklog(Transaction tx) throws Exception {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * Checks the connection status of a transaction.
    *
@@ -139,10 +343,31 @@ public interface Persistor {
 
   /**
    * Deletes outdated records, regardless processed or not, for those topics where last invocation
-   * only matters (orderedTakeLast is set to true)
+   * only matters (orderedTakeLast is set to true). Called on each {@link
+   * TransactionOutbox#flush()}. Persistors which delete outdated records as newer ones are saved
+   * may do so less often, but should still sweep occasionally for any they could not delete then.
    */
   int deleteOutdatedInAllTopics(Transaction tx) throws Exception;
 
+  /**
+   * Marks topics with no unprocessed records as idle, so that {@link #selectNextInTopics} no longer
+   * needs to examine them. Topics become active again as soon as work is scheduled in them. Called
+   * by {@link TransactionOutbox#flush()} at most once a minute, and only after ordered work has
+   * been processed.
+   *
+   * <p>The default implementation does nothing, for persistors which do not track active topics.
+   *
+   * @param transactionManager The transaction manager. Each topic is updated in its own
+   *     transaction.
+   * @param batchSize The maximum number of topics to check.
+   * @return The number of topics marked idle.
+   * @throws Exception Any exception.
+   */
+  default int deactivateIdleTopics(TransactionManager transactionManager, int batchSize)
+      throws Exception {
+    return 0;
+  }
+
   /**
    * Clears the database. For testing only.
    *
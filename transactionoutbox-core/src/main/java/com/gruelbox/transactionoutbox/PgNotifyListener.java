@@ -0,0 +1,192 @@
+package com.gruelbox.transactionoutbox;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Listens for notifications sent by {@link DefaultPersistor} or {@link PgSeqPersistor} when
+ * configured with a {@code notifyChannel}, and calls {@link TransactionOutbox#flush()} as soon as
+ * one arrives. This allows work scheduled on one application instance but not processed there
+ * immediately (such as entries in ordered topics) to be picked up by another instance within
+ * milliseconds, without calling {@link TransactionOutbox#flush()} more frequently.
+ *
+ * <p>This does not replace regular calls to {@link TransactionOutbox#flush()}, which are still
+ * required to retry failed work and to recover if notifications are missed (for example while the
+ * listener is reconnecting).
+ *
+ * <p>Holds a dedicated connection open for as long as it is running, so should be given a {@link
+ * ConnectionProvider} which is not shared with a small connection pool. Requires the PostgreSQL
+ * JDBC driver ({@code org.postgresql:postgresql}).
+ *
+ * <p>Usage:
+ *
+ * <pre>PgNotifyListener listener = PgNotifyListener.builder()
+ *     .outbox(outbox)
+ *     .connectionProvider(connectionProvider)
+ *     .channel("txno_pending")
+ *     .build();
+ * listener.start();
+ * ...
+ * listener.close();</pre>
+ */
+@Slf4j
+@Builder
+public class PgNotifyListener implements AutoCloseable, Validatable {
+
+  /**
+   * @param outbox The outbox to flush when a notification is received. Required unless {@link
+   *     #flushScheduler} is set.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final TransactionOutbox outbox;
+
+  /**
+   * @param flushScheduler If set, notifications call {@link FlushScheduler#wakeUp()} rather than
+   *     flushing on the listener thread, so that all flushing happens on the scheduler.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final FlushScheduler flushScheduler;
+
+  /**
+   * @param connectionProvider Provides the connection on which to listen. Required. The connection
+   *     is held for as long as the listener is running and replaced if it fails.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final ConnectionProvider connectionProvider;
+
+  /**
+   * @param channel The channel to listen on. Must match the {@code notifyChannel} configured on the
+   *     persistor. Required.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final String channel;
+
+  /**
+   * @param pollTimeout The maximum time to wait for notifications before checking whether the
+   *     listener has been closed. Defaults to 10 seconds.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Duration pollTimeout = Duration.ofSeconds(10);
+
+  /**
+   * @param reconnectDelay How long to wait before reconnecting after a failure. Defaults to 5
+   *     seconds.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Duration reconnectDelay = Duration.ofSeconds(5);
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final AtomicReference<Thread> thread = new AtomicReference<>();
+
+  @Override
+  public void validate(Validator validator) {
+    if (flushScheduler == null) {
+      validator.notNull("outbox", outbox);
+    }
+    validator.notNull("connectionProvider", connectionProvider);
+    validator.notBlank("channel", channel);
+    if (channel != null) {
+      validator.isTrue(
+          "channel",
+          channel.matches("[A-Za-z_][A-Za-z0-9_]*"),
+          "must be a valid unquoted identifier");
+    }
+    validator.notNull("pollTimeout", pollTimeout);
+    validator.notNull("reconnectDelay", reconnectDelay);
+  }
+
+  /** Starts listening on a background daemon thread. */
+  public synchronized void start() {
+    new Validator(Clock::systemDefaultZone).validate(this);
+    try {
+      Class.forName("org.postgresql.PGConnection");
+    } catch (ClassNotFoundException e) {
+      throw new MissingOptionalDependencyException("org.postgresql", "postgresql");
+    }
+    if (!running.compareAndSet(false, true)) {
+      throw new IllegalStateException("Already started");
+    }
+    Thread t = new Thread(this::run, "transaction-outbox-pg-listener-" + channel);
+    t.setDaemon(true);
+    thread.set(t);
+    t.start();
+  }
+
+  /** Stops listening and releases the connection. Waits for any in-progress flush to complete. */
+  @Override
+  public synchronized void close() throws InterruptedException {
+    running.set(false);
+    Thread t = thread.getAndSet(null);
+    if (t != null) {
+      t.interrupt();
+      t.join();
+    }
+  }
+
+  private void run() {
+    while (running.get()) {
+      try (Connection connection = connectionProvider.obtainConnection()) {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+          stmt.execute("LISTEN " + channel);
+        }
+        log.info("Listening for notifications on {}", channel);
+        // Anything committed while we weren't listening will have been missed
+        flush();
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running.get()) {
+          PGNotification[] notifications =
+              pgConnection.getNotifications((int) pollTimeout.toMillis());
+          if (notifications != null && notifications.length > 0) {
+            log.debug("Received {} notifications on {}", notifications.length, channel);
+            flush();
+          }
+        }
+      } catch (Exception e) {
+        if (!running.get()) {
+          break;
+        }
+        log.warn(
+            "Listener on {} failed. Will reconnect in {}. Work will still be picked up by flush.",
+            channel,
+            reconnectDelay,
+            e);
+        try {
+          Thread.sleep(reconnectDelay.toMillis());
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    log.info("Stopped listening for notifications on {}", channel);
+  }
+
+  /**
+   * Notifications received while flushing queue up on the connection and are collapsed into the
+   * next call, so a burst of commits results in few flushes.
+   */
+  private void flush() {
+    if (flushScheduler != null) {
+      flushScheduler.wakeUp();
+      return;
+    }
+    try {
+      while (running.get() && outbox.flush()) {
+        log.debug("Flushed work following notification; checking for more");
+      }
+    } catch (Exception e) {
+      log.warn("Flush following notification on {} failed", channel, e);
+    }
+  }
+}
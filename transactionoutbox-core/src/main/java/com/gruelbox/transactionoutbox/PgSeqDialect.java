@@ -4,6 +4,7 @@ public final class PgSeqDialect {
   public static Dialect POSTGRESQL_SEQ =
       DefaultDialect.builder("POSTGRESQL_SEQ")
           .fetchNextSequence("SELECT nextval('txno_outbox_seq_seq')")
+          .fetchNextInActiveTopics(null)
           .fetchNextInAllTopics(
               "WITH raw AS(SELECT {{allFields}}, (ROW_NUMBER() OVER(PARTITION BY topic ORDER BY seq)) as rn"
                   + " FROM {{table}} WHERE processed = false AND topic <> '*')"
@@ -19,9 +20,18 @@ public final class PgSeqDialect {
               "SELECT {{allFields}} FROM {{table}} WHERE nextAttemptTime < ? "
                   + "AND blocked = false AND processed = false AND topic = '*' ORDER BY seq LIMIT "
                   + "{{batchSize}} FOR UPDATE SKIP LOCKED")
+          .claimBatch(
+              "UPDATE {{table}} SET nextAttemptTime = ?, lastAttemptTime = ? WHERE id IN "
+                  + "(SELECT id FROM {{table}} WHERE nextAttemptTime < ? AND blocked = false "
+                  + "AND processed = false AND topic = '*' ORDER BY seq LIMIT {{batchSize}} "
+                  + "FOR UPDATE SKIP LOCKED) RETURNING {{allFields}}")
+          .notifyPending("NOTIFY {{channel}}")
           .lock(
-              "SELECT id, invocation FROM {{table}} WHERE id = ? AND version = ? FOR "
+              "SELECT id, invocation, invocationBinary FROM {{table}} WHERE id = ? AND version = ? FOR "
                   + "UPDATE SKIP LOCKED")
+          .lockBatch(
+              "SELECT id, version, invocation, invocationBinary FROM {{table}} WHERE id IN ({{ids}}) FOR UPDATE "
+                  + "SKIP LOCKED")
           .changeMigration(
               5, "ALTER TABLE TXNO_OUTBOX ALTER COLUMN uniqueRequestId TYPE VARCHAR(250)")
           .changeMigration(6, "ALTER TABLE TXNO_OUTBOX RENAME COLUMN blacklisted TO blocked")
@@ -29,6 +39,17 @@ public final class PgSeqDialect {
           .disableMigration(8)
           .changeMigration(10, "ALTER TABLE TXNO_OUTBOX ADD COLUMN seq BIGSERIAL NOT NULL")
           .disableMigration(11)
+          .changeMigration(14, "ALTER TABLE TXNO_OUTBOX ADD COLUMN invocationBinary BYTEA")
+          .disableMigration(15)
+          .disableMigration(16)
+          .disableMigration(18)
+          .disableMigration(19)
+          .disableMigration(20)
+          .disableMigration(21)
+          .disableMigration(22)
+          .disableMigration(23)
+          .checkArchived(null)
+          .deleteExpiredArchived(null)
           .build();
 
   private PgSeqDialect() {}
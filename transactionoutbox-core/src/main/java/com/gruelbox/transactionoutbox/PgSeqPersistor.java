@@ -1,13 +1,16 @@
 package com.gruelbox.transactionoutbox;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.*;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -21,10 +24,16 @@ import lombok.extern.slf4j.Slf4j;
 public class PgSeqPersistor implements Persistor, Validatable {
 
   private static final String ALL_FIELDS =
-      "id, uniqueRequestId, invocation, topic, seq, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version, orderedTakeLast";
+      "id, uniqueRequestId, invocation, invocationBinary, topic, seq, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version, orderedTakeLast";
 
   private static final String ALL_FIELDS_NO_TOPIC =
-      "id, uniqueRequestId, invocation, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version";
+      "id, uniqueRequestId, invocation, invocationBinary, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version";
+
+  private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String ROW_PLACEHOLDERS_NO_TOPIC = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final int DEFAULT_ROWS_PER_INSERT = 1000;
 
   /**
    * @param writeLockTimeoutSeconds How many seconds to wait before timing out on obtaining a write
@@ -71,10 +80,62 @@ public class PgSeqPersistor implements Persistor, Validatable {
   private final InvocationSerializer serializer =
       InvocationSerializer.createDefaultJsonSerializer();
 
+  /**
+   * @param notifyChannel If set, a notification is sent on this channel when a transaction commits
+   *     work which will not be processed immediately by the scheduling instance, such as entries in
+   *     ordered topics. Use with {@link PgNotifyListener} so that idle instances can pick up such
+   *     work immediately rather than on their next {@link TransactionOutbox#flush()}. Only
+   *     supported by PostgreSQL. Must be a valid unquoted identifier. Defaults to null (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final String notifyChannel;
+
+  /**
+   * @param compressionThreshold If set, serialized invocations larger than this many bytes (or
+   *     characters, for text serializers) are compressed using Deflate and stored in the {@code
+   *     invocationBinary} column. Rows are read correctly whether compressed or not, so this can be
+   *     enabled, changed or disabled at any time, but not rolled back to a version of this library
+   *     which predates it while compressed rows remain. Defaults to null (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final Integer compressionThreshold;
+
+  /**
+   * @param insertBatchSize If set, entries scheduled without a {@code uniqueRequestId} are not
+   *     written as they are scheduled, but buffered until the transaction commits and then written
+   *     using multi-row {@code INSERT} statements of up to this many rows. This substantially
+   *     reduces the cost of scheduling many entries in one transaction, but means that entries are
+   *     not visible in the database, and {@link TransactionOutboxEntry#getSequence()} is not set,
+   *     until the transaction commits. Requires a {@link TransactionManager} whose transactions
+   *     support {@link Transaction#addPreCommitHook(Object, java.util.function.Supplier)}; others
+   *     write each entry immediately as usual. Also sets the size of inserts made by {@link
+   *     #saveBatch(Transaction, List)}, which otherwise defaults to 1000 rows. Defaults to null
+   *     (disabled).
+   */
+  @SuppressWarnings("JavaDoc")
+  private final Integer insertBatchSize;
+
   @Override
   public void validate(Validator validator) {
     validator.notNull("dialect", dialect);
     validator.notNull("tableName", tableName);
+    if (compressionThreshold != null) {
+      validator.min("compressionThreshold", compressionThreshold, 0);
+    }
+    if (insertBatchSize != null) {
+      validator.min("insertBatchSize", insertBatchSize, 1);
+    }
+    if (notifyChannel != null && dialect != null) {
+      validator.isTrue(
+          "notifyChannel",
+          dialect.getNotifyPending() != null,
+          "is not supported by dialect %s",
+          dialect);
+      validator.isTrue(
+          "notifyChannel",
+          notifyChannel.matches("[A-Za-z_][A-Za-z0-9_]*"),
+          "must be a valid unquoted identifier");
+    }
   }
 
   @Override
@@ -97,28 +158,27 @@ public class PgSeqPersistor implements Persistor, Validatable {
   @Override
   public void save(Transaction tx, TransactionOutboxEntry entry)
       throws SQLException, AlreadyScheduledException {
-    String insertSql;
-    var writer = new StringWriter();
-    serializer.serializeInvocation(entry.getInvocation(), writer);
+    var invocation =
+        SerializedInvocation.serialize(serializer, entry.getInvocation(), compressionThreshold);
+    if (insertBatchSize != null) {
+      var deferred =
+          DeferredInserts.in(tx, this, (entries, invocations) -> insert(tx, entries, invocations));
+      if (deferred != null) {
+        if (entry.getUniqueRequestId() == null) {
+          deferred.add(entry, invocation);
+          log.debug("Deferred insert of {}", entry.getId());
+          return;
+        }
+        // Keep sequence numbers in the order entries were scheduled
+        deferred.run();
+      }
+    }
     if (entry.getTopic() != null) {
-      insertSql =
-          "INSERT INTO "
-              + tableName
-              + " ("
-              + ALL_FIELDS
-              + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
       setNextSequence(tx, entry);
       log.info("Assigned sequence number {} to topic {}", entry.getSequence(), entry.getTopic());
-    } else {
-      insertSql =
-          "INSERT INTO "
-              + tableName
-              + " ("
-              + ALL_FIELDS_NO_TOPIC
-              + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-    }
-    PreparedStatement stmt = tx.prepareBatchStatement(insertSql);
-    setupInsert(entry, writer, stmt);
+    }
+    PreparedStatement stmt = tx.prepareBatchStatement(insertSql(entry.getTopic() != null, 1));
+    setupInsert(entry, invocation, stmt, 1);
     if (entry.getUniqueRequestId() == null) {
       stmt.addBatch();
       log.debug("Inserted {} in batch", entry.description());
@@ -136,6 +196,124 @@ public class PgSeqPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public void saveBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    if (insertBatchSize != null) {
+      var deferred =
+          DeferredInserts.in(tx, this, (batch, invocations) -> insert(tx, batch, invocations));
+      if (deferred != null) {
+        // Keep sequence numbers in the order entries were scheduled
+        deferred.run();
+      }
+    }
+    List<TransactionOutboxEntry> batch = new ArrayList<>(entries.size());
+    List<SerializedInvocation> invocations = new ArrayList<>(entries.size());
+    for (TransactionOutboxEntry entry : entries) {
+      if (entry.getUniqueRequestId() == null) {
+        batch.add(entry);
+        invocations.add(
+            SerializedInvocation.serialize(
+                serializer, entry.getInvocation(), compressionThreshold));
+      } else {
+        insert(tx, batch, invocations);
+        batch.clear();
+        invocations.clear();
+        save(tx, entry);
+      }
+    }
+    insert(tx, batch, invocations);
+  }
+
+  /**
+   * Writes a batch of entries using multi-row inserts of entries with and without topics
+   * respectively.
+   */
+  private void insert(
+      Transaction tx, List<TransactionOutboxEntry> entries, List<SerializedInvocation> invocations)
+      throws SQLException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    List<TransactionOutboxEntry> topicEntries = new ArrayList<>();
+    List<SerializedInvocation> topicInvocations = new ArrayList<>();
+    List<TransactionOutboxEntry> otherEntries = new ArrayList<>();
+    List<SerializedInvocation> otherInvocations = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      TransactionOutboxEntry entry = entries.get(i);
+      if (entry.getTopic() != null) {
+        setNextSequence(tx, entry);
+        topicEntries.add(entry);
+        topicInvocations.add(invocations.get(i));
+      } else {
+        otherEntries.add(entry);
+        otherInvocations.add(invocations.get(i));
+      }
+    }
+    insertRows(tx, true, topicEntries, topicInvocations);
+    insertRows(tx, false, otherEntries, otherInvocations);
+    log.debug("Inserted batch of {}", entries.size());
+  }
+
+  private void insertRows(
+      Transaction tx,
+      boolean topic,
+      List<TransactionOutboxEntry> entries,
+      List<SerializedInvocation> invocations)
+      throws SQLException {
+    int rows =
+        !dialect.isMultiRowInsert()
+            ? 1
+            : insertBatchSize == null ? DEFAULT_ROWS_PER_INSERT : insertBatchSize;
+    int remainder = entries.size() % rows;
+    insertRows(tx, topic, entries, invocations, 0, entries.size() - remainder, rows);
+    insertRows(
+        tx, topic, entries, invocations, entries.size() - remainder, entries.size(), remainder);
+  }
+
+  private void insertRows(
+      Transaction tx,
+      boolean topic,
+      List<TransactionOutboxEntry> entries,
+      List<SerializedInvocation> invocations,
+      int from,
+      int to,
+      int rowsPerStatement)
+      throws SQLException {
+    if (from == to) {
+      return;
+    }
+    boolean batch = rowsPerStatement == 1 && to - from > 1;
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection().prepareStatement(insertSql(topic, rowsPerStatement))) {
+      for (int i = from; i < to; ) {
+        int pos = 1;
+        for (int end = i + rowsPerStatement; i < end; i++) {
+          pos = setupInsert(entries.get(i), invocations.get(i), stmt, pos);
+        }
+        if (batch) {
+          stmt.addBatch();
+        } else {
+          stmt.executeUpdate();
+        }
+      }
+      if (batch) {
+        stmt.executeBatch();
+      }
+    }
+  }
+
+  private String insertSql(boolean topic, int rows) {
+    String placeholders = topic ? ROW_PLACEHOLDERS : ROW_PLACEHOLDERS_NO_TOPIC;
+    var sql = new StringBuilder("INSERT INTO ").append(tableName);
+    sql.append(" (").append(topic ? ALL_FIELDS : ALL_FIELDS_NO_TOPIC).append(") VALUES ");
+    sql.append(placeholders);
+    for (int i = 1; i < rows; i++) {
+      sql.append(", ").append(placeholders);
+    }
+    return sql.toString();
+  }
+
   private void setNextSequence(Transaction tx, TransactionOutboxEntry entry) throws SQLException {
     //noinspection resource
     var seqSelect = tx.prepareBatchStatement(dialect.getFetchNextSequence());
@@ -153,13 +331,16 @@ public class PgSeqPersistor implements Persistor, Validatable {
             && e.getMessage().contains("duplicate key"));
   }
 
-  private void setupInsert(
-      TransactionOutboxEntry entry, StringWriter writer, PreparedStatement stmt)
+  private int setupInsert(
+      TransactionOutboxEntry entry,
+      SerializedInvocation invocation,
+      PreparedStatement stmt,
+      int pos)
       throws SQLException {
-    int pos = 1;
     stmt.setString(pos++, entry.getId());
     stmt.setString(pos++, entry.getUniqueRequestId());
-    stmt.setString(pos++, writer.toString());
+    stmt.setString(pos++, invocation.getText());
+    stmt.setBytes(pos++, invocation.getBinary());
     if (entry.getTopic() != null) {
       stmt.setString(pos++, entry.getTopic());
       stmt.setLong(pos++, entry.getSequence());
@@ -175,6 +356,16 @@ public class PgSeqPersistor implements Persistor, Validatable {
     if (entry.getTopic() != null) {
       stmt.setBoolean(pos++, entry.isOrderedTakeLast());
     }
+    return pos;
+  }
+
+  @Override
+  public void notifyPending(Transaction tx) throws SQLException {
+    if (notifyChannel == null) {
+      return;
+    }
+    tx.prepareBatchStatement(dialect.getNotifyPending().replace("{{channel}}", notifyChannel))
+        .addBatch();
   }
 
   @Override
@@ -192,27 +383,30 @@ public class PgSeqPersistor implements Persistor, Validatable {
   }
 
   @Override
-  public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+  public void deleteBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    // Versions were already checked when the entries were locked
     //noinspection resource
     try (PreparedStatement stmt =
         tx.connection()
             .prepareStatement(
-                // language=MySQL
-                "UPDATE "
+                "DELETE FROM "
                     + tableName
-                    + " "
-                    + "SET lastAttemptTime = ?, nextAttemptTime = ?, attempts = ?, blocked = ?, processed = ?, version = ? "
-                    + "WHERE id = ? and version = ?")) {
-      stmt.setTimestamp(
-          1,
-          entry.getLastAttemptTime() == null ? null : Timestamp.from(entry.getLastAttemptTime()));
-      stmt.setTimestamp(2, Timestamp.from(entry.getNextAttemptTime()));
-      stmt.setInt(3, entry.getAttempts());
-      stmt.setBoolean(4, entry.isBlocked());
-      stmt.setBoolean(5, entry.isProcessed());
-      stmt.setInt(6, entry.getVersion() + 1);
-      stmt.setString(7, entry.getId());
-      stmt.setInt(8, entry.getVersion());
+                    + " WHERE id IN ("
+                    + placeholders(entries.size())
+                    + ")")) {
+      setIds(entries, stmt);
+      if (stmt.executeUpdate() != entries.size()) {
+        throw new OptimisticLockException();
+      }
+      log.debug("Deleted batch of {}", entries.size());
+    }
+  }
+
+  @Override
+  public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(updateSql())) {
+      setupUpdate(entry, stmt);
       if (stmt.executeUpdate() != 1) {
         throw new OptimisticLockException();
       }
@@ -221,6 +415,46 @@ public class PgSeqPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public void updateBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    //noinspection resource
+    try (PreparedStatement stmt = tx.connection().prepareStatement(updateSql())) {
+      for (TransactionOutboxEntry entry : entries) {
+        setupUpdate(entry, stmt);
+        stmt.addBatch();
+      }
+      for (int count : stmt.executeBatch()) {
+        if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+          throw new OptimisticLockException();
+        }
+      }
+      entries.forEach(entry -> entry.setVersion(entry.getVersion() + 1));
+      log.debug("Updated batch of {}", entries.size());
+    }
+  }
+
+  private String updateSql() {
+    // language=MySQL
+    return "UPDATE "
+        + tableName
+        + " "
+        + "SET lastAttemptTime = ?, nextAttemptTime = ?, attempts = ?, blocked = ?, processed = ?, version = ? "
+        + "WHERE id = ? and version = ?";
+  }
+
+  private void setupUpdate(TransactionOutboxEntry entry, PreparedStatement stmt)
+      throws SQLException {
+    stmt.setTimestamp(
+        1, entry.getLastAttemptTime() == null ? null : Timestamp.from(entry.getLastAttemptTime()));
+    stmt.setTimestamp(2, Timestamp.from(entry.getNextAttemptTime()));
+    stmt.setInt(3, entry.getAttempts());
+    stmt.setBoolean(4, entry.isBlocked());
+    stmt.setBoolean(5, entry.isProcessed());
+    stmt.setInt(6, entry.getVersion() + 1);
+    stmt.setString(7, entry.getId());
+    stmt.setInt(8, entry.getVersion());
+  }
+
   @Override
   public boolean lock(Transaction tx, TransactionOutboxEntry entry) throws Exception {
     //noinspection resource
@@ -242,9 +476,7 @@ public class PgSeqPersistor implements Persistor, Validatable {
           // Ensure that subsequent processing uses a deserialized invocation rather than
           // the object from the caller, which might not serialize well and thus cause a
           // difference between immediate and retry processing
-          try (Reader invocationStream = rs.getCharacterStream("invocation")) {
-            entry.setInvocation(serializer.deserializeInvocation(invocationStream));
-          }
+          entry.setInvocation(readInvocation(rs));
           return true;
         }
       } catch (SQLTimeoutException e) {
@@ -254,6 +486,55 @@ public class PgSeqPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public List<TransactionOutboxEntry> lockBatch(
+      Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    var invocations = new HashMap<String, Invocation>();
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                dialect
+                    .getLockBatch()
+                    .replace("{{table}}", tableName)
+                    .replace("{{ids}}", placeholders(entries.size())))) {
+      setIds(entries, stmt);
+      stmt.setQueryTimeout(writeLockTimeoutSeconds);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          // Read the invocation first; see map(ResultSet)
+          Invocation invocation = readInvocation(rs);
+          invocations.put(rs.getString("id") + ":" + rs.getInt("version"), invocation);
+        }
+      } catch (SQLTimeoutException e) {
+        log.debug("Lock attempt timed out on batch of {}", entries.size());
+        return List.of();
+      }
+    }
+    var locked = new ArrayList<TransactionOutboxEntry>(invocations.size());
+    for (TransactionOutboxEntry entry : entries) {
+      Invocation invocation = invocations.get(entry.getId() + ":" + entry.getVersion());
+      if (invocation != null) {
+        entry.setInvocation(invocation);
+        locked.add(entry);
+      }
+    }
+    log.debug("Locked {} of batch of {}", locked.size(), entries.size());
+    return locked;
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  private static void setIds(List<TransactionOutboxEntry> entries, PreparedStatement stmt)
+      throws SQLException {
+    int pos = 1;
+    for (TransactionOutboxEntry entry : entries) {
+      stmt.setString(pos++, entry.getId());
+    }
+  }
+
   @Override
   public boolean unblock(Transaction tx, String entryId) throws Exception {
     //noinspection resource
@@ -287,7 +568,8 @@ public class PgSeqPersistor implements Persistor, Validatable {
                     .getSelectBatch()
                     .replace("{{table}}", tableName)
                     .replace("{{batchSize}}", Integer.toString(batchSize))
-                    .replace("{{allFields}}", ALL_FIELDS))) {
+                    .replace("{{allFields}}", ALL_FIELDS)
+                    .replace("{{shard}}", ""))) {
       stmt.setTimestamp(1, Timestamp.from(now));
       var result = new ArrayList<TransactionOutboxEntry>(batchSize);
       gatherResults(stmt, result);
@@ -295,6 +577,36 @@ public class PgSeqPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry) throws Exception {
+    if (dialect.getClaimBatch() == null) {
+      return Persistor.super.claimBatch(tx, batchSize, now, leaseExpiry);
+    }
+    //noinspection resource
+    try (PreparedStatement stmt =
+        tx.connection()
+            .prepareStatement(
+                dialect
+                    .getClaimBatch()
+                    .replace("{{table}}", tableName)
+                    .replace("{{batchSize}}", Integer.toString(batchSize))
+                    .replace("{{allFields}}", ALL_FIELDS)
+                    .replace("{{shard}}", ""))) {
+      stmt.setTimestamp(1, Timestamp.from(leaseExpiry));
+      stmt.setTimestamp(2, Timestamp.from(now));
+      stmt.setTimestamp(3, Timestamp.from(now));
+      var result = new ArrayList<TransactionOutboxEntry>(batchSize);
+      gatherResults(stmt, result);
+      // RETURNING does not follow the subquery's ORDER BY
+      result.sort(
+          Comparator.comparing(
+              TransactionOutboxEntry::getSequence,
+              Comparator.nullsLast(Comparator.naturalOrder())));
+      return result;
+    }
+  }
+
   @Override
   public Collection<TransactionOutboxEntry> selectNextInTopics(
       Transaction tx, int batchSize, Instant now) throws Exception {
@@ -356,31 +668,49 @@ public class PgSeqPersistor implements Persistor, Validatable {
     if (rs.wasNull()) {
       sequence = null;
     }
+    TransactionOutboxEntry entry =
+        TransactionOutboxEntry.builder()
+            // Reading the invocation *must* occur first because some drivers (ex. SQL Server)
+            // implement true streams that are not buffered in memory. Calling any other getter
+            // on ResultSet before the invocation is read will cause the stream to be closed
+            // prematurely.
+            .invocation(readInvocation(rs))
+            .id(rs.getString("id"))
+            .uniqueRequestId(rs.getString("uniqueRequestId"))
+            .topic("*".equals(topic) ? null : topic)
+            .sequence(sequence)
+            .lastAttemptTime(
+                rs.getTimestamp("lastAttemptTime") == null
+                    ? null
+                    : rs.getTimestamp("lastAttemptTime").toInstant())
+            .nextAttemptTime(rs.getTimestamp("nextAttemptTime").toInstant())
+            .attempts(rs.getInt("attempts"))
+            .blocked(rs.getBoolean("blocked"))
+            .processed(rs.getBoolean("processed"))
+            .version(rs.getInt("version"))
+            .orderedTakeLast(rs.getBoolean("orderedTakeLast"))
+            .build();
+    log.debug("Found {}", entry);
+    return entry;
+  }
+
+  /**
+   * Reads whichever of the text or binary invocation columns is populated, so that entries written
+   * before or after a change of {@link InvocationSerializer} can both be read.
+   */
+  private Invocation readInvocation(ResultSet rs) throws SQLException, IOException {
     try (Reader invocationStream = rs.getCharacterStream("invocation")) {
-      TransactionOutboxEntry entry =
-          TransactionOutboxEntry.builder()
-              // Reading invocationStream *must* occur first because some drivers (ex. SQL Server)
-              // implement true streams that are not buffered in memory. Calling any other getter
-              // on ResultSet before invocationStream is read will cause Reader to be closed
-              // prematurely.
-              .invocation(serializer.deserializeInvocation(invocationStream))
-              .id(rs.getString("id"))
-              .uniqueRequestId(rs.getString("uniqueRequestId"))
-              .topic("*".equals(topic) ? null : topic)
-              .sequence(sequence)
-              .lastAttemptTime(
-                  rs.getTimestamp("lastAttemptTime") == null
-                      ? null
-                      : rs.getTimestamp("lastAttemptTime").toInstant())
-              .nextAttemptTime(rs.getTimestamp("nextAttemptTime").toInstant())
-              .attempts(rs.getInt("attempts"))
-              .blocked(rs.getBoolean("blocked"))
-              .processed(rs.getBoolean("processed"))
-              .version(rs.getInt("version"))
-              .orderedTakeLast(rs.getBoolean("orderedTakeLast"))
-              .build();
-      log.debug("Found {}", entry);
-      return entry;
+      if (invocationStream != null) {
+        return serializer.deserializeInvocation(invocationStream);
+      }
+    }
+    try (InputStream invocationStream = rs.getBinaryStream("invocationBinary")) {
+      if (invocationStream == null) {
+        return null;
+      }
+      try (InputStream in = InvocationCompression.decompressing(invocationStream)) {
+        return serializer.deserializeInvocation(in);
+      }
     }
   }
 
@@ -393,6 +723,24 @@ public class PgSeqPersistor implements Persistor, Validatable {
     }
   }
 
+  @Override
+  public Backlog selectBacklog(Transaction tx) throws SQLException {
+    //noinspection resource
+    try (Statement stmt = tx.connection().createStatement();
+        ResultSet rs =
+            stmt.executeQuery(
+                "SELECT COUNT(*), MIN(nextAttemptTime) FROM "
+                    + tableName
+                    + " WHERE processed = "
+                    + dialect.booleanValue(false)
+                    + " AND blocked = "
+                    + dialect.booleanValue(false))) {
+      rs.next();
+      Timestamp oldest = rs.getTimestamp(2);
+      return new Backlog(rs.getLong(1), oldest == null ? null : oldest.toInstant());
+    }
+  }
+
   @Override
   public boolean checkConnection(Transaction tx) throws SQLException {
     //noinspection resource
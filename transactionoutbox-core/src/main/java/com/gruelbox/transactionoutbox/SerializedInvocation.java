@@ -0,0 +1,53 @@
+package com.gruelbox.transactionoutbox;
+
+import java.nio.charset.StandardCharsets;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * An {@link Invocation} serialized for saving, destined for exactly one of the {@code invocation}
+ * (text) or {@code invocationBinary} columns.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+class SerializedInvocation {
+
+  /**
+   * @return The text form, or null if saved as binary.
+   */
+  @SuppressWarnings("JavaDoc")
+  String text;
+
+  /**
+   * @return The binary form, or null if saved as text.
+   */
+  @SuppressWarnings("JavaDoc")
+  byte[] binary;
+
+  /**
+   * Serializes an invocation, compressing it if it exceeds the threshold.
+   *
+   * @param serializer The serializer.
+   * @param invocation The invocation.
+   * @param compressionThreshold The size, in bytes (or characters for text serializers), above
+   *     which to compress, or null to never compress.
+   * @return The serialized invocation.
+   */
+  static SerializedInvocation serialize(
+      InvocationSerializer serializer, Invocation invocation, Integer compressionThreshold) {
+    if (serializer.isBinary()) {
+      byte[] binary = InvocationBuffer.serializeBinary(serializer, invocation);
+      if (compressionThreshold != null && binary.length > compressionThreshold) {
+        binary = InvocationCompression.compress(binary);
+      }
+      return new SerializedInvocation(null, binary);
+    }
+    String text = InvocationBuffer.serialize(serializer, invocation);
+    if (compressionThreshold != null && text.length() > compressionThreshold) {
+      return new SerializedInvocation(
+          null, InvocationCompression.compress(text.getBytes(StandardCharsets.UTF_8)));
+    }
+    return new SerializedInvocation(text, null);
+  }
+}
@@ -1,5 +1,6 @@
 package com.gruelbox.transactionoutbox;
 
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
@@ -72,4 +73,41 @@ public interface Submitter {
    *     just a call to {@link TransactionOutbox#processNow(TransactionOutboxEntry)}).
    */
   void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor);
+
+  /**
+   * Submits a batch of transaction outbox tasks for processing together, as used when {@link
+   * TransactionOutbox.TransactionOutboxBuilder#processBatchSize(int)} is greater than one. The same
+   * options apply as for {@link #submit(TransactionOutboxEntry, Consumer)}, except that {@code
+   * localExecutor} processes the whole batch at once. All the entries in a batch share the same
+   * {@link TransactionOutboxEntry#getPriority() priority}.
+   *
+   * <p>The default implementation submits each entry individually using {@link
+   * #submit(TransactionOutboxEntry, Consumer)}, so existing implementations continue to work
+   * unchanged, but get no benefit from batching.
+   *
+   * @param entries The entries to process.
+   * @param localExecutor Provides a means of running the work directly locally (it is effectively
+   *     just a call to {@link TransactionOutbox#processBatchNow(List)}).
+   */
+  default void submitBatch(
+      List<TransactionOutboxEntry> entries, Consumer<List<TransactionOutboxEntry>> localExecutor) {
+    entries.forEach(entry -> submit(entry, it -> localExecutor.accept(List.of(it))));
+  }
+
+  /**
+   * Reports how many more calls to {@link #submit(TransactionOutboxEntry, Consumer)} or {@link
+   * #submitBatch(List, Consumer)} could currently be accepted without the work being rejected.
+   * {@link TransactionOutbox#flush()} uses this to claim only as many entries as can actually
+   * start, leaving the rest in the database for instances with spare capacity rather than pushing
+   * back their next attempt time for nothing.
+   *
+   * <p>The answer need only be approximate, since capacity may change before the work is submitted.
+   * The default implementation returns {@link Integer#MAX_VALUE}, meaning that capacity is unknown
+   * and flush should claim as much as its batch size allows.
+   *
+   * @return The number of further submissions which would currently be accepted.
+   */
+  default int availableCapacity() {
+    return Integer.MAX_VALUE;
+  }
 }
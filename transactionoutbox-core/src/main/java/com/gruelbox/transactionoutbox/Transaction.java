@@ -2,6 +2,7 @@ package com.gruelbox.transactionoutbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.util.function.Supplier;
 
 /** Access and manipulation of a currently-active transaction. */
 public interface Transaction {
@@ -37,4 +38,24 @@ public interface Transaction {
    * @param runnable The code to run post-commit.
    */
   void addPostCommitHook(Runnable runnable);
+
+  /**
+   * Registers work to be performed immediately before the current transaction is committed, once
+   * per {@code key}. If a hook has already been registered under the same key in this transaction,
+   * that hook is returned and {@code hook} is not called. This allows work to be accumulated over
+   * the course of a transaction and performed in one go at the end.
+   *
+   * <p>Not supported by all implementations, in which case {@link UnsupportedOperationException} is
+   * thrown and callers should perform the work immediately instead.
+   *
+   * @param key Identifies the hook within the transaction.
+   * @param hook Creates the hook if none is yet registered under {@code key}.
+   * @param <T> The hook type.
+   * @return The hook registered under {@code key}.
+   * @throws UnsupportedOperationException If pre-commit hooks are not supported.
+   */
+  default <T extends Runnable> T addPreCommitHook(Object key, Supplier<T> hook) {
+    throw new UnsupportedOperationException(
+        getClass().getName() + " does not support pre-commit hooks");
+  }
 }
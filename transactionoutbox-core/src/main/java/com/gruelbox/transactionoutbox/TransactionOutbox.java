@@ -3,7 +3,10 @@ package com.gruelbox.transactionoutbox;
 import java.lang.reflect.Method;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import lombok.ToString;
 import org.slf4j.MDC;
@@ -59,6 +62,26 @@ public interface TransactionOutbox {
    */
   <T> T schedule(Class<T> clazz);
 
+  /**
+   * Schedules a call for each of a collection of items. Equivalent to calling {@code
+   * call.accept(schedule(clazz), item)} for each item in turn, but much faster for large numbers of
+   * items, since a single proxy is used for every call, the transaction is looked up once where
+   * possible and the entries are saved using {@link Persistor#saveBatch(Transaction, List)}.
+   *
+   * <p>Usage:
+   *
+   * <pre>transactionOutbox.scheduleAll(MyService.class, customerIds, MyService::notifyCustomer);
+   * </pre>
+   *
+   * @param clazz The class to proxy.
+   * @param items The items for which to schedule calls.
+   * @param call Makes exactly one call to the supplied proxy of {@code T} for the supplied item.
+   * @param <T> The type to proxy.
+   * @param <A> The item type.
+   */
+  <T, A> void scheduleAll(
+      Class<T> clazz, Iterable<? extends A> items, BiConsumer<? super T, ? super A> call);
+
   /**
    * Starts building a schedule request with parameterization. See {@link
    * ParameterizedScheduleBuilder#schedule(Class)} for more information.
@@ -91,6 +114,11 @@ public interface TransactionOutbox {
    * queue with a blocking policy, this method could block for a long time, depending on how long
    * the scheduled work takes and how large {@link TransactionOutboxBuilder#flushBatchSize(int)} is.
    *
+   * <p>No more tasks are fetched than the submitter reports it has {@link
+   * Submitter#availableCapacity() capacity} for, so that tasks which could not be started are left
+   * for another instance. Ordered work in topics is fetched first, and the rest of that capacity is
+   * split between the {@link TransactionOutboxBuilder#flushShards(int) shards}.
+   *
    * <p>Calls {@link TransactionManager#inTransactionReturns(TransactionalSupplier)} to start a new
    * transaction for the fetch.
    *
@@ -136,6 +164,20 @@ public interface TransactionOutbox {
   @SuppressWarnings("WeakerAccess")
   void processNow(TransactionOutboxEntry entry);
 
+  /**
+   * Processes a batch of entries immediately in the current thread, in a single transaction where
+   * possible. Intended for use in custom implementations of {@link Submitter#submitBatch(List,
+   * Consumer)} and should not generally otherwise be called.
+   *
+   * <p>The default implementation calls {@link #processNow(TransactionOutboxEntry)} for each entry.
+   *
+   * @param entries The entries.
+   */
+  @SuppressWarnings("WeakerAccess")
+  default void processBatchNow(List<TransactionOutboxEntry> entries) {
+    entries.forEach(this::processNow);
+  }
+
   /** Builder for {@link TransactionOutbox}. */
   @ToString
   abstract class TransactionOutboxBuilder {
@@ -146,6 +188,9 @@ public interface TransactionOutbox {
     protected Duration attemptFrequency;
     protected int blockAfterAttempts;
     protected int flushBatchSize;
+    protected int processBatchSize;
+    protected int flushShards;
+    protected Duration claimWindow;
     protected Supplier<Clock> clockProvider;
     protected TransactionOutboxListener listener;
     protected Persistor persistor;
@@ -214,7 +259,9 @@ public interface TransactionOutbox {
     /**
      * @param flushBatchSize How many items should be attempted in each flush. This should be
      *     balanced with {@link #attemptFrequency} and the frequency with which {@link #flush()} is
-     *     called to achieve optimum throughput. Defaults to 4096.
+     *     called to achieve optimum throughput. Fewer are attempted if the {@link
+     *     #submitter(Submitter)} reports less {@link Submitter#availableCapacity() capacity}.
+     *     Defaults to 4096.
      * @return Builder.
      */
     public TransactionOutboxBuilder flushBatchSize(int flushBatchSize) {
@@ -222,6 +269,62 @@ public interface TransactionOutbox {
       return this;
     }
 
+    /**
+     * @param processBatchSize The maximum number of entries found by {@link #flush()} which are
+     *     handed to the {@link Submitter} together and then processed in a single transaction: one
+     *     statement locks the whole batch, each entry is invoked and the successful entries are
+     *     removed with one more statement. This cuts database round trips dramatically for
+     *     short-running tasks, at the cost of some isolation: if any entry in the batch fails, the
+     *     whole transaction is rolled back, the failure is recorded against that entry and the rest
+     *     are re-processed one at a time, which means that they will have been invoked twice.
+     *     Rolling back the whole batch also discards anything the failing entry scheduled or
+     *     batched on the transaction, which a savepoint would not. Only use this if your tasks are
+     *     idempotent or their side effects are limited to the transaction. On databases which do
+     *     not support {@code SKIP LOCKED}, a batch containing any entry locked elsewhere is skipped
+     *     entirely until its next attempt. Defaults to 1, which processes every entry in its own
+     *     transaction. May be at most 1000.
+     * @return Builder.
+     */
+    public TransactionOutboxBuilder processBatchSize(int processBatchSize) {
+      this.processBatchSize = processBatchSize;
+      return this;
+    }
+
+    /**
+     * @param flushShards The number of shards into which work outside any topic is split when
+     *     {@link #flush()} claims it. Each shard is claimed in its own transaction and, when using
+     *     {@link TransactionOutbox#flush(Executor)}, in parallel, so a large backlog can be drained
+     *     by several threads at once, each working through its own records rather than competing
+     *     for the same ones. The shards share {@link #flushBatchSize} between them, less any
+     *     ordered work fetched from topics in the same flush. Needs a {@link Persistor} which
+     *     {@link Persistor#supportsSharding() supports sharding}, such as {@link DefaultPersistor},
+     *     and is otherwise ignored; records scheduled before sharding was supported all fall into
+     *     the first shard. Ordered work in topics is not sharded. Defaults to 1.
+     * @return Builder.
+     */
+    public TransactionOutboxBuilder flushShards(int flushShards) {
+      this.flushShards = flushShards;
+      return this;
+    }
+
+    /**
+     * @param claimWindow If set, {@link #flush()} sizes its claims to the throughput of this
+     *     instance rather than always claiming up to {@link #flushBatchSize}, so that when several
+     *     instances share a large backlog, each takes a share in proportion to how fast it can
+     *     process it, instead of the first to poll taking the lot. Each instance keeps roughly
+     *     enough claimed work in hand to last this long, based on how quickly it has been finishing
+     *     claimed work, and claims more as that drains. While it has enough, {@link #flush()} waits
+     *     up to this long for work to finish before claiming more, and returns true if it still has
+     *     work in hand, so that a loop or {@link FlushScheduler} calling it polls again promptly.
+     *     Should be short compared with {@link #attemptFrequency}; a second or so is typical.
+     *     Defaults to null, which claims as much as possible each time.
+     * @return Builder.
+     */
+    public TransactionOutboxBuilder claimWindow(Duration claimWindow) {
+      this.claimWindow = claimWindow;
+      return this;
+    }
+
     /**
      * @param clockProvider The {@link Clock} source. Generally best left alone except when testing.
      *     Defaults to the system clock.
@@ -393,6 +496,22 @@ public interface TransactionOutbox {
      */
     ParameterizedScheduleBuilder orderedTakeLast(boolean takeLast);
 
+    /**
+     * Sets the priority of the request. When more requests are due than {@link #flush()} can claim
+     * at once, those with a higher priority are claimed first, so that a backlog of low-priority
+     * work does not hold up latency-sensitive requests. Requests of equal priority are claimed in
+     * no particular order.
+     *
+     * <p>Priority only affects requests which are not {@link #ordered(String)}, and only affects
+     * the order in which they are claimed, not how they are run. To stop high-priority requests
+     * queueing behind low-priority ones once claimed, give them their own threads using {@link
+     * ExecutorSubmitter.ExecutorSubmitterBuilder#priorityExecutor(Integer, Executor)}.
+     *
+     * @param priority The priority. Defaults to zero. May be negative.
+     * @return Builder.
+     */
+    ParameterizedScheduleBuilder priority(int priority);
+
     /**
      * Instructs the scheduler to delay processing the task until after the specified duration. This
      * can be used for simple job scheduling or to introduce an asynchronous delay into chains of
@@ -436,6 +555,26 @@ public interface TransactionOutbox {
      */
     <T> T schedule(Class<T> clazz);
 
+    /**
+     * Equivalent to {@link TransactionOutbox#scheduleAll(Class, Iterable, BiConsumer)}, but
+     * applying additional parameters to every request as configured using {@link
+     * TransactionOutbox#with()}. {@link #uniqueRequestId(String)} may not be used.
+     *
+     * <p>Usage example:
+     *
+     * <pre>transactionOutbox.with()
+     * .ordered("customers")
+     * .scheduleAll(MyService.class, customerIds, MyService::notifyCustomer);</pre>
+     *
+     * @param clazz The class to proxy.
+     * @param items The items for which to schedule calls.
+     * @param call Makes exactly one call to the supplied proxy of {@code T} for the supplied item.
+     * @param <T> The type to proxy.
+     * @param <A> The item type.
+     */
+    <T, A> void scheduleAll(
+        Class<T> clazz, Iterable<? extends A> items, BiConsumer<? super T, ? super A> call);
+
     /**
      * Directly schedule method call with args. Current transaction requires to be active, otherwise
      * exception will be thrown
@@ -43,6 +43,15 @@ public class TransactionOutboxEntry implements Validatable {
 
   @Getter private final boolean orderedTakeLast;
 
+  /**
+   * @param priority The priority of the task. When more tasks are due than can be claimed at once,
+   *     those with a higher priority are claimed first. Defaults to zero.
+   * @return The priority of the task.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Getter
+  private final int priority;
+
   /**
    * @param sequence The ordered sequence within the {@code topic}.
    */
@@ -57,7 +66,7 @@ public class TransactionOutboxEntry implements Validatable {
    */
   @SuppressWarnings("JavaDoc")
   @Getter
-  @Setter(AccessLevel.PACKAGE)
+  @Setter
   private Invocation invocation;
 
   /**
@@ -128,7 +137,7 @@ public class TransactionOutboxEntry implements Validatable {
         if (!this.initialized) {
           String description =
               String.format(
-                  "%s.%s(%s) [%s]%s%s",
+                  "%s.%s(%s) [%s]%s%s%s",
                   invocation.getClassName(),
                   invocation.getMethodName(),
                   invocation.getArgs() == null
@@ -138,7 +147,8 @@ public class TransactionOutboxEntry implements Validatable {
                           .collect(joining(", ")),
                   id,
                   uniqueRequestId == null ? "" : " uid=[" + uniqueRequestId + "]",
-                  topic == null ? "" : " seq=[" + topic + "/" + sequence + "]");
+                  topic == null ? "" : " seq=[" + topic + "/" + sequence + "]",
+                  priority == 0 ? "" : " priority=[" + priority + "]");
           this.description = description;
           this.initialized = true;
           return description;
@@ -19,6 +19,7 @@ import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import lombok.*;
@@ -31,6 +32,10 @@ import org.slf4j.event.Level;
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
 
+  private static final int SCHEDULE_ALL_BATCH_SIZE = 1000;
+
+  private static final Duration IDLE_TOPIC_CHECK_INTERVAL = Duration.ofMinutes(1);
+
   @Getter private final TransactionManager transactionManager;
   private final Persistor persistor;
   private final Instantiator instantiator;
@@ -39,13 +44,27 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
   private final Level logLevelTemporaryFailure;
   private final int blockAfterAttempts;
   private final int flushBatchSize;
+  private final int processBatchSize;
+  private final int flushShards;
   private final Supplier<Clock> clockProvider;
   private final TransactionOutboxListener listener;
   private final boolean serializeMdc;
   private final Validator validator;
   private final Duration retentionThreshold;
+  private final ClaimSizer claimSizer;
   private final AtomicBoolean initialized = new AtomicBoolean();
+  // Topics can only become idle once their work has been processed. Set initially to pick up any
+  // left idle before this instance started.
+  private final AtomicBoolean topicWorkProcessed = new AtomicBoolean(true);
+  private final AtomicReference<Instant> nextIdleTopicCheck = new AtomicReference<>(Instant.MIN);
   private final ProxyFactory proxyFactory = new ProxyFactory();
+  private final ClassValue<Object> defaultProxies =
+      new ClassValue<>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+          return createDefaultProxy(type);
+        }
+      };
   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
   @Override
@@ -58,9 +77,18 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
     validator.notNull("logLevelTemporaryFailure", logLevelTemporaryFailure);
     validator.min("blockAfterAttempts", blockAfterAttempts, 1);
     validator.min("flushBatchSize", flushBatchSize, 1);
+    validator.min("processBatchSize", processBatchSize, 1);
+    validator.isTrue("processBatchSize", processBatchSize <= 1000, "must be at most %s", 1000);
+    validator.min("flushShards", flushShards, 1);
     validator.notNull("clockProvider", clockProvider);
     validator.notNull("listener", listener);
     validator.notNull("retentionThreshold", retentionThreshold);
+    if (claimSizer != null) {
+      validator.isTrue(
+          "claimWindow",
+          claimSizer.getWindow().compareTo(Duration.ZERO) > 0,
+          "must be greater than zero");
+    }
   }
 
   static TransactionOutboxBuilder builder() {
@@ -81,7 +109,13 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
 
   @Override
   public <T> T schedule(Class<T> clazz) {
-    return schedule(clazz, null, null, false, null);
+    return schedule(clazz, null, null, false, 0, null);
+  }
+
+  @Override
+  public <T, A> void scheduleAll(
+      Class<T> clazz, Iterable<? extends A> items, BiConsumer<? super T, ? super A> call) {
+    scheduleAll(clazz, items, call, null, false, 0, null);
   }
 
   @Override
@@ -89,7 +123,7 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
     return new ParameterizedScheduleBuilderImpl();
   }
 
-  private boolean doFlush(Function<Transaction, Collection<TransactionOutboxEntry>> batchSource) {
+  private int doFlush(Function<Transaction, Collection<TransactionOutboxEntry>> batchSource) {
     var batch =
         transactionManager.inTransactionReturns(
             transaction -> {
@@ -106,52 +140,165 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
               }
               return result;
             });
+    submitAll(batch);
+    return batch.size();
+  }
+
+  private boolean claimAndSubmit(Instant now, int shard, int shards, int limit) {
+    if (limit == 0) {
+      log.debug("Submitter has no capacity; leaving shard {} for later", shard);
+      return false;
+    }
+    var batch =
+        transactionManager.inTransactionReturns(
+            tx ->
+                uncheckedly(
+                    () ->
+                        shards == 1
+                            ? persistor.claimBatch(tx, limit, now, after(attemptFrequency))
+                            : persistor.claimBatch(
+                                tx, limit, now, after(attemptFrequency), shard, shards)));
+    return submitAll(batch);
+  }
+
+  /**
+   * @return The most entries worth selecting in one pass, given how much work the submitter can
+   *     currently accept. Claiming more would only push back their next attempt for nothing.
+   */
+  private int claimLimit() {
+    long capacity = (long) submitter.availableCapacity() * processBatchSize;
+    int limit = (int) Math.max(0, Math.min(flushBatchSize, capacity));
+    if (limit < flushBatchSize) {
+      log.debug("Submitter capacity limits flush to {} entries", limit);
+    }
+    return limit;
+  }
+
+  private boolean submitAll(List<TransactionOutboxEntry> batch) {
     log.debug("Got batch of {}", batch.size());
-    batch.forEach(this::submitNow);
+    if (claimSizer != null) {
+      claimSizer.claimed(batch, after(attemptFrequency));
+    }
+    if (processBatchSize > 1) {
+      // Keep each batch to a single priority so the submitter can route it as a whole
+      int start = 0;
+      for (int i = 1; i <= batch.size(); i++) {
+        if (i == batch.size()
+            || i - start == processBatchSize
+            || batch.get(i).getPriority() != batch.get(start).getPriority()) {
+          submitter.submitBatch(batch.subList(start, i), this::processClaimedBatch);
+          start = i;
+        }
+      }
+    } else {
+      batch.forEach(entry -> submitter.submit(entry, this::processClaimed));
+    }
     log.debug("Submitted batch");
     return !batch.isEmpty();
   }
 
+  private void processClaimed(TransactionOutboxEntry entry) {
+    try {
+      processNow(entry);
+    } finally {
+      if (claimSizer != null) {
+        claimSizer.finished(entry);
+      }
+    }
+  }
+
+  private void processClaimedBatch(List<TransactionOutboxEntry> entries) {
+    try {
+      processBatchNow(entries);
+    } finally {
+      if (claimSizer != null) {
+        entries.forEach(claimSizer::finished);
+      }
+    }
+  }
+
   @Override
   public boolean flush(Executor executor) {
     if (!initialized.get()) {
       throw new IllegalStateException("Not initialized");
     }
+    int capacityLimit = claimLimit();
+    int limit =
+        claimSizer == null || capacityLimit == 0
+            ? capacityLimit
+            : uncheckedly(() -> claimSizer.awaitClaimable(capacityLimit));
+    // Still enough in hand after waiting, which will free up room to claim more soon, so report
+    // it to keep polling
+    boolean busy = limit == 0 && capacityLimit > 0;
     Instant now = clockProvider.get().instant();
     List<CompletableFuture<Boolean>> futures = new ArrayList<>();
 
-    futures.add(
+    // Ordered work is fetched first, at most one entry per topic, and the shards share whatever
+    // capacity it leaves, so that together they never take more than the submitter can accept
+    CompletableFuture<Integer> topics =
         CompletableFuture.supplyAsync(
             () -> {
-              log.debug("Flushing stale tasks");
-              return doFlush(
-                  tx -> uncheckedly(() -> persistor.selectBatch(tx, flushBatchSize, now)));
+              log.debug("Deleting outdated invocations in all topics");
+              transactionManager.inTransaction(
+                  tx -> uncheckedly(() -> persistor.deleteOutdatedInAllTopics(tx)));
+              if (limit == 0) {
+                log.debug("Submitter has no capacity; leaving topics for later");
+                return 0;
+              }
+              log.debug("Flushing topics");
+              return doFlush(tx -> uncheckedly(() -> persistor.selectNextInTopics(tx, limit, now)));
             },
-            executor));
+            executor);
+    futures.add(topics.thenApply(count -> count > 0));
+
+    // A persistor which cannot shard would claim everything in the first shard, so give it the
+    // whole limit rather than a fraction of it
+    int shards = persistor.supportsSharding() ? flushShards : 1;
+    for (int i = 0; i < shards; i++) {
+      int shard = i;
+      futures.add(
+          topics.thenApplyAsync(
+              topicCount -> {
+                int remaining = limit - topicCount;
+                int shardLimit = remaining / shards + (shard < remaining % shards ? 1 : 0);
+                log.debug("Flushing stale tasks in shard {}", shard);
+                return claimAndSubmit(now, shard, shards, shardLimit);
+              },
+              executor));
+    }
 
     futures.add(
         CompletableFuture.runAsync(() -> expireIdempotencyProtection(now), executor)
             .thenApply(it -> false));
 
     futures.add(
-        CompletableFuture.supplyAsync(
-            () -> {
-              log.debug("Deleting outdated invocations in all topics");
-              transactionManager.inTransaction(
-                  tx -> uncheckedly(() -> persistor.deleteOutdatedInAllTopics(tx)));
-              log.debug("Flushing topics");
-              return doFlush(
-                  tx -> uncheckedly(() -> persistor.selectNextInTopics(tx, flushBatchSize, now)));
-            },
-            executor));
+        CompletableFuture.runAsync(() -> deactivateIdleTopics(now), executor)
+            .thenApply(it -> false));
 
     return futures.stream()
-        .reduce((f1, f2) -> f1.thenCombine(f2, (d1, d2) -> d1 || d2))
-        .map(CompletableFuture::join)
-        .orElse(false);
+            .reduce((f1, f2) -> f1.thenCombine(f2, (d1, d2) -> d1 || d2))
+            .map(CompletableFuture::join)
+            .orElse(false)
+        || busy;
+  }
+
+  /**
+   * Looks for idle topics at most once per {@link #IDLE_TOPIC_CHECK_INTERVAL}, and only if this
+   * instance has processed ordered work since it last looked, since the check scans every active
+   * topic. Topics left active for a while longer only cost {@link Persistor#selectNextInTopics} an
+   * index lookup each.
+   */
+  private void deactivateIdleTopics(Instant now) {
+    if (now.isBefore(nextIdleTopicCheck.get()) || !topicWorkProcessed.getAndSet(false)) {
+      return;
+    }
+    nextIdleTopicCheck.set(now.plus(IDLE_TOPIC_CHECK_INTERVAL));
+    log.debug("Deactivating idle topics");
+    uncheckedly(() -> persistor.deactivateIdleTopics(transactionManager, flushBatchSize));
   }
 
   private void expireIdempotencyProtection(Instant now) {
+    uncheckedly(() -> persistor.maintainPartitions(transactionManager, now, retentionThreshold));
     long totalRecordsDeleted = 0;
     int recordsDeleted;
     do {
@@ -225,15 +372,31 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
       String uniqueRequestId,
       String topic,
       boolean orderedTakeLast,
+      int priority,
       Duration delayForAtLeast) {
     if (!initialized.get()) {
       throw new IllegalStateException("Not initialized");
     }
+    if (uniqueRequestId == null
+        && topic == null
+        && !orderedTakeLast
+        && priority == 0
+        && delayForAtLeast == null) {
+      // The proxy carries no per-call state, so the common case can share one per class
+      return clazz.cast(defaultProxies.get(clazz));
+    }
     return proxyFactory.createProxy(
         clazz,
         (method, args) ->
             persistInvocationAndAddPostCommitHook(
-                method, args, uniqueRequestId, topic, orderedTakeLast, delayForAtLeast));
+                method, args, uniqueRequestId, topic, orderedTakeLast, priority, delayForAtLeast));
+  }
+
+  private <T> T createDefaultProxy(Class<T> clazz) {
+    return proxyFactory.createProxy(
+        clazz,
+        (method, args) ->
+            persistInvocationAndAddPostCommitHook(method, args, null, null, false, 0, null));
   }
 
   private <T> T persistInvocationAndAddPostCommitHook(
@@ -242,6 +405,7 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
       String uniqueRequestId,
       String topic,
       boolean orderedTakeLast,
+      int priority,
       Duration delayForAtLeast) {
     return uncheckedly(
         () -> {
@@ -254,42 +418,169 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
                   extracted.getArgs(),
                   uniqueRequestId,
                   topic,
-                  orderedTakeLast);
+                  orderedTakeLast,
+                  priority);
           if (delayForAtLeast != null) {
             entry.setNextAttemptTime(entry.getNextAttemptTime().plus(delayForAtLeast));
           }
           validator.validate(entry);
           persistor.save(extracted.getTransaction(), entry);
-          extracted
-              .getTransaction()
-              .addPostCommitHook(
-                  () -> {
-                    listener.scheduled(entry);
-                    if (entry.getTopic() != null) {
-                      log.info("Queued {} in topic {}", entry.description(), topic);
-                    } else if (delayForAtLeast == null) {
-                      submitNow(entry);
-                      log.info("Scheduled {} for post-commit execution", entry.description());
-                    } else if (delayForAtLeast.compareTo(attemptFrequency) < 0) {
-                      scheduler.schedule(
-                          () -> submitNow(entry),
-                          delayForAtLeast.toMillis(),
-                          TimeUnit.MILLISECONDS);
-                      log.info(
-                          "Scheduled {} for post-commit execution after at least {}",
-                          entry.description(),
-                          delayForAtLeast);
-                    } else {
-                      log.info(
-                          "Queued {} for execution after at least {}",
-                          entry.description(),
-                          delayForAtLeast);
-                    }
-                  });
+          if (entry.getTopic() != null) {
+            persistor.notifyPending(extracted.getTransaction());
+          }
+          extracted.getTransaction().addPostCommitHook(() -> afterCommit(entry, delayForAtLeast));
           return null;
         });
   }
 
+  private <T, A> void scheduleAll(
+      Class<T> clazz,
+      Iterable<? extends A> items,
+      BiConsumer<? super T, ? super A> call,
+      String topic,
+      boolean orderedTakeLast,
+      int priority,
+      Duration delayForAtLeast) {
+    if (!initialized.get()) {
+      throw new IllegalStateException("Not initialized");
+    }
+    var recorder = new CallRecorder();
+    T proxy = proxyFactory.createProxy(clazz, recorder::record);
+    Transaction threadLocalTransaction =
+        transactionManager instanceof ThreadLocalContextTransactionManager
+            ? uncheckedly(
+                () ->
+                    ((ThreadLocalContextTransactionManager) transactionManager)
+                        .requireTransactionReturns(tx -> tx))
+            : null;
+    var mdc = serializeMdc && (MDC.getMDCAdapter() != null) ? MDC.getCopyOfContextMap() : null;
+    var nextAttemptTime = clockProvider.get().instant();
+    if (delayForAtLeast != null) {
+      nextAttemptTime = nextAttemptTime.plus(delayForAtLeast);
+    }
+    Transaction transaction = null;
+    boolean validated = false;
+    List<TransactionOutboxEntry> batch = new ArrayList<>(SCHEDULE_ALL_BATCH_SIZE);
+    for (A item : items) {
+      call.accept(proxy, item);
+      if (recorder.method == null) {
+        throw new IllegalStateException("No method called on proxy");
+      }
+      TransactionalInvocation extracted;
+      if (threadLocalTransaction == null) {
+        extracted = transactionManager.extractTransaction(recorder.method, recorder.args);
+      } else {
+        extracted = recorder.toInvocation(threadLocalTransaction);
+      }
+      recorder.reset();
+      if (transaction != null
+          && (extracted.getTransaction() != transaction
+              || batch.size() == SCHEDULE_ALL_BATCH_SIZE)) {
+        saveAll(transaction, batch, delayForAtLeast);
+        batch = new ArrayList<>(SCHEDULE_ALL_BATCH_SIZE);
+      }
+      transaction = extracted.getTransaction();
+      var entry =
+          TransactionOutboxEntry.builder()
+              .id(UUID.randomUUID().toString())
+              .invocation(
+                  new Invocation(
+                      recorder.className(extracted.getClazz()),
+                      extracted.getMethodName(),
+                      extracted.getParameters(),
+                      extracted.getArgs(),
+                      mdc))
+              .nextAttemptTime(nextAttemptTime)
+              .topic(topic)
+              .orderedTakeLast(orderedTakeLast)
+              .priority(priority)
+              .build();
+      if (!validated) {
+        // Entries differ only by id and invocation, so validating the first is enough
+        validator.validate(entry);
+        validated = true;
+      }
+      batch.add(entry);
+    }
+    if (!batch.isEmpty()) {
+      saveAll(transaction, batch, delayForAtLeast);
+    }
+  }
+
+  private void saveAll(
+      Transaction transaction, List<TransactionOutboxEntry> entries, Duration delayForAtLeast) {
+    Utils.uncheck(() -> persistor.saveBatch(transaction, entries));
+    if (entries.get(0).getTopic() != null) {
+      Utils.uncheck(() -> persistor.notifyPending(transaction));
+    }
+    log.debug("Saved batch of {}", entries.size());
+    transaction.addPostCommitHook(
+        () -> entries.forEach(entry -> afterCommit(entry, delayForAtLeast)));
+  }
+
+  private void afterCommit(TransactionOutboxEntry entry, Duration delayForAtLeast) {
+    listener.scheduled(entry);
+    if (entry.getTopic() != null) {
+      log.info("Queued {} in topic {}", entry.description(), entry.getTopic());
+    } else if (delayForAtLeast == null) {
+      submitNow(entry);
+      log.info("Scheduled {} for post-commit execution", entry.description());
+    } else if (delayForAtLeast.compareTo(attemptFrequency) < 0) {
+      scheduler.schedule(() -> submitNow(entry), delayForAtLeast.toMillis(), TimeUnit.MILLISECONDS);
+      log.info(
+          "Scheduled {} for post-commit execution after at least {}",
+          entry.description(),
+          delayForAtLeast);
+    } else {
+      log.info("Queued {} for execution after at least {}", entry.description(), delayForAtLeast);
+    }
+  }
+
+  /**
+   * Records the call made to a {@link #scheduleAll} proxy for each item, caching the reflective
+   * details of the method called, which is generally the same for every item.
+   */
+  private final class CallRecorder {
+
+    private Method method;
+    private Object[] args;
+    private Method lastMethod;
+    private Class<?>[] lastParameterTypes;
+    private Class<?> lastClass;
+    private String lastClassName;
+
+    <R> R record(Method method, Object[] args) {
+      if (this.method != null) {
+        throw new IllegalStateException("Only one method may be called on the proxy per item");
+      }
+      this.method = method;
+      this.args = args;
+      return null;
+    }
+
+    TransactionalInvocation toInvocation(Transaction transaction) {
+      if (method != lastMethod) {
+        lastMethod = method;
+        lastParameterTypes = method.getParameterTypes();
+      }
+      return new TransactionalInvocation(
+          method.getDeclaringClass(), method.getName(), lastParameterTypes, args, transaction);
+    }
+
+    String className(Class<?> clazz) {
+      if (clazz != lastClass) {
+        lastClass = clazz;
+        lastClassName = instantiator.getName(clazz);
+      }
+      return lastClassName;
+    }
+
+    void reset() {
+      method = null;
+      args = null;
+    }
+  }
+
   private void submitNow(TransactionOutboxEntry entry) {
     submitter.submit(entry, this::processNow);
   }
@@ -337,6 +628,9 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
       entry.withinMDC(
           () -> {
             if (finalSuccess) {
+              if (entry.getTopic() != null) {
+                topicWorkProcessed.set(true);
+              }
               log.info("Processed {}", entry.description());
               listener.success(entry, result.get());
             } else {
@@ -346,6 +640,86 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
     }
   }
 
+  @Override
+  public void processBatchNow(List<TransactionOutboxEntry> entries) {
+    if (entries.size() == 1) {
+      processNow(entries.get(0));
+      return;
+    }
+    initialize();
+    List<Object> results = new ArrayList<>(entries.size());
+    AtomicReference<TransactionOutboxEntry> failed = new AtomicReference<>();
+    List<TransactionOutboxEntry> processed;
+    try {
+      processed =
+          transactionManager.inTransactionReturnsThrows(
+              tx -> {
+                var locked = persistor.lockBatch(tx, entries);
+                var toDelete = new ArrayList<TransactionOutboxEntry>(locked.size());
+                var toUpdate = new ArrayList<TransactionOutboxEntry>();
+                for (var entry : locked) {
+                  failed.set(entry);
+                  results.add(
+                      entry.withinMDC(
+                          () -> {
+                            log.info("Processing {}", entry.description());
+                            return invoke(entry, tx);
+                          }));
+                  if (entry.getUniqueRequestId() == null) {
+                    toDelete.add(entry);
+                  } else {
+                    log.debug(
+                        "Deferring deletion of {} by {}", entry.description(), retentionThreshold);
+                    entry.setProcessed(true);
+                    entry.setLastAttemptTime(Instant.now(clockProvider.get()));
+                    entry.setNextAttemptTime(after(retentionThreshold));
+                    toUpdate.add(entry);
+                  }
+                }
+                failed.set(null);
+                if (!toDelete.isEmpty()) {
+                  persistor.deleteBatch(tx, toDelete);
+                }
+                if (!toUpdate.isEmpty()) {
+                  persistor.updateBatch(tx, toUpdate);
+                }
+                return locked;
+              });
+    } catch (Exception e) {
+      var failedEntry = failed.get();
+      if (failedEntry == null) {
+        log.warn(
+            "Failed to process batch of {}. Processing individually instead.", entries.size(), e);
+        entries.forEach(this::processNow);
+      } else {
+        updateAttemptCount(failedEntry, e instanceof InvocationTargetException ? e.getCause() : e);
+        log.debug(
+            "Batch of {} rolled back due to failure of {}. Processing the rest individually.",
+            entries.size(),
+            failedEntry.description());
+        entries.stream().filter(it -> it != failedEntry).forEach(this::processNow);
+      }
+      return;
+    }
+    for (int i = 0; i < processed.size(); i++) {
+      var entry = processed.get(i);
+      var result = results.get(i);
+      entry.withinMDC(
+          () -> {
+            if (entry.getTopic() != null) {
+              topicWorkProcessed.set(true);
+            }
+            log.info("Processed {}", entry.description());
+            listener.success(entry, result);
+          });
+    }
+    if (processed.size() < entries.size()) {
+      log.debug(
+          "Skipped {} tasks in batch - may be locked or already processed",
+          entries.size() - processed.size());
+    }
+  }
+
   private Object invoke(TransactionOutboxEntry entry, Transaction transaction)
       throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
     Object instance = instantiator.getInstance(entry.getInvocation().getClassName());
@@ -362,7 +736,8 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
       Object[] args,
       String uniqueRequestId,
       String topic,
-      boolean orderedTakeLast) {
+      boolean orderedTakeLast,
+      int priority) {
     return TransactionOutboxEntry.builder()
         .id(UUID.randomUUID().toString())
         .invocation(
@@ -377,6 +752,7 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
         .uniqueRequestId(uniqueRequestId)
         .topic(topic)
         .orderedTakeLast(orderedTakeLast)
+        .priority(priority)
         .build();
   }
 
@@ -454,11 +830,19 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
               Utils.firstNonNull(logLevelTemporaryFailure, () -> Level.WARN),
               blockAfterAttempts < 1 ? 5 : blockAfterAttempts,
               flushBatchSize < 1 ? 4096 : flushBatchSize,
+              processBatchSize < 1 ? 1 : processBatchSize,
+              flushShards < 1 ? 1 : flushShards,
               clockProvider == null ? Clock::systemDefaultZone : clockProvider,
               Utils.firstNonNull(listener, () -> TransactionOutboxListener.EMPTY),
               serializeMdc == null || serializeMdc,
               validator,
-              retentionThreshold == null ? Duration.ofDays(7) : retentionThreshold);
+              retentionThreshold == null ? Duration.ofDays(7) : retentionThreshold,
+              claimWindow == null
+                  ? null
+                  : new ClaimSizer(
+                      claimWindow,
+                      processBatchSize < 1 ? 1 : processBatchSize,
+                      clockProvider == null ? Clock::systemDefaultZone : clockProvider));
       validator.validate(impl);
       if (initializeImmediately == null || initializeImmediately) {
         impl.initialize();
@@ -474,6 +858,7 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
     private String uniqueRequestId;
     private String ordered;
     private boolean orderedTakeLast = false;
+    private int priority;
     private Duration delayForAtLeast;
 
     private void validate() {
@@ -489,7 +874,18 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
     public <T> T schedule(Class<T> clazz) {
       validate();
       return TransactionOutboxImpl.this.schedule(
-          clazz, uniqueRequestId, ordered, orderedTakeLast, delayForAtLeast);
+          clazz, uniqueRequestId, ordered, orderedTakeLast, priority, delayForAtLeast);
+    }
+
+    @Override
+    public <T, A> void scheduleAll(
+        Class<T> clazz, Iterable<? extends A> items, BiConsumer<? super T, ? super A> call) {
+      validate();
+      if (uniqueRequestId != null) {
+        throw new IllegalArgumentException("uniqueRequestId may not be used with scheduleAll");
+      }
+      TransactionOutboxImpl.this.scheduleAll(
+          clazz, items, call, ordered, orderedTakeLast, priority, delayForAtLeast);
     }
 
     @Override
@@ -500,13 +896,19 @@ final class TransactionOutboxImpl implements TransactionOutbox, Validatable {
       if (requireTransaction
           || !(transactionManager instanceof ThreadLocalContextTransactionManager)) {
         TransactionOutboxImpl.this.persistInvocationAndAddPostCommitHook(
-            method, args, uniqueRequestId, ordered, orderedTakeLast, delayForAtLeast);
+            method, args, uniqueRequestId, ordered, orderedTakeLast, priority, delayForAtLeast);
       } else {
         ((ThreadLocalContextTransactionManager) transactionManager)
             .inCurrentOrNewTransaction(
                 t ->
                     TransactionOutboxImpl.this.persistInvocationAndAddPostCommitHook(
-                        method, args, uniqueRequestId, ordered, orderedTakeLast, delayForAtLeast));
+                        method,
+                        args,
+                        uniqueRequestId,
+                        ordered,
+                        orderedTakeLast,
+                        priority,
+                        delayForAtLeast));
       }
     }
   }
@@ -1,5 +1,10 @@
 package com.gruelbox.transactionoutbox;
 
-interface Validatable {
+/**
+ * Implemented by components which check their configuration when a {@link TransactionOutbox} is
+ * built. Public so that components wrapping others, such as instrumented persistors, can pass
+ * validation through to what they wrap.
+ */
+public interface Validatable {
   void validate(Validator validator);
 }
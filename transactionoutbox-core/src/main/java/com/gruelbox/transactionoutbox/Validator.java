@@ -3,7 +3,8 @@ package com.gruelbox.transactionoutbox;
 import java.time.Clock;
 import java.util.function.Supplier;
 
-class Validator {
+/** Reports invalid configuration found by {@link Validatable} components. */
+public class Validator {
 
   private final String path;
   private final Supplier<Clock> clockProvider;
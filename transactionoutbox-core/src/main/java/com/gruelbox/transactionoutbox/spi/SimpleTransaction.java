@@ -9,8 +9,10 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 public final class SimpleTransaction implements Transaction, AutoCloseable {
 
   private final List<Runnable> postCommitHooks = new ArrayList<>();
+  private final Map<Object, Runnable> preCommitHooks = new LinkedHashMap<>();
   private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
   private final Connection connection;
   private final Object context;
@@ -34,6 +37,12 @@ public final class SimpleTransaction implements Transaction, AutoCloseable {
     postCommitHooks.add(runnable);
   }
 
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends Runnable> T addPreCommitHook(Object key, Supplier<T> hook) {
+    return (T) preCommitHooks.computeIfAbsent(key, k -> hook.get());
+  }
+
   @Override
   public PreparedStatement prepareBatchStatement(String sql) {
     return preparedStatements.computeIfAbsent(
@@ -41,6 +50,10 @@ public final class SimpleTransaction implements Transaction, AutoCloseable {
   }
 
   public void flushBatches() {
+    if (!preCommitHooks.isEmpty()) {
+      log.debug("Running pre-commit hooks");
+      preCommitHooks.values().forEach(Runnable::run);
+    }
     if (!preparedStatements.isEmpty()) {
       log.debug("Flushing batches");
       for (PreparedStatement statement : preparedStatements.values()) {
@@ -1,5 +1,7 @@
 package com.gruelbox.transactionoutbox;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.time.*;
@@ -17,14 +19,21 @@ abstract class AbstractTestDefaultInvocationSerializer {
   private static final String CLASS_NAME = "foo";
   private static final String METHOD_NAME = "bar";
 
-  private final DefaultInvocationSerializer serializer;
+  static final Set<Class<?>> CUSTOM_TYPES =
+      Set.of(ExampleCustomEnum.class, ExampleCustomClass.class);
+
+  private final InvocationSerializer serializer;
 
   protected AbstractTestDefaultInvocationSerializer(Integer version) {
-    this.serializer =
+    this(
         DefaultInvocationSerializer.builder()
-            .serializableTypes(Set.of(ExampleCustomEnum.class, ExampleCustomClass.class))
+            .serializableTypes(CUSTOM_TYPES)
             .version(version)
-            .build();
+            .build());
+  }
+
+  protected AbstractTestDefaultInvocationSerializer(InvocationSerializer serializer) {
+    this.serializer = serializer;
   }
 
   @Test
@@ -210,6 +219,7 @@ abstract class AbstractTestDefaultInvocationSerializer {
     Invocation deserialized = serdeser(invocation);
     Assertions.assertEquals(deserialized, serdeser(invocation));
     Assertions.assertEquals(invocation, deserialized);
+    Assertions.assertEquals(invocation, serdeserStream(invocation));
   }
 
   Invocation serdeser(Invocation invocation) {
@@ -219,6 +229,12 @@ abstract class AbstractTestDefaultInvocationSerializer {
     return serializer.deserializeInvocation(new StringReader(writer.toString()));
   }
 
+  Invocation serdeserStream(Invocation invocation) {
+    var out = new ByteArrayOutputStream();
+    serializer.serializeInvocation(invocation, out);
+    return serializer.deserializeInvocation(new ByteArrayInputStream(out.toByteArray()));
+  }
+
   enum ExampleCustomEnum {
     ONE,
     TWO
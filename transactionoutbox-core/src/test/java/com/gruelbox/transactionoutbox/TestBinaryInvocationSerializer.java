@@ -0,0 +1,53 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class TestBinaryInvocationSerializer extends AbstractTestDefaultInvocationSerializer {
+
+  private static final Invocation INVOCATION =
+      new Invocation(
+          "com.example.SomeService",
+          "process",
+          new Class<?>[] {
+            int.class, String.class, Instant.class, UUID.class, ExampleCustomEnum.class
+          },
+          new Object[] {42, "Hello", Instant.now(), UUID.randomUUID(), ExampleCustomEnum.ONE},
+          Map.of("requestId", "abc"));
+
+  private final BinaryInvocationSerializer binary =
+      BinaryInvocationSerializer.builder().serializableTypes(CUSTOM_TYPES).build();
+  private final DefaultInvocationSerializer json =
+      DefaultInvocationSerializer.builder().serializableTypes(CUSTOM_TYPES).build();
+
+  TestBinaryInvocationSerializer() {
+    super(BinaryInvocationSerializer.builder().serializableTypes(CUSTOM_TYPES).build());
+  }
+
+  @Test
+  void readsJson() {
+    var writer = new StringWriter();
+    json.serializeInvocation(INVOCATION, writer);
+    byte[] bytes = writer.toString().getBytes(StandardCharsets.UTF_8);
+    assertEquals(INVOCATION, binary.deserializeInvocation(new ByteArrayInputStream(bytes)));
+  }
+
+  @Test
+  void smallerThanJson() {
+    var writer = new StringWriter();
+    json.serializeInvocation(INVOCATION, writer);
+    var out = new ByteArrayOutputStream();
+    binary.serializeInvocation(INVOCATION, out);
+    assertThat(out.size(), lessThan(writer.toString().length() / 2));
+  }
+}
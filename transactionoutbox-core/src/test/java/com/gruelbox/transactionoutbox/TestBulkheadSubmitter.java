@@ -0,0 +1,95 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class TestBulkheadSubmitter {
+
+  private final List<Runnable> queued = new ArrayList<>();
+  private final List<TransactionOutboxEntry> processed = new ArrayList<>();
+
+  private final BulkheadSubmitter submitter =
+      BulkheadSubmitter.builder()
+          .executor(queued::add)
+          .limit("com.acme.Slow", 2)
+          .limit("com.acme.Slow#fast", 1)
+          .defaultLimit(3)
+          .build();
+
+  @Test
+  void limitsWorkInFlightPerLane() {
+    for (int i = 0; i < 5; i++) {
+      submitter.submit(entry("com.acme.Slow", "process"), processed::add);
+      submitter.submit(entry("com.acme.Slow", "fast"), processed::add);
+      submitter.submit(entry("com.acme.Other", "process"), processed::add);
+    }
+    assertEquals(6, queued.size());
+    assertLane("com.acme.Slow", 2, 3);
+    assertLane("com.acme.Slow#fast", 1, 4);
+    assertLane(BulkheadSubmitter.DEFAULT_LANE, 3, 2);
+
+    queued.remove(0).run();
+    assertEquals(1, processed.size());
+    assertLane("com.acme.Slow", 1, 3);
+
+    submitter.submit(entry("com.acme.Slow", "process"), processed::add);
+    assertLane("com.acme.Slow", 2, 3);
+  }
+
+  @Test
+  void splitsBatchesBetweenLanes() {
+    List<List<TransactionOutboxEntry>> batches = new ArrayList<>();
+    submitter.submitBatch(
+        List.of(
+            entry("com.acme.Slow", "process"),
+            entry("com.acme.Other", "process"),
+            entry("com.acme.Slow", "process")),
+        batches::add);
+    assertEquals(2, queued.size());
+    queued.forEach(Runnable::run);
+    assertEquals(List.of(2, 1), batches.stream().map(List::size).collect(Collectors.toList()));
+    assertLane("com.acme.Slow", 0, 0);
+    assertLane(BulkheadSubmitter.DEFAULT_LANE, 0, 0);
+  }
+
+  @Test
+  void releasesLaneWhenExecutorRejects() {
+    var rejecting =
+        BulkheadSubmitter.builder()
+            .executor(
+                command -> {
+                  throw new RejectedExecutionException();
+                })
+            .build();
+    rejecting.submit(entry("com.acme.Other", "process"), processed::add);
+    var lane = rejecting.getLanes().iterator().next();
+    assertEquals(0, lane.getActive());
+    assertEquals(1, lane.getRejected());
+  }
+
+  private void assertLane(String name, int active, long rejected) {
+    BulkheadSubmitter.Lane lane = lanes().get(name);
+    assertEquals(active, lane.getActive(), name + " active");
+    assertEquals(rejected, lane.getRejected(), name + " rejected");
+  }
+
+  private Map<String, BulkheadSubmitter.Lane> lanes() {
+    return submitter.getLanes().stream()
+        .collect(Collectors.toMap(BulkheadSubmitter.Lane::getName, Function.identity()));
+  }
+
+  private TransactionOutboxEntry entry(String className, String methodName) {
+    return TransactionOutboxEntry.builder()
+        .id(UUID.randomUUID().toString())
+        .invocation(new Invocation(className, methodName, new Class<?>[0], new Object[0]))
+        .build();
+  }
+}
@@ -0,0 +1,82 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class TestClaimSizer {
+
+  private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+  private final ClaimSizer sizer =
+      new ClaimSizer(Duration.ofSeconds(1), 2, () -> Clock.fixed(now, ZoneOffset.UTC));
+
+  @Test
+  void claimsMinimumWithoutHistory() throws Exception {
+    assertEquals(2, sizer.awaitClaimable(100));
+    assertEquals(0, sizer.awaitClaimable(0));
+  }
+
+  @Test
+  void claimsInProportionToThroughput() throws Exception {
+    var entries = entries(2);
+    assertEquals(2, sizer.awaitClaimable(100));
+    sizer.claimed(entries, now.plusSeconds(60));
+    now = now.plusMillis(100);
+    entries.forEach(sizer::finished);
+
+    // 2 in 100ms is 20 per second, so a 1 second window holds 20
+    assertEquals(20, sizer.awaitClaimable(100));
+    assertEquals(10, sizer.awaitClaimable(10));
+  }
+
+  @Test
+  void waitsForWorkInHandToFinish() throws Exception {
+    var entries = entries(2);
+    sizer.claimed(entries, now.plusSeconds(60));
+
+    long start = System.nanoTime();
+    assertEquals(0, sizer.awaitClaimable(100));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+
+    var claimable = CompletableFuture.supplyAsync(() -> uncheckedAwait(100));
+    Thread.sleep(100);
+    sizer.finished(entries.get(0));
+    assertEquals(1, claimable.get(500, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void stopsCountingWorkOnceLeaseExpires() throws Exception {
+    sizer.claimed(entries(2), now.plusSeconds(60));
+    now = now.plusSeconds(60);
+    assertEquals(2, sizer.awaitClaimable(100));
+  }
+
+  private int uncheckedAwait(int max) {
+    try {
+      return sizer.awaitClaimable(max);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private List<TransactionOutboxEntry> entries(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(
+            i ->
+                TransactionOutboxEntry.builder()
+                    .id("FOO" + i)
+                    .invocation(new Invocation("Foo", "bar", new Class<?>[0], new Object[0]))
+                    .build())
+        .collect(Collectors.toList());
+  }
+}
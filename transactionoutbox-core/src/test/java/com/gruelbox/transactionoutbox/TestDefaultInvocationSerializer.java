@@ -23,7 +23,7 @@ class TestDefaultInvocationSerializer {
   @Nested
   class NullVersion extends AbstractTestDefaultInvocationSerializer {
     public NullVersion() {
-      super(null);
+      super((Integer) null);
     }
   }
 }
@@ -0,0 +1,43 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TestExecutorSubmitter {
+
+  @Test
+  void reportsCapacityOfThreadPool() throws InterruptedException {
+    var pool = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(5));
+    var release = new CountDownLatch(1);
+    try {
+      var submitter = ExecutorSubmitter.builder().executor(pool).build();
+      assertEquals(7, submitter.availableCapacity());
+      for (int i = 0; i < 3; i++) {
+        pool.execute(
+            () -> {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+      assertEquals(4, submitter.availableCapacity());
+    } finally {
+      release.countDown();
+      pool.shutdown();
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void capacityOfOtherExecutorsIsUnknown() {
+    var submitter = ExecutorSubmitter.builder().executor(Runnable::run).build();
+    assertEquals(Integer.MAX_VALUE, submitter.availableCapacity());
+  }
+}
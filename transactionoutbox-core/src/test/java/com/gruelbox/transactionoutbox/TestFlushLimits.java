@@ -0,0 +1,106 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+class TestFlushLimits {
+
+  private final List<Integer> claims = new CopyOnWriteArrayList<>();
+
+  @Test
+  void nonShardingPersistorClaimsWholeLimit() {
+    outbox(
+            new StubPersistor() {
+              @Override
+              public List<TransactionOutboxEntry> claimBatch(
+                  Transaction tx, int batchSize, Instant now, Instant leaseExpiry) {
+                claims.add(batchSize);
+                return List.of();
+              }
+            })
+        .flush();
+    assertEquals(List.of(8), claims);
+  }
+
+  @Test
+  void shardingPersistorSplitsLimit() {
+    outbox(
+            new StubPersistor() {
+              @Override
+              public boolean supportsSharding() {
+                return true;
+              }
+
+              @Override
+              public List<TransactionOutboxEntry> claimBatch(
+                  Transaction tx,
+                  int batchSize,
+                  Instant now,
+                  Instant leaseExpiry,
+                  int shard,
+                  int shards) {
+                claims.add(batchSize);
+                return List.of();
+              }
+            })
+        .flush();
+    assertEquals(List.of(2, 2, 2, 2), claims);
+  }
+
+  @Test
+  void shardsShareWhatTopicsLeave() {
+    outbox(
+            new StubPersistor() {
+              @Override
+              public boolean supportsSharding() {
+                return true;
+              }
+
+              @Override
+              public Collection<TransactionOutboxEntry> selectNextInTopics(
+                  Transaction tx, int flushBatchSize, Instant now) {
+                return List.of(topicEntry("1"), topicEntry("2"), topicEntry("3"));
+              }
+
+              @Override
+              public List<TransactionOutboxEntry> claimBatch(
+                  Transaction tx,
+                  int batchSize,
+                  Instant now,
+                  Instant leaseExpiry,
+                  int shard,
+                  int shards) {
+                claims.add(batchSize);
+                return List.of();
+              }
+            })
+        .flush();
+    assertEquals(5, claims.stream().mapToInt(Integer::intValue).sum());
+    assertEquals(4, claims.size());
+  }
+
+  private TransactionOutbox outbox(Persistor persistor) {
+    return TransactionOutbox.builder()
+        .transactionManager(new StubThreadLocalTransactionManager())
+        .persistor(persistor)
+        .submitter((entry, localExecutor) -> {})
+        .flushBatchSize(8)
+        .flushShards(4)
+        .build();
+  }
+
+  private static TransactionOutboxEntry topicEntry(String id) {
+    return TransactionOutboxEntry.builder()
+        .id(id)
+        .topic("topic" + id)
+        .sequence(1L)
+        .invocation(new Invocation("Target", "run", new Class<?>[0], new Object[0]))
+        .nextAttemptTime(Instant.now())
+        .build();
+  }
+}
@@ -0,0 +1,143 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TestFlushScheduler {
+
+  private final AtomicInteger flushes = new AtomicInteger();
+  private final Semaphore flushed = new Semaphore(0);
+  private TransactionOutbox outbox;
+
+  @Test
+  void backsOffWhileIdle() throws Exception {
+    returnWork(0);
+    try (var scheduler =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(Duration.ofMillis(20))
+            .maxInterval(Duration.ofSeconds(10))
+            .jitter(0)
+            .build()) {
+      scheduler.start();
+      Thread.sleep(1000);
+    }
+    // 0, 20, 60, 140, 300, 620ms. A fixed 20ms interval would give 50.
+    assertTrue(flushes.get() <= 8, "Flushed " + flushes.get() + " times");
+  }
+
+  @Test
+  void flushesAgainImmediatelyWhileThereIsWork() throws Exception {
+    returnWork(5);
+    try (var scheduler =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(Duration.ofHours(1))
+            .maxInterval(Duration.ofHours(1))
+            .build()) {
+      scheduler.start();
+      assertTrue(flushed.tryAcquire(6, 5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void wakeUpFlushesImmediately() throws Exception {
+    returnWork(0);
+    try (var scheduler =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(Duration.ofHours(1))
+            .maxInterval(Duration.ofHours(1))
+            .build()) {
+      scheduler.start();
+      assertTrue(flushed.tryAcquire(1, 5, TimeUnit.SECONDS));
+      scheduler.wakeUp();
+      assertTrue(flushed.tryAcquire(1, 5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void closeLetsInProgressFlushFinish() throws Exception {
+    var release = new CountDownLatch(1);
+    var interrupted = new AtomicBoolean();
+    stubFlush(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            interrupted.set(true);
+          }
+          return true;
+        });
+    var scheduler =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(Duration.ofHours(1))
+            .maxInterval(Duration.ofHours(1))
+            .build();
+    scheduler.start();
+    assertTrue(flushed.tryAcquire(1, 5, TimeUnit.SECONDS));
+    var closed =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                scheduler.close();
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    Thread.sleep(200);
+    assertFalse(closed.isDone(), "Should wait for the flush");
+    release.countDown();
+    closed.get(5, TimeUnit.SECONDS);
+    assertFalse(interrupted.get());
+    assertEquals(1, flushes.get(), "Should not flush again once closed, despite finding work");
+    assertThrows(IllegalStateException.class, scheduler::start);
+  }
+
+  @Test
+  void invalidConfiguration() {
+    returnWork(0);
+    var scheduler =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(Duration.ofSeconds(2))
+            .maxInterval(Duration.ofSeconds(1))
+            .build();
+    assertThrows(IllegalArgumentException.class, scheduler::start);
+  }
+
+  /** Stubs {@link TransactionOutbox#flush()} to report work found the given number of times. */
+  private void returnWork(int times) {
+    stubFlush(() -> flushes.get() <= times);
+  }
+
+  private void stubFlush(Callable<Boolean> flush) {
+    outbox =
+        (TransactionOutbox)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {TransactionOutbox.class},
+                (proxy, method, args) -> {
+                  if (!method.getName().equals("flush") || args != null) {
+                    throw new UnsupportedOperationException(method.getName());
+                  }
+                  flushes.incrementAndGet();
+                  flushed.release();
+                  return flush.call();
+                });
+  }
+}
@@ -0,0 +1,72 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class TestIdleTopicDeactivation {
+
+  private final AtomicInteger checks = new AtomicInteger();
+  private final AtomicReference<Instant> now = new AtomicReference<>(Instant.now());
+  private final TransactionOutbox outbox =
+      TransactionOutbox.builder()
+          .transactionManager(new StubThreadLocalTransactionManager())
+          .persistor(
+              new StubPersistor() {
+                @Override
+                public int deactivateIdleTopics(
+                    TransactionManager transactionManager, int batchSize) {
+                  checks.incrementAndGet();
+                  return 0;
+                }
+              })
+          .instantiator(Instantiator.using(clazz -> new Target()))
+          .submitter(Submitter.withExecutor(Runnable::run))
+          .clockProvider(() -> Clock.fixed(now.get(), ZoneOffset.UTC))
+          .processBatchSize(2)
+          .build();
+
+  @Test
+  void checksOnlyAfterOrderedWork() {
+    outbox.flush();
+    assertEquals(1, checks.get(), "Should always check on the first flush");
+
+    outbox.processBatchNow(List.of(topicEntry("1"), topicEntry("2")));
+    outbox.flush();
+    assertEquals(1, checks.get(), "Checked too recently");
+
+    advance();
+    outbox.flush();
+    assertEquals(2, checks.get(), "Ordered work processed in a batch");
+
+    advance();
+    outbox.flush();
+    assertEquals(2, checks.get(), "No ordered work processed since");
+  }
+
+  private void advance() {
+    now.set(now.get().plus(Duration.ofMinutes(2)));
+  }
+
+  private TransactionOutboxEntry topicEntry(String id) {
+    return TransactionOutboxEntry.builder()
+        .id(id)
+        .topic("topic")
+        .sequence(Long.valueOf(id))
+        .invocation(new Invocation(Target.class.getName(), "run", new Class<?>[0], new Object[0]))
+        .nextAttemptTime(now.get())
+        .build();
+  }
+
+  @SuppressWarnings("unused")
+  private static class Target {
+    void run() {}
+  }
+}
@@ -0,0 +1,48 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class TestInvocationCompression {
+
+  private static final byte[] PAYLOAD =
+      "{\"c\":\"Foo\",\"m\":\"bar\",\"a\":[\"xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx\"]}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void roundTrips() throws Exception {
+    byte[] compressed = InvocationCompression.compress(PAYLOAD);
+    assertEquals(InvocationCompression.DEFLATE, compressed[0] & 0xFF);
+    assertTrue(compressed.length < PAYLOAD.length);
+    assertArrayEquals(PAYLOAD, read(compressed));
+  }
+
+  @Test
+  void passesThroughUncompressed() throws Exception {
+    assertArrayEquals(PAYLOAD, read(PAYLOAD));
+    assertArrayEquals(new byte[0], read(new byte[0]));
+  }
+
+  @Test
+  void serializesAboveThreshold() {
+    var invocation =
+        new Invocation("Foo", "bar", new Class<?>[] {String.class}, new Object[] {"x"});
+    var serializer = InvocationSerializer.createDefaultJsonSerializer();
+    var plain = SerializedInvocation.serialize(serializer, invocation, null);
+    assertTrue(plain.getText() != null && plain.getBinary() == null);
+    var compressed = SerializedInvocation.serialize(serializer, invocation, 1);
+    assertTrue(compressed.getText() == null && compressed.getBinary() != null);
+  }
+
+  private byte[] read(byte[] stored) throws Exception {
+    try (InputStream in = InvocationCompression.decompressing(new ByteArrayInputStream(stored))) {
+      return in.readAllBytes();
+    }
+  }
+}
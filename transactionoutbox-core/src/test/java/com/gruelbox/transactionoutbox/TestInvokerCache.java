@@ -0,0 +1,71 @@
+package com.gruelbox.transactionoutbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import org.junit.jupiter.api.Test;
+
+class TestInvokerCache {
+
+  @Test
+  void invokesAndCaches() throws Exception {
+    var invoker = InvokerCache.get(Target.class, "join", new Class<?>[] {String.class, int.class});
+    assertEquals("a1", invoker.invoke(new Target(), new Object[] {"a", 1}));
+    assertSame(
+        invoker, InvokerCache.get(Target.class, "join", new Class<?>[] {String.class, int.class}));
+  }
+
+  @Test
+  void wrapsExceptions() throws Exception {
+    var invoker = InvokerCache.get(Target.class, "fail", new Class<?>[0]);
+    var e =
+        assertThrows(
+            InvocationTargetException.class, () -> invoker.invoke(new Target(), new Object[0]));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+  }
+
+  @Test
+  void wrapsClassCastExceptionsFromTarget() throws Exception {
+    var invoker = InvokerCache.get(Target.class, "cast", new Class<?>[] {Object.class});
+    var e =
+        assertThrows(
+            InvocationTargetException.class, () -> invoker.invoke(new Target(), new Object[] {1}));
+    assertTrue(e.getCause() instanceof ClassCastException);
+  }
+
+  @Test
+  void rejectsMismatchedArguments() throws Exception {
+    var invoker = InvokerCache.get(Target.class, "join", new Class<?>[] {String.class, int.class});
+    assertThrows(
+        IllegalArgumentException.class, () -> invoker.invoke(new Target(), new Object[] {1, 1}));
+    assertThrows(
+        IllegalArgumentException.class, () -> invoker.invoke(new Target(), new Object[] {"a"}));
+    assertThrows(
+        IllegalArgumentException.class, () -> invoker.invoke("wrong", new Object[] {"a", 1}));
+  }
+
+  @Test
+  void missingMethod() {
+    assertThrows(
+        NoSuchMethodException.class,
+        () -> InvokerCache.get(Target.class, "join", new Class<?>[] {String.class}));
+  }
+
+  @SuppressWarnings("unused")
+  private static class Target {
+    private String join(String s, int i) {
+      return s + i;
+    }
+
+    private String cast(Object o) {
+      return (String) o;
+    }
+
+    private void fail() {
+      throw new IllegalStateException();
+    }
+  }
+}
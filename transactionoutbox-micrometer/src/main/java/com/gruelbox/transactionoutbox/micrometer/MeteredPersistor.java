@@ -0,0 +1,211 @@
+package com.gruelbox.transactionoutbox.micrometer;
+
+import com.gruelbox.transactionoutbox.Backlog;
+import com.gruelbox.transactionoutbox.OptimisticLockException;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.Validatable;
+import com.gruelbox.transactionoutbox.Validator;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Times every call to a {@link Persistor}. Every method, including those with default
+ * implementations, is passed straight to the delegate so that its own optimisations are kept.
+ */
+final class MeteredPersistor implements Persistor, Validatable {
+
+  private final Persistor delegate;
+  private final TransactionOutboxMetrics metrics;
+
+  MeteredPersistor(Persistor delegate, TransactionOutboxMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void validate(Validator validator) {
+    if (delegate instanceof Validatable) {
+      ((Validatable) delegate).validate(validator);
+    } else {
+      validator.notNull("delegate", delegate);
+    }
+  }
+
+  @Override
+  public void migrate(TransactionManager transactionManager) {
+    delegate.migrate(transactionManager);
+  }
+
+  @Override
+  public void save(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    time("save", () -> delegate.save(tx, entry));
+  }
+
+  @Override
+  public void saveBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    time("saveBatch", () -> delegate.saveBatch(tx, entries));
+  }
+
+  @Override
+  public void notifyPending(Transaction tx) throws Exception {
+    time("notifyPending", () -> delegate.notifyPending(tx));
+  }
+
+  @Override
+  public void delete(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    time("delete", () -> delegate.delete(tx, entry));
+  }
+
+  @Override
+  public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    time("update", () -> delegate.update(tx, entry));
+  }
+
+  @Override
+  public boolean lock(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+    boolean locked = time("lock", () -> delegate.lock(tx, entry));
+    if (!locked) {
+      metrics.lockLost("lock").increment();
+    }
+    return locked;
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> lockBatch(
+      Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    List<TransactionOutboxEntry> locked = time("lockBatch", () -> delegate.lockBatch(tx, entries));
+    if (locked.size() < entries.size()) {
+      metrics.lockLost("lockBatch").increment(entries.size() - locked.size());
+    }
+    return locked;
+  }
+
+  @Override
+  public void deleteBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    time("deleteBatch", () -> delegate.deleteBatch(tx, entries));
+  }
+
+  @Override
+  public void updateBatch(Transaction tx, List<TransactionOutboxEntry> entries) throws Exception {
+    time("updateBatch", () -> delegate.updateBatch(tx, entries));
+  }
+
+  @Override
+  public boolean unblock(Transaction tx, String entryId) throws Exception {
+    return time("unblock", () -> delegate.unblock(tx, entryId));
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> selectBatch(Transaction tx, int batchSize, Instant now)
+      throws Exception {
+    return time("selectBatch", () -> delegate.selectBatch(tx, batchSize, now));
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry) throws Exception {
+    return time("claimBatch", () -> delegate.claimBatch(tx, batchSize, now, leaseExpiry));
+  }
+
+  @Override
+  public boolean supportsSharding() {
+    return delegate.supportsSharding();
+  }
+
+  @Override
+  public List<TransactionOutboxEntry> claimBatch(
+      Transaction tx, int batchSize, Instant now, Instant leaseExpiry, int shard, int shards)
+      throws Exception {
+    return time(
+        "claimBatch", () -> delegate.claimBatch(tx, batchSize, now, leaseExpiry, shard, shards));
+  }
+
+  @Override
+  public Collection<TransactionOutboxEntry> selectNextInTopics(
+      Transaction tx, int batchSize, Instant now) throws Exception {
+    return time("selectNextInTopics", () -> delegate.selectNextInTopics(tx, batchSize, now));
+  }
+
+  @Override
+  public int deleteProcessedAndExpired(Transaction tx, int batchSize, Instant now)
+      throws Exception {
+    return time(
+        "deleteProcessedAndExpired", () -> delegate.deleteProcessedAndExpired(tx, batchSize, now));
+  }
+
+  @Override
+  public Backlog selectBacklog(Transaction tx) throws Exception {
+    return time("selectBacklog", () -> delegate.selectBacklog(tx));
+  }
+
+  @Override
+  public boolean checkConnection(Transaction tx) throws Exception {
+    return time("checkConnection", () -> delegate.checkConnection(tx));
+  }
+
+  @Override
+  public int deleteOutdatedInAllTopics(Transaction tx) throws Exception {
+    return time("deleteOutdatedInAllTopics", () -> delegate.deleteOutdatedInAllTopics(tx));
+  }
+
+  @Override
+  public int maintainPartitions(
+      TransactionManager transactionManager, Instant now, Duration retention) throws Exception {
+    return time(
+        "maintainPartitions",
+        () -> delegate.maintainPartitions(transactionManager, now, retention));
+  }
+
+  @Override
+  public int deactivateIdleTopics(TransactionManager transactionManager, int batchSize)
+      throws Exception {
+    return time(
+        "deactivateIdleTopics", () -> delegate.deactivateIdleTopics(transactionManager, batchSize));
+  }
+
+  @Override
+  public void clear(Transaction tx) throws Exception {
+    delegate.clear(tx);
+  }
+
+  private void time(String operation, Action action) throws Exception {
+    time(
+        operation,
+        () -> {
+          action.run();
+          return null;
+        });
+  }
+
+  private <T> T time(String operation, Call<T> call) throws Exception {
+    Timer.Sample sample = Timer.start(metrics.registry());
+    String outcome = "failure";
+    try {
+      T result = call.call();
+      outcome = "success";
+      return result;
+    } catch (OptimisticLockException e) {
+      outcome = "lockLost";
+      metrics.lockLost(operation).increment();
+      throw e;
+    } finally {
+      sample.stop(metrics.timer(operation, outcome));
+    }
+  }
+
+  @FunctionalInterface
+  private interface Action {
+    void run() throws Exception;
+  }
+
+  @FunctionalInterface
+  private interface Call<T> {
+    T call() throws Exception;
+  }
+}
@@ -0,0 +1,283 @@
+package com.gruelbox.transactionoutbox.micrometer;
+
+import com.gruelbox.transactionoutbox.Backlog;
+import com.gruelbox.transactionoutbox.BulkheadSubmitter;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.TransactionOutboxListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Micrometer instrumentation for {@link TransactionOutbox}. Wraps the components passed to {@link
+ * TransactionOutbox#builder()} so that time spent in each is recorded:
+ *
+ * <pre>TransactionOutboxMetrics metrics = TransactionOutboxMetrics.builder()
+ *     .registry(meterRegistry)
+ *     .build();
+ * Persistor persistor = metrics.instrument(Persistor.forDialect(Dialect.POSTGRESQL_9));
+ * TransactionOutbox outbox = TransactionOutbox.builder()
+ *     .transactionManager(transactionManager)
+ *     .persistor(persistor)
+ *     .submitter(Submitter.withExecutor(metrics.instrument(executor)))
+ *     .listener(metrics.listener())
+ *     .build();
+ * metrics.bindBacklog(transactionManager, persistor);</pre>
+ *
+ * <p>Records the following meters, all prefixed with {@link #prefix}:
+ *
+ * <ul>
+ *   <li>{@code .persistor} (timer, tagged with {@code operation} and {@code outcome}): every call
+ *       to the {@link Persistor}, which covers saving on schedule, locking, and each query made by
+ *       {@link TransactionOutbox#flush()}.
+ *   <li>{@code .lock.lost} (counter, tagged with {@code operation}): entries which another instance
+ *       got to first, either because they were already locked or because they failed the optimistic
+ *       lock check.
+ *   <li>{@code .submitter.rejected} (counter): work rejected by a saturated executor, which will be
+ *       picked up again by {@link TransactionOutbox#flush()}.
+ *   <li>{@code .invocation} (timer, tagged with {@code class}, {@code method} and {@code outcome}):
+ *       the duration of each invocation.
+ *   <li>{@code .entries} (counter, tagged with {@code event}): entries scheduled, succeeded, failed
+ *       and blocked.
+ *   <li>{@code .backlog.size} and {@code .backlog.oldest.age} (gauges): the number of unprocessed,
+ *       unblocked entries and how long ago the earliest of them became due.
+ *   <li>{@code .bulkhead.active} (gauge) and {@code .bulkhead.rejected} (counter), both tagged with
+ *       {@code lane}: work in flight and work turned away in each lane of a {@link
+ *       BulkheadSubmitter}, if bound with {@link #bindBulkhead(BulkheadSubmitter)}.
+ * </ul>
+ */
+@Slf4j
+@Builder
+public class TransactionOutboxMetrics {
+
+  /**
+   * @param registry The registry to which meters are added. Required.
+   */
+  @SuppressWarnings("JavaDoc")
+  private final MeterRegistry registry;
+
+  /**
+   * @param prefix The prefix for all meter names. Defaults to {@code txno}.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final String prefix = "txno";
+
+  /**
+   * @param tags Tags added to every meter, for example to distinguish several outboxes in the same
+   *     application.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Iterable<Tag> tags = Tags.empty();
+
+  /**
+   * @param backlogRefreshInterval The minimum time between queries for the backlog gauges. The
+   *     query scans the outbox table, so this should not be too short. Defaults to 30 seconds.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Duration backlogRefreshInterval = Duration.ofSeconds(30);
+
+  /**
+   * @param clock The clock used to calculate the age of the backlog. Defaults to the system clock.
+   */
+  @SuppressWarnings("JavaDoc")
+  @Builder.Default
+  private final Clock clock = Clock.systemUTC();
+
+  /**
+   * Wraps a {@link Persistor} so that calls to it are timed.
+   *
+   * @param persistor The persistor.
+   * @return The instrumented persistor.
+   */
+  public Persistor instrument(Persistor persistor) {
+    return new MeteredPersistor(persistor, this);
+  }
+
+  /**
+   * Wraps an {@link Executor}, such as that passed to {@link
+   * com.gruelbox.transactionoutbox.Submitter#withExecutor(Executor)}, so that rejected work is
+   * counted.
+   *
+   * @param executor The executor.
+   * @return The instrumented executor.
+   */
+  public Executor instrument(Executor executor) {
+    Counter rejected = counter("submitter.rejected");
+    return command -> {
+      try {
+        executor.execute(command);
+      } catch (RejectedExecutionException e) {
+        rejected.increment();
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Creates a listener which times invocations and counts entry lifecycle events. Use {@link
+   * TransactionOutboxListener#andThen(TransactionOutboxListener)} to combine with your own.
+   *
+   * @return The listener.
+   */
+  public TransactionOutboxListener listener() {
+    Counter scheduled = registry.counter(name("entries"), Tags.of(tags).and("event", "scheduled"));
+    Counter success = registry.counter(name("entries"), Tags.of(tags).and("event", "success"));
+    Counter failure = registry.counter(name("entries"), Tags.of(tags).and("event", "failure"));
+    Counter blocked = registry.counter(name("entries"), Tags.of(tags).and("event", "blocked"));
+    return new TransactionOutboxListener() {
+      @Override
+      public void scheduled(TransactionOutboxEntry entry) {
+        scheduled.increment();
+      }
+
+      @Override
+      public Object wrapInvocation(TransactionOutboxEntry entry, Invocator invocator)
+          throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "failure";
+        try {
+          Object result = invocator.invoke();
+          outcome = "success";
+          return result;
+        } finally {
+          sample.stop(
+              registry.timer(
+                  name("invocation"),
+                  Tags.of(tags)
+                      .and("class", entry.getInvocation().getClassName())
+                      .and("method", entry.getInvocation().getMethodName())
+                      .and("outcome", outcome)));
+        }
+      }
+
+      @Override
+      public void success(TransactionOutboxEntry entry, Object result) {
+        success.increment();
+      }
+
+      @Override
+      public void failure(TransactionOutboxEntry entry, Throwable cause) {
+        failure.increment();
+      }
+
+      @Override
+      public void blocked(TransactionOutboxEntry entry, Throwable cause) {
+        blocked.increment();
+      }
+    };
+  }
+
+  /**
+   * Registers gauges for the size and age of the backlog, using {@link
+   * Persistor#selectBacklog(com.gruelbox.transactionoutbox.Transaction)}. The query is run when the
+   * gauges are read, at most once every {@link #backlogRefreshInterval}.
+   *
+   * @param transactionManager The transaction manager.
+   * @param persistor The persistor.
+   */
+  public void bindBacklog(TransactionManager transactionManager, Persistor persistor) {
+    var cache = new BacklogCache(transactionManager, persistor);
+    Gauge.builder(name("backlog.size"), cache, c -> c.get().getSize())
+        .tags(tags)
+        .description("Unprocessed, unblocked entries")
+        .register(registry);
+    TimeGauge.builder(
+            name("backlog.oldest.age"),
+            cache,
+            TimeUnit.MILLISECONDS,
+            c -> {
+              Instant oldest = c.get().getOldestNextAttemptTime();
+              return oldest == null
+                  ? 0
+                  : Math.max(0, Duration.between(oldest, clock.instant()).toMillis());
+            })
+        .tags(tags)
+        .description("Time since the earliest unprocessed, unblocked entry became due")
+        .register(registry);
+  }
+
+  /**
+   * Registers meters for the work in flight in, and rejected by, each lane of a {@link
+   * BulkheadSubmitter}.
+   *
+   * @param submitter The submitter.
+   */
+  public void bindBulkhead(BulkheadSubmitter submitter) {
+    for (BulkheadSubmitter.Lane lane : submitter.getLanes()) {
+      Gauge.builder(name("bulkhead.active"), lane, BulkheadSubmitter.Lane::getActive)
+          .tags(Tags.of(tags).and("lane", lane.getName()))
+          .description("Work submitted to the executor and not yet finished")
+          .register(registry);
+      FunctionCounter.builder(name("bulkhead.rejected"), lane, BulkheadSubmitter.Lane::getRejected)
+          .tags(Tags.of(tags).and("lane", lane.getName()))
+          .description("Work left for a later flush because the lane or executor was full")
+          .register(registry);
+    }
+  }
+
+  String name(String suffix) {
+    return prefix + "." + suffix;
+  }
+
+  Timer timer(String operation, String outcome) {
+    return registry.timer(
+        name("persistor"), Tags.of(tags).and("operation", operation).and("outcome", outcome));
+  }
+
+  Counter lockLost(String operation) {
+    return registry.counter(name("lock.lost"), Tags.of(tags).and("operation", operation));
+  }
+
+  MeterRegistry registry() {
+    return registry;
+  }
+
+  private Counter counter(String suffix) {
+    return registry.counter(name(suffix), tags);
+  }
+
+  private final class BacklogCache {
+    private final TransactionManager transactionManager;
+    private final Persistor persistor;
+    private Backlog value = new Backlog(0, null);
+    private Instant refreshed = Instant.MIN;
+
+    BacklogCache(TransactionManager transactionManager, Persistor persistor) {
+      this.transactionManager = transactionManager;
+      this.persistor = persistor;
+    }
+
+    synchronized Backlog get() {
+      Instant now = clock.instant();
+      if (refreshed.plus(backlogRefreshInterval).isBefore(now)) {
+        refreshed = now;
+        try {
+          value = transactionManager.inTransactionReturnsThrows(persistor::selectBacklog);
+        } catch (Exception e) {
+          log.warn("Failed to query outbox backlog", e);
+        }
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.gruelbox.transactionoutbox.micrometer;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gruelbox.transactionoutbox.BulkheadSubmitter;
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.testing.BaseTest;
+import com.gruelbox.transactionoutbox.testing.InterfaceProcessor;
+import com.gruelbox.transactionoutbox.testing.LatchListener;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+
+class TestTransactionOutboxMetrics extends BaseTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final TransactionOutboxMetrics metrics =
+      TransactionOutboxMetrics.builder()
+          .registry(registry)
+          .backlogRefreshInterval(Duration.ZERO)
+          .build();
+
+  @Test
+  void recordsPersistorCallsAndInvocations() throws Exception {
+    var latch = new CountDownLatch(1);
+    var transactionManager = txManager();
+    Persistor persistor = metrics.instrument(persistor());
+    var outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor)
+            .instantiator(Instantiator.using(clazz -> (InterfaceProcessor) (foo, bar) -> {}))
+            .listener(metrics.listener().andThen(new LatchListener(latch)))
+            .build();
+    clearOutbox();
+    metrics.bindBacklog(transactionManager, persistor);
+
+    transactionManager.inTransaction(
+        () ->
+            outbox
+                .with()
+                .delayForAtLeast(Duration.ofDays(1))
+                .schedule(InterfaceProcessor.class)
+                .process(1, "a"));
+    assertThat(registry.get("txno.backlog.size").gauge().value(), equalTo(1.0));
+    assertThat(registry.get("txno.backlog.oldest.age").timeGauge().value(), equalTo(0.0));
+
+    transactionManager.inTransaction(
+        () -> outbox.schedule(InterfaceProcessor.class).process(2, "b"));
+    assertTrue(latch.await(10, SECONDS));
+    outbox.flush();
+
+    assertThat(timerCount("persistor", "operation", "save"), equalTo(2L));
+    assertThat(timerCount("persistor", "operation", "lock"), equalTo(1L));
+    assertThat(timerCount("persistor", "operation", "delete"), equalTo(1L));
+    assertThat(timerCount("persistor", "operation", "claimBatch"), greaterThanOrEqualTo(1L));
+    assertThat(
+        timerCount("persistor", "operation", "selectNextInTopics"), greaterThanOrEqualTo(1L));
+    assertThat(timerCount("invocation", "method", "process"), equalTo(1L));
+    assertThat(
+        registry.get("txno.entries").tag("event", "scheduled").counter().count(), equalTo(2.0));
+    assertThat(
+        registry.get("txno.entries").tag("event", "success").counter().count(), equalTo(1.0));
+  }
+
+  @Test
+  void countsRejectedSubmissions() {
+    var executor =
+        metrics.instrument(
+            command -> {
+              throw new RejectedExecutionException();
+            });
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    assertThat(registry.get("txno.submitter.rejected").counter().count(), equalTo(1.0));
+  }
+
+  @Test
+  void recordsBulkheadLanes() {
+    var submitter =
+        BulkheadSubmitter.builder()
+            .executor(command -> {})
+            .limit(InterfaceProcessor.class.getName(), 1)
+            .build();
+    metrics.bindBulkhead(submitter);
+    for (int i = 0; i < 3; i++) {
+      submitter.submit(
+          TransactionOutboxEntry.builder()
+              .id("FOO" + i)
+              .invocation(
+                  new Invocation(
+                      InterfaceProcessor.class.getName(),
+                      "process",
+                      new Class<?>[0],
+                      new Object[0]))
+              .build(),
+          entry -> {});
+    }
+    var lane = InterfaceProcessor.class.getName();
+    assertThat(
+        registry.get("txno.bulkhead.active").tag("lane", lane).gauge().value(), equalTo(1.0));
+    assertThat(
+        registry.get("txno.bulkhead.rejected").tag("lane", lane).functionCounter().count(),
+        equalTo(2.0));
+    assertThat(
+        registry.get("txno.bulkhead.active").tag("lane", "default").gauge().value(), equalTo(0.0));
+  }
+
+  @Test
+  void validatesInstrumentedPersistor() {
+    var e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                TransactionOutbox.builder()
+                    .transactionManager(txManager())
+                    .persistor(
+                        metrics.instrument(
+                            DefaultPersistor.builder()
+                                .dialect(Dialect.H2)
+                                .insertBatchSize(0)
+                                .build()))
+                    .initializeImmediately(false)
+                    .build());
+    assertThat(e.getMessage(), containsString("insertBatchSize"));
+  }
+
+  private long timerCount(String name, String tag, String value) {
+    return registry.get("txno." + name).tag(tag, value).timers().stream()
+        .mapToLong(t -> t.count())
+        .sum();
+  }
+}
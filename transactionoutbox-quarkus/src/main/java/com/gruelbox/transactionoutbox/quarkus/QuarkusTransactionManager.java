@@ -17,6 +17,7 @@ import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.function.Supplier;
 import javax.sql.DataSource;
 
 /** Transaction manager which uses cdi and quarkus. */
@@ -104,6 +105,28 @@ public class QuarkusTransactionManager implements ThreadLocalContextTransactionM
       return preparedStatement;
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Runnable> T addPreCommitHook(Object key, Supplier<T> hook) {
+      T existing = (T) tsr.getResource(key);
+      if (existing != null) {
+        return existing;
+      }
+      T created = hook.get();
+      tsr.putResource(key, created);
+      tsr.registerInterposedSynchronization(
+          new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+              created.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {}
+          });
+      return created;
+    }
+
     @Override
     public void addPostCommitHook(Runnable runnable) {
       tsr.registerInterposedSynchronization(
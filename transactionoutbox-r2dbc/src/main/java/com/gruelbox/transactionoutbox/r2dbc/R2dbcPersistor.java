@@ -0,0 +1,375 @@
+package com.gruelbox.transactionoutbox.r2dbc;
+
+import static com.gruelbox.transactionoutbox.r2dbc.R2dbcTransactionManager.stage;
+
+import com.gruelbox.transactionoutbox.AlreadyScheduledException;
+import com.gruelbox.transactionoutbox.AsyncPersistor;
+import com.gruelbox.transactionoutbox.AsyncTransaction;
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.OptimisticLockException;
+import com.gruelbox.transactionoutbox.PgSeqDialect;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntFunction;
+import java.util.zip.InflaterInputStream;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * An {@link AsyncPersistor} using R2DBC, which reads and writes the same table as {@link
+ * DefaultPersistor} using the SQL from the same {@link Dialect}, so the two can be used side by
+ * side. Must be used with {@link R2dbcTransactionManager}, or another {@link
+ * com.gruelbox.transactionoutbox.AsyncTransactionManager} whose transaction context is an R2DBC
+ * {@link Connection}.
+ *
+ * <p>Does not create or migrate the schema. Run {@link DefaultPersistor} migrations over JDBC
+ * first, e.g. at deployment, or apply the output of {@link
+ * DefaultPersistor#writeSchema(java.io.Writer)} with another migration tool. Timestamps are read
+ * and written in the system time zone, as with JDBC.
+ *
+ * <p>Only unordered work is supported, and features of {@link DefaultPersistor} beyond the core
+ * outbox table, such as archiving processed records, partitioning and compression on write, are
+ * not. Compressed invocations written by {@link DefaultPersistor} can be read.
+ */
+@Slf4j
+public final class R2dbcPersistor implements AsyncPersistor {
+
+  private static final String ALL_FIELDS =
+      "id, uniqueRequestId, invocation, invocationBinary, topic, seq, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version, orderedTakeLast, priority";
+
+  // Matches DefaultPersistor, so that work saved here is claimed by sharded flushes there
+  private static final int SHARD_SLOTS = 1024;
+
+  // Marks a compressed invocation written by DefaultPersistor
+  private static final byte DEFLATE = (byte) 0xDF;
+
+  private final Dialect dialect;
+  private final String tableName;
+  private final InvocationSerializer serializer;
+  private final IntFunction<String> bindMarker;
+
+  /**
+   * @param dialect The database dialect. Required.
+   * @param tableName The database table name. Defaults to {@code TXNO_OUTBOX}.
+   * @param serializer The serializer to use for {@link Invocation}s. Defaults to the same as {@link
+   *     DefaultPersistor}.
+   * @param bindMarker Creates the driver's bind marker for the parameter with the given zero-based
+   *     index. Defaults to {@code $1}, {@code $2}... for H2 and PostgreSQL, {@code ?} for MySQL and
+   *     Oracle and {@code @P0}, {@code @P1}... for SQL Server. Required for any other dialect.
+   */
+  @Builder
+  R2dbcPersistor(
+      Dialect dialect,
+      String tableName,
+      InvocationSerializer serializer,
+      IntFunction<String> bindMarker) {
+    if (dialect == null) {
+      throw new IllegalArgumentException("dialect may not be null");
+    }
+    this.dialect = dialect;
+    this.tableName = tableName == null ? "TXNO_OUTBOX" : tableName;
+    this.serializer =
+        serializer == null ? InvocationSerializer.createDefaultJsonSerializer() : serializer;
+    this.bindMarker = bindMarker == null ? defaultBindMarker(dialect) : bindMarker;
+  }
+
+  private static IntFunction<String> defaultBindMarker(Dialect dialect) {
+    if (dialect == Dialect.H2
+        || dialect == Dialect.POSTGRESQL_9
+        || dialect == Dialect.POSTGRESQL_PARTITIONED
+        || dialect == PgSeqDialect.POSTGRESQL_SEQ) {
+      return index -> "$" + (index + 1);
+    }
+    if (dialect == Dialect.MY_SQL_5 || dialect == Dialect.MY_SQL_8 || dialect == Dialect.ORACLE) {
+      return index -> "?";
+    }
+    if (dialect == Dialect.MS_SQL_SERVER) {
+      return index -> "@P" + index;
+    }
+    throw new IllegalArgumentException(
+        "bindMarker must be specified for dialect " + dialect + ", which has no known default");
+  }
+
+  @Override
+  public CompletionStage<Void> save(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    Statement stmt =
+        statement(
+            tx,
+            "INSERT INTO "
+                + tableName
+                + " ("
+                + ALL_FIELDS
+                + ", shard) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    int pos = 0;
+    bind(stmt, pos++, entry.getId(), String.class);
+    bind(stmt, pos++, entry.getUniqueRequestId(), String.class);
+    if (serializer.isBinary()) {
+      var out = new ByteArrayOutputStream();
+      serializer.serializeInvocation(entry.getInvocation(), out);
+      bind(stmt, pos++, null, String.class);
+      bind(stmt, pos++, ByteBuffer.wrap(out.toByteArray()), ByteBuffer.class);
+    } else {
+      var out = new StringWriter();
+      serializer.serializeInvocation(entry.getInvocation(), out);
+      bind(stmt, pos++, out.toString(), String.class);
+      bind(stmt, pos++, null, ByteBuffer.class);
+    }
+    bind(stmt, pos++, "*", String.class);
+    bind(stmt, pos++, null, Long.class);
+    bind(stmt, pos++, toDateTime(entry.getLastAttemptTime()), LocalDateTime.class);
+    bind(stmt, pos++, toDateTime(entry.getNextAttemptTime()), LocalDateTime.class);
+    bind(stmt, pos++, entry.getAttempts(), Integer.class);
+    bind(stmt, pos++, entry.isBlocked(), Boolean.class);
+    bind(stmt, pos++, entry.isProcessed(), Boolean.class);
+    bind(stmt, pos++, entry.getVersion(), Integer.class);
+    bind(stmt, pos++, false, Boolean.class);
+    bind(stmt, pos++, entry.getPriority(), Integer.class);
+    bind(stmt, pos, Math.floorMod(entry.getId().hashCode(), SHARD_SLOTS), Integer.class);
+    return stage(
+        rowsUpdated(stmt)
+            .onErrorMap(
+                R2dbcDataIntegrityViolationException.class,
+                e ->
+                    new AlreadyScheduledException(
+                        "Request " + entry.description() + " already exists", e))
+            .doOnSuccess(__ -> log.debug("Inserted {} immediately", entry.description()))
+            .then());
+  }
+
+  @Override
+  public CompletionStage<Void> delete(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    Statement stmt = statement(tx, dialect.getDelete().replace("{{table}}", tableName));
+    bind(stmt, 0, entry.getId(), String.class);
+    bind(stmt, 1, entry.getVersion(), Integer.class);
+    return stage(
+        rowsUpdated(stmt)
+            .flatMap(
+                count ->
+                    count == 1
+                        ? Mono.<Void>empty()
+                        : Mono.<Void>error(new OptimisticLockException()))
+            .doOnSuccess(__ -> log.debug("Deleted {}", entry.description())));
+  }
+
+  @Override
+  public CompletionStage<Void> update(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    Statement stmt =
+        statement(
+            tx,
+            "UPDATE "
+                + tableName
+                + " SET lastAttemptTime = ?, nextAttemptTime = ?, attempts = ?, blocked = ?, processed = ?, version = ? "
+                + "WHERE id = ? and version = ?");
+    bind(stmt, 0, toDateTime(entry.getLastAttemptTime()), LocalDateTime.class);
+    bind(stmt, 1, toDateTime(entry.getNextAttemptTime()), LocalDateTime.class);
+    bind(stmt, 2, entry.getAttempts(), Integer.class);
+    bind(stmt, 3, entry.isBlocked(), Boolean.class);
+    bind(stmt, 4, entry.isProcessed(), Boolean.class);
+    bind(stmt, 5, entry.getVersion() + 1, Integer.class);
+    bind(stmt, 6, entry.getId(), String.class);
+    bind(stmt, 7, entry.getVersion(), Integer.class);
+    return stage(
+        rowsUpdated(stmt)
+            .flatMap(
+                count -> {
+                  if (count != 1) {
+                    return Mono.<Void>error(new OptimisticLockException());
+                  }
+                  entry.setVersion(entry.getVersion() + 1);
+                  log.debug("Updated {}", entry.description());
+                  return Mono.<Void>empty();
+                }));
+  }
+
+  @Override
+  public CompletionStage<Boolean> lock(AsyncTransaction tx, TransactionOutboxEntry entry) {
+    Statement stmt =
+        statement(
+            tx,
+            dialect.getLock().replace("{{table}}", tableName).replace("{{allFields}}", ALL_FIELDS));
+    bind(stmt, 0, entry.getId(), String.class);
+    bind(stmt, 1, entry.getVersion(), Integer.class);
+    return stage(
+        Flux.from(stmt.execute())
+            .flatMap(result -> result.map((row, metadata) -> readInvocation(row)))
+            .next()
+            .map(
+                invocation -> {
+                  // Ensure that subsequent processing uses a deserialized invocation rather than
+                  // the object from the caller, as with DefaultPersistor
+                  entry.setInvocation(invocation);
+                  return true;
+                })
+            .defaultIfEmpty(false)
+            .onErrorResume(
+                R2dbcTimeoutException.class,
+                e -> {
+                  log.debug("Lock attempt timed out on {}", entry.description());
+                  return Mono.just(false);
+                }));
+  }
+
+  @Override
+  public CompletionStage<Boolean> unblock(AsyncTransaction tx, String entryId) {
+    Statement stmt =
+        statement(
+            tx,
+            "UPDATE "
+                + tableName
+                + " SET attempts = 0, blocked = "
+                + dialect.booleanValue(false)
+                + " WHERE blocked = "
+                + dialect.booleanValue(true)
+                + " AND processed = "
+                + dialect.booleanValue(false)
+                + " AND id = ?");
+    bind(stmt, 0, entryId, String.class);
+    return stage(rowsUpdated(stmt).map(count -> count != 0));
+  }
+
+  @Override
+  public CompletionStage<List<TransactionOutboxEntry>> selectBatch(
+      AsyncTransaction tx, int batchSize, Instant now) {
+    Statement stmt =
+        statement(
+            tx,
+            dialect
+                .getSelectBatch()
+                .replace("{{table}}", tableName)
+                .replace("{{batchSize}}", Integer.toString(batchSize))
+                .replace("{{allFields}}", ALL_FIELDS)
+                .replace("{{shard}}", ""));
+    bind(stmt, 0, toDateTime(now), LocalDateTime.class);
+    return stage(
+        Flux.from(stmt.execute())
+            .flatMap(result -> result.map((row, metadata) -> map(row)))
+            .collectList());
+  }
+
+  @Override
+  public CompletionStage<Integer> deleteProcessedAndExpired(
+      AsyncTransaction tx, int batchSize, Instant now) {
+    Statement stmt =
+        statement(
+            tx,
+            dialect
+                .getDeleteExpired()
+                .replace("{{table}}", tableName)
+                .replace("{{batchSize}}", Integer.toString(batchSize)));
+    bind(stmt, 0, toDateTime(now), LocalDateTime.class);
+    return stage(rowsUpdated(stmt).map(Long::intValue));
+  }
+
+  // For testing. Assumed low volume.
+  @Override
+  public CompletionStage<Void> clear(AsyncTransaction tx) {
+    return stage(rowsUpdated(statement(tx, "DELETE FROM " + tableName)).then());
+  }
+
+  private Statement statement(AsyncTransaction tx, String sql) {
+    Connection connection = tx.context();
+    return connection.createStatement(withBindMarkers(sql));
+  }
+
+  /** Replaces the JDBC-style {@code ?} placeholders used by {@link Dialect} with bind markers. */
+  private String withBindMarkers(String sql) {
+    var result = new StringBuilder(sql.length() + 16);
+    int index = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (c == '?') {
+        result.append(bindMarker.apply(index++));
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  private static void bind(Statement stmt, int index, Object value, Class<?> type) {
+    if (value == null) {
+      stmt.bindNull(index, type);
+    } else {
+      stmt.bind(index, value);
+    }
+  }
+
+  private static Mono<Long> rowsUpdated(Statement stmt) {
+    return Flux.from(stmt.execute()).flatMap(Result::getRowsUpdated).reduce(0L, Long::sum);
+  }
+
+  private TransactionOutboxEntry map(Row row) {
+    String topic = row.get("topic", String.class);
+    TransactionOutboxEntry entry =
+        TransactionOutboxEntry.builder()
+            .invocation(readInvocation(row))
+            .id(row.get("id", String.class))
+            .uniqueRequestId(row.get("uniqueRequestId", String.class))
+            .topic("*".equals(topic) ? null : topic)
+            .sequence(row.get("seq", Long.class))
+            .lastAttemptTime(toInstant(row.get("lastAttemptTime", LocalDateTime.class)))
+            .nextAttemptTime(toInstant(row.get("nextAttemptTime", LocalDateTime.class)))
+            .attempts(row.get("attempts", Integer.class))
+            .blocked(row.get("blocked", Boolean.class))
+            .processed(row.get("processed", Boolean.class))
+            .version(row.get("version", Integer.class))
+            .orderedTakeLast(row.get("orderedTakeLast", Boolean.class))
+            .priority(row.get("priority", Integer.class))
+            .build();
+    log.debug("Found {}", entry);
+    return entry;
+  }
+
+  /**
+   * Reads whichever of the text or binary invocation columns is populated, as for {@link
+   * DefaultPersistor}.
+   */
+  private Invocation readInvocation(Row row) {
+    String text = row.get("invocation", String.class);
+    if (text != null) {
+      return serializer.deserializeInvocation(new StringReader(text));
+    }
+    ByteBuffer buffer = row.get("invocationBinary", ByteBuffer.class);
+    if (buffer == null) {
+      return null;
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    InputStream in;
+    if (bytes.length > 0 && bytes[0] == DEFLATE) {
+      in = new InflaterInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+    } else {
+      in = new ByteArrayInputStream(bytes);
+    }
+    return serializer.deserializeInvocation(in);
+  }
+
+  private static LocalDateTime toDateTime(Instant instant) {
+    return instant == null ? null : LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+  }
+
+  private static Instant toInstant(LocalDateTime dateTime) {
+    return dateTime == null ? null : dateTime.atZone(ZoneId.systemDefault()).toInstant();
+  }
+}
@@ -0,0 +1,55 @@
+package com.gruelbox.transactionoutbox.r2dbc;
+
+import com.gruelbox.transactionoutbox.AsyncTransaction;
+import io.r2dbc.spi.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A transaction on an R2DBC {@link Connection}, managed by {@link R2dbcTransactionManager}. The
+ * connection is also available as the transaction {@link #context()}.
+ */
+@Slf4j
+public final class R2dbcTransaction implements AsyncTransaction {
+
+  private final List<Runnable> postCommitHooks = new ArrayList<>();
+  private final Connection connection;
+
+  R2dbcTransaction(Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * @return The connection for the transaction.
+   */
+  public Connection connection() {
+    return connection;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T context() {
+    return (T) connection;
+  }
+
+  @Override
+  public synchronized void addPostCommitHook(Runnable runnable) {
+    postCommitHooks.add(runnable);
+  }
+
+  synchronized void processHooks() {
+    if (postCommitHooks.isEmpty()) {
+      return;
+    }
+    log.debug("{} post-commit hooks to process", postCommitHooks.size());
+    for (Runnable hook : postCommitHooks) {
+      try {
+        hook.run();
+      } catch (Exception e) {
+        // The transaction has committed, so report that to the caller regardless
+        log.error("Post-commit hook failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.gruelbox.transactionoutbox.r2dbc;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+
+import com.gruelbox.transactionoutbox.AsyncTransaction;
+import com.gruelbox.transactionoutbox.AsyncTransactionManager;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * An {@link AsyncTransactionManager} which takes a new connection from an R2DBC {@link
+ * ConnectionFactory} for each transaction, e.g. from an {@code r2dbc-pool} {@code ConnectionPool}:
+ *
+ * <pre>R2dbcTransactionManager transactionManager = R2dbcTransactionManager.create(connectionPool);
+ * AsyncTransactionOutbox outbox = AsyncTransactionOutbox.builder()
+ *     .transactionManager(transactionManager)
+ *     .persistor(R2dbcPersistor.builder().dialect(Dialect.POSTGRESQL_9).build())
+ *     .build();</pre>
+ *
+ * <p>Transactions are solely controlled through {@link #transactionally(Function)}, so this is
+ * suitable for applications which manage their R2DBC transactions themselves. Applications using
+ * another framework's reactive transactions, such as Spring's, should implement {@link
+ * AsyncTransactionManager} over that instead.
+ */
+@Slf4j
+public final class R2dbcTransactionManager implements AsyncTransactionManager {
+
+  private final ConnectionFactory connectionFactory;
+
+  private R2dbcTransactionManager(ConnectionFactory connectionFactory) {
+    this.connectionFactory = connectionFactory;
+  }
+
+  /**
+   * Creates a transaction manager.
+   *
+   * @param connectionFactory The connection factory, which should generally be pooled.
+   * @return The transaction manager.
+   */
+  public static R2dbcTransactionManager create(ConnectionFactory connectionFactory) {
+    return new R2dbcTransactionManager(connectionFactory);
+  }
+
+  @Override
+  public <T> CompletionStage<T> transactionally(
+      Function<AsyncTransaction, CompletionStage<T>> work) {
+    return stage(connectionFactory.create())
+        .thenCompose(
+            connection -> {
+              R2dbcTransaction tx = new R2dbcTransaction(connection);
+              return stage(connection.beginTransaction())
+                  .thenCompose(__ -> work.apply(tx))
+                  .thenCompose(
+                      result -> stage(connection.commitTransaction()).thenApply(__ -> result))
+                  .handle((result, error) -> finish(tx, result, unwrap(error)))
+                  .thenCompose(Function.identity());
+            });
+  }
+
+  private <T> CompletionStage<T> finish(R2dbcTransaction tx, T result, Throwable error) {
+    Connection connection = tx.connection();
+    CompletionStage<Void> closed =
+        (error == null ? completedFuture((Void) null) : rollback(connection))
+            .thenCompose(__ -> stage(connection.close()))
+            .exceptionally(
+                e -> {
+                  log.warn("Failed to close connection", e);
+                  return null;
+                });
+    return closed.thenCompose(
+        __ -> {
+          if (error != null) {
+            return failedFuture(error);
+          }
+          // Run once the connection is released, since hooks will generally need another
+          tx.processHooks();
+          return completedFuture(result);
+        });
+  }
+
+  private CompletionStage<Void> rollback(Connection connection) {
+    return stage(connection.rollbackTransaction())
+        .exceptionally(
+            e -> {
+              log.warn("Failed to roll back transaction", e);
+              return null;
+            });
+  }
+
+  static <T> CompletionStage<T> stage(Publisher<T> publisher) {
+    return Mono.from(publisher).toFuture();
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+}
@@ -0,0 +1,284 @@
+package com.gruelbox.transactionoutbox.r2dbc;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gruelbox.transactionoutbox.AlreadyScheduledException;
+import com.gruelbox.transactionoutbox.AsyncTransaction;
+import com.gruelbox.transactionoutbox.AsyncTransactionOutbox;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.TransactionOutboxListener;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.h2.H2ConnectionOption;
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestR2dbc {
+
+  private static final R2dbcTransactionManager transactionManager =
+      R2dbcTransactionManager.create(
+          new H2ConnectionFactory(
+              H2ConnectionConfiguration.builder()
+                  .inMemory("r2dbc")
+                  .property(H2ConnectionOption.DB_CLOSE_DELAY, "-1")
+                  .username("sa")
+                  .build()));
+  private static final R2dbcPersistor persistor =
+      R2dbcPersistor.builder().dialect(Dialect.H2).build();
+
+  private final AtomicReference<Clock> clock = new AtomicReference<>(Clock.systemDefaultZone());
+  private final List<String> processed = new CopyOnWriteArrayList<>();
+  private final AtomicReference<CompletableFuture<TransactionOutboxEntry>> succeeded =
+      new AtomicReference<>(new CompletableFuture<>());
+  private final AtomicReference<CompletableFuture<TransactionOutboxEntry>> failed =
+      new AtomicReference<>(new CompletableFuture<>());
+  private final CompletableFuture<TransactionOutboxEntry> blocked = new CompletableFuture<>();
+
+  private final AsyncTransactionOutbox outbox =
+      AsyncTransactionOutbox.builder()
+          .transactionManager(transactionManager)
+          .persistor(persistor)
+          .instantiator(Instantiator.using(clazz -> new TargetImpl()))
+          .attemptFrequency(Duration.ofMinutes(1))
+          .blockAfterAttempts(2)
+          .clockProvider(clock::get)
+          .listener(
+              new TransactionOutboxListener() {
+                @Override
+                public void success(TransactionOutboxEntry entry, Object result) {
+                  succeeded.get().complete(entry);
+                }
+
+                @Override
+                public void failure(TransactionOutboxEntry entry, Throwable cause) {
+                  failed.get().complete(entry);
+                }
+
+                @Override
+                public void blocked(TransactionOutboxEntry entry, Throwable cause) {
+                  blocked.complete(entry);
+                }
+              })
+          .build();
+
+  @BeforeAll
+  static void migrate() {
+    // Schema is managed over JDBC
+    Persistor.forDialect(Dialect.H2)
+        .migrate(
+            TransactionManager.fromConnectionDetails(
+                "org.h2.Driver", "jdbc:h2:mem:r2dbc;DB_CLOSE_DELAY=-1", "sa", ""));
+  }
+
+  @BeforeEach
+  void clear() throws Exception {
+    await(transactionManager.transactionally(persistor::clear));
+  }
+
+  @Test
+  void processesAfterCommit() throws Exception {
+    await(
+        transactionManager.transactionally(
+            tx -> outbox.schedule(tx, Target.class, t -> t.process("foo", null))));
+    await(succeeded.get());
+    assertEquals(List.of("foo"), processed);
+    assertFalse(await(outbox.flush()));
+  }
+
+  @Test
+  void discardsOnRollback() throws Exception {
+    var e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                await(
+                    transactionManager.transactionally(
+                        tx ->
+                            outbox
+                                .schedule(tx, Target.class, t -> t.process("foo", null))
+                                .thenCompose(
+                                    __ -> failedFuture(new IllegalStateException("rollback"))))));
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+    clock.set(Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(2)));
+    assertFalse(await(outbox.flush()));
+    assertEquals(List.of(), processed);
+  }
+
+  @Test
+  void rejectsDuplicateRequests() throws Exception {
+    await(
+        transactionManager.transactionally(
+            tx ->
+                outbox
+                    .with()
+                    .uniqueRequestId("context-clientkey1")
+                    .schedule(tx, Target.class, t -> t.process("foo", null))));
+    await(succeeded.get());
+    var e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                await(
+                    transactionManager.transactionally(
+                        tx ->
+                            outbox
+                                .with()
+                                .uniqueRequestId("context-clientkey1")
+                                .schedule(tx, Target.class, t -> t.process("foo", null)))));
+    assertInstanceOf(AlreadyScheduledException.class, e.getCause());
+    assertEquals(List.of("foo"), processed);
+  }
+
+  @Test
+  void retriesOnFlushThenBlocks() throws Exception {
+    await(
+        transactionManager.transactionally(
+            tx -> outbox.schedule(tx, Target.class, t -> t.process("fail", null))));
+    await(failed.get());
+    assertFalse(await(outbox.flush()), "Not yet due for retry");
+
+    failed.set(new CompletableFuture<>());
+    clock.set(Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(2)));
+    assertTrue(await(outbox.flush()));
+    await(failed.get());
+    var entry = await(blocked);
+    assertEquals(2, entry.getAttempts());
+
+    clock.set(Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(4)));
+    assertFalse(await(outbox.flush()), "Blocked");
+    assertTrue(await(outbox.unblock(entry.getId())));
+    assertTrue(await(outbox.flush()));
+    assertEquals(List.of("fail", "fail", "fail"), processed);
+  }
+
+  @Test
+  void ordersByPriority() throws Exception {
+    await(
+        transactionManager.transactionally(
+            tx ->
+                outbox
+                    .with()
+                    .delayForAtLeast(Duration.ofSeconds(1))
+                    .schedule(tx, Target.class, t -> t.process("low", null))
+                    .thenCompose(
+                        __ ->
+                            outbox
+                                .with()
+                                .delayForAtLeast(Duration.ofSeconds(1))
+                                .priority(5)
+                                .schedule(tx, Target.class, t -> t.process("high", null)))));
+    clock.set(Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(2)));
+    var batch =
+        await(
+            transactionManager.transactionally(
+                tx -> persistor.selectBatch(tx, 10, clock.get().instant())));
+    assertEquals(2, batch.size());
+    assertEquals(5, batch.get(0).getPriority());
+    assertEquals("high", batch.get(0).getInvocation().getArgs()[0]);
+    assertTrue(await(outbox.flush()));
+    assertEquals(2, processed.size());
+  }
+
+  @Test
+  void limitsFlushConcurrency() throws Exception {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    Target slow =
+        (value, tx) -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          return CompletableFuture.runAsync(
+              inFlight::decrementAndGet, CompletableFuture.delayedExecutor(50, MILLISECONDS));
+        };
+    var limited =
+        AsyncTransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor)
+            .instantiator(Instantiator.using(clazz -> slow))
+            .clockProvider(clock::get)
+            .flushConcurrency(2)
+            .build();
+    await(
+        transactionManager.transactionally(
+            tx -> {
+              CompletionStage<Void> scheduled = completedFuture(null);
+              for (int i = 0; i < 6; i++) {
+                String value = "value" + i;
+                scheduled =
+                    scheduled.thenCompose(
+                        __ ->
+                            limited
+                                .with()
+                                .delayForAtLeast(Duration.ofSeconds(1))
+                                .schedule(tx, Target.class, t -> t.process(value, null)));
+              }
+              return scheduled;
+            }));
+    clock.set(Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(2)));
+    assertTrue(await(limited.flush()));
+    assertEquals(2, maxInFlight.get());
+    assertFalse(await(limited.flush()), "All processed");
+  }
+
+  @Test
+  void requiresBindMarkerForUnknownDialect() {
+    // A custom dialect, here one delegating to H2
+    Dialect dialect =
+        (Dialect)
+            Proxy.newProxyInstance(
+                Dialect.class.getClassLoader(),
+                new Class<?>[] {Dialect.class},
+                (proxy, method, args) -> method.invoke(Dialect.H2, args));
+    var e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> R2dbcPersistor.builder().dialect(dialect).build());
+    assertTrue(e.getMessage().contains("bindMarker"));
+    assertNotNull(R2dbcPersistor.builder().dialect(dialect).bindMarker(index -> "?").build());
+  }
+
+  private static <T> T await(CompletionStage<T> stage) throws Exception {
+    return stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  interface Target {
+    CompletionStage<Void> process(String value, AsyncTransaction tx);
+  }
+
+  private final class TargetImpl implements Target {
+
+    @Override
+    public CompletionStage<Void> process(String value, AsyncTransaction tx) {
+      // Runs in the processing transaction, so could compose further database work into it
+      assertNotNull(tx);
+      processed.add(value);
+      if (value.equals("fail")) {
+        return failedFuture(new IllegalStateException("Failing as requested"));
+      }
+      return completedFuture(null);
+    }
+  }
+}
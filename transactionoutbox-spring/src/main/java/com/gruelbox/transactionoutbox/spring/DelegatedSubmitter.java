@@ -2,6 +2,7 @@ package com.gruelbox.transactionoutbox.spring;
 
 import com.gruelbox.transactionoutbox.Submitter;
 import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -40,6 +41,17 @@ public class DelegatedSubmitter implements Submitter, InitializingBean, Disposab
     submitter.submit(entry, localExecutor);
   }
 
+  @Override
+  public void submitBatch(
+      List<TransactionOutboxEntry> entries, Consumer<List<TransactionOutboxEntry>> localExecutor) {
+    submitter.submitBatch(entries, localExecutor);
+  }
+
+  @Override
+  public int availableCapacity() {
+    return submitter.availableCapacity();
+  }
+
   @Override
   public void destroy() throws Exception {
     executor.shutdown();
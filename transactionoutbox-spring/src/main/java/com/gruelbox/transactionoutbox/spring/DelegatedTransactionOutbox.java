@@ -4,7 +4,9 @@ import com.gruelbox.transactionoutbox.Persistor;
 import com.gruelbox.transactionoutbox.Submitter;
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -44,16 +46,18 @@ public class DelegatedTransactionOutbox implements TransactionOutbox {
               .submitter(submitter)
               .attemptFrequency(properties.getAttemptFrequency())
               .blockAfterAttempts(properties.getBlockAfterAttempts())
+              .processBatchSize(properties.getProcessBatchSize())
+              .flushShards(properties.getFlushShards())
               .listener(registry)
               .build();
     }
 
     /**
      * Free up resources when destroy the context.
-     * <p>
-     * Setting delegate to null will break GC path from Root to SessionFactory and thus allows SessionFactory
-     * to be collected by GC. This is important when the context is short-lived. E.g. running large set
-     * of integration tests which create and destroy application contexts.
+     *
+     * <p>Setting delegate to null will break GC path from Root to SessionFactory and thus allows
+     * SessionFactory to be collected by GC. This is important when the context is short-lived. E.g.
+     * running large set of integration tests which create and destroy application contexts.
      */
     @Override
     public void destroy() throws Exception {
@@ -71,6 +75,12 @@ public class DelegatedTransactionOutbox implements TransactionOutbox {
     return delegate.schedule(clazz);
   }
 
+  @Override
+  public <T, A> void scheduleAll(
+      Class<T> clazz, Iterable<? extends A> items, BiConsumer<? super T, ? super A> call) {
+    delegate.scheduleAll(clazz, items, call);
+  }
+
   @Override
   public ParameterizedScheduleBuilder with() {
     return delegate.with();
@@ -100,4 +110,9 @@ public class DelegatedTransactionOutbox implements TransactionOutbox {
   public void processNow(TransactionOutboxEntry entry) {
     delegate.processNow(entry);
   }
+
+  @Override
+  public void processBatchNow(List<TransactionOutboxEntry> entries) {
+    delegate.processBatchNow(entries);
+  }
 }
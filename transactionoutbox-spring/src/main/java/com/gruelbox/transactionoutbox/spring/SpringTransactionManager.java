@@ -10,6 +10,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.util.function.Supplier;
 import javax.sql.DataSource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -132,6 +133,40 @@ public class SpringTransactionManager implements ThreadLocalContextTransactionMa
       return preparedStatement;
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Runnable> T addPreCommitHook(Object key, Supplier<T> hook) {
+      T existing = (T) TransactionSynchronizationManager.getResource(key);
+      if (existing != null) {
+        return existing;
+      }
+      T created = hook.get();
+      TransactionSynchronizationManager.bindResource(key, created);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+              TransactionSynchronizationManager.unbindResource(key);
+            }
+
+            @Override
+            public void resume() {
+              TransactionSynchronizationManager.bindResource(key, created);
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+              created.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+          });
+      return created;
+    }
+
     @Override
     public void addPostCommitHook(Runnable runnable) {
       TransactionSynchronizationManager.registerSynchronization(
@@ -1,31 +1,78 @@
 package com.gruelbox.transactionoutbox.spring;
 
+import com.gruelbox.transactionoutbox.FlushScheduler;
 import com.gruelbox.transactionoutbox.TransactionOutbox;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
 /**
  * Simple implementation of a background processor for {@link TransactionOutbox}. You don't need to
  * use this if you need different semantics, but this is a good start for most purposes.
+ *
+ * <p>Flushes every {@code outbox.repeatEvery} while there is work, backing off to {@code
+ * outbox.maxRepeatEvery} while idle. See {@link FlushScheduler}. May be stopped and started again,
+ * each start using a new {@link FlushScheduler}.
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor(onConstructor_ = {@Autowired})
-public class TransactionOutboxBackgroundProcessor {
+public class TransactionOutboxBackgroundProcessor implements SmartLifecycle {
 
   private final TransactionOutbox outbox;
+  private final TransactionOutboxProperties properties;
+  private volatile FlushScheduler scheduler;
 
-  @Scheduled(fixedRateString = "${outbox.repeatEvery}")
-  void poll() {
+  @Autowired
+  public TransactionOutboxBackgroundProcessor(
+      TransactionOutbox outbox, TransactionOutboxProperties properties) {
+    this.outbox = outbox;
+    this.properties = properties;
+  }
+
+  /** Triggers an immediate flush if running. See {@link FlushScheduler#wakeUp()}. */
+  public void wakeUp() {
+    FlushScheduler current = scheduler;
+    if (current != null) {
+      current.wakeUp();
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (scheduler != null) {
+      return;
+    }
+    // A FlushScheduler cannot be restarted once closed, so each start gets a new one
+    FlushScheduler started =
+        FlushScheduler.builder()
+            .outbox(outbox)
+            .minInterval(properties.getRepeatEvery())
+            .maxInterval(
+                properties.getMaxRepeatEvery() == null
+                    ? properties.getRepeatEvery()
+                    : properties.getMaxRepeatEvery())
+            .build();
+    started.start();
+    scheduler = started;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduler == null) {
+      return;
+    }
     try {
-      do {
-        log.info("Flushing");
-      } while (outbox.flush());
-    } catch (Exception e) {
-      log.error("Error flushing transaction outbox. Pausing", e);
+      scheduler.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      scheduler = null;
     }
   }
+
+  @Override
+  public boolean isRunning() {
+    return scheduler != null;
+  }
 }
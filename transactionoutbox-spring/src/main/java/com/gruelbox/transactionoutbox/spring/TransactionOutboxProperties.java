@@ -15,9 +15,12 @@ import org.springframework.validation.annotation.Validated;
 @Validated
 public class TransactionOutboxProperties {
   @NotNull private Duration repeatEvery;
+  private Duration maxRepeatEvery;
   private boolean useJackson = true;
   @NotNull private Duration attemptFrequency;
   @Positive private int blockAfterAttempts;
+  @Positive private int processBatchSize = 1;
+  @Positive private int flushShards = 1;
   @NotNull private OutboxSqlDialect sqlDialect = OutboxSqlDialect.H2;
 
   @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
@@ -27,6 +30,7 @@ public class TransactionOutboxProperties {
     MY_SQL_5(Dialect.MY_SQL_5),
     MY_SQL_8(Dialect.MY_SQL_8),
     POSTGRESQL_9(Dialect.POSTGRESQL_9),
+    POSTGRESQL_PARTITIONED(Dialect.POSTGRESQL_PARTITIONED),
     H2(Dialect.H2),
     ORACLE(Dialect.ORACLE),
     MS_SQL_SERVER(Dialect.MS_SQL_SERVER);
@@ -68,5 +68,10 @@ public @interface TransactionalOutbox {
    */
   boolean orderedTakeLast() default false;
 
+  /**
+   * @see TransactionOutbox.ParameterizedScheduleBuilder#priority
+   */
+  int priority() default 0;
+
   boolean requireResultHandler() default false;
 }
@@ -57,6 +57,6 @@ public class TransactionalOutboxConfiguration {
   @Bean
   public TransactionOutboxBackgroundProcessor transactionOutboxBackgroundProcessor(
       TransactionOutbox transactionOutbox) {
-    return new TransactionOutboxBackgroundProcessor(transactionOutbox);
+    return new TransactionOutboxBackgroundProcessor(transactionOutbox, properties);
   }
 }
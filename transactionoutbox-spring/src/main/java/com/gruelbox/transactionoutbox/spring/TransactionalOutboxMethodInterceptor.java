@@ -40,6 +40,7 @@ class TransactionalOutboxMethodInterceptor implements MethodInterceptor {
           .with()
           .ordered(topic)
           .orderedTakeLast(annotation.orderedTakeLast())
+          .priority(annotation.priority())
           .delayForAtLeast(delayForAtLeast)
           .persistInvocationAndAddPostCommitHook(
               invocation.getMethod(), invocation.getArguments(), annotation.requireInTransaction());
@@ -21,6 +21,7 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -220,6 +221,60 @@ public abstract class AbstractAcceptanceTest extends BaseTest {
     assertTrue(gotScheduled.get());
   }
 
+  @Test
+  final void scheduleAll() throws Exception {
+    int count = 1500;
+    int orderedCount = 10;
+    TransactionManager transactionManager = txManager();
+    CountDownLatch latch = new CountDownLatch(count + orderedCount);
+    Set<Integer> processed = ConcurrentHashMap.newKeySet();
+    List<Integer> processedInTopic = new CopyOnWriteArrayList<>();
+    TransactionOutbox outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .instantiator(
+                Instantiator.using(
+                    clazz ->
+                        (InterfaceProcessor)
+                            (foo, bar) -> {
+                              if ("ordered".equals(bar)) {
+                                processedInTopic.add(foo);
+                              } else {
+                                processed.add(foo);
+                              }
+                            }))
+            .submitter(Submitter.withExecutor(Runnable::run))
+            .listener(new LatchListener(latch))
+            .persistor(persistor())
+            .initializeImmediately(false)
+            .build();
+
+    outbox.initialize();
+    clearOutbox();
+
+    withRunningFlusher(
+        outbox,
+        () -> {
+          transactionManager.inTransaction(
+              () -> {
+                outbox.scheduleAll(
+                    InterfaceProcessor.class,
+                    IntStream.range(0, count).boxed().collect(toList()),
+                    (processor, i) -> processor.process(i, "bulk"));
+                outbox
+                    .with()
+                    .ordered("topic")
+                    .scheduleAll(
+                        InterfaceProcessor.class,
+                        IntStream.range(0, orderedCount).boxed().collect(toList()),
+                        (processor, i) -> processor.process(i, "ordered"));
+              });
+          assertTrue(latch.await(30, SECONDS));
+        });
+    assertEquals(count, processed.size());
+    assertEquals(IntStream.range(0, orderedCount).boxed().collect(toList()), processedInTopic);
+  }
+
   @Test
   final void noAutomaticInitialization() {
 
@@ -694,6 +749,424 @@ public abstract class AbstractAcceptanceTest extends BaseTest {
         containsInAnyOrder(IntStream.range(0, count * 10).boxed().toArray()));
   }
 
+  /**
+   * As {@link #highVolumeUnreliable()}, but with all work processed in batches via flush, so that
+   * failures exercise the rollback and fallback to individual processing.
+   */
+  @Test
+  final void highVolumeUnreliableBatched() throws Exception {
+    int count = 10;
+
+    TransactionManager transactionManager = txManager();
+    CountDownLatch latch = new CountDownLatch(count * 10);
+    ConcurrentHashMap<Integer, Integer> results = new ConcurrentHashMap<>();
+    ConcurrentHashMap<Integer, Integer> duplicates = new ConcurrentHashMap<>();
+    Submitter unreliableSubmitter = Submitter.withExecutor(unreliablePool);
+
+    TransactionOutbox outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(new RandomFailingInstantiator())
+            .submitter(
+                new Submitter() {
+                  @Override
+                  public void submit(
+                      TransactionOutboxEntry entry,
+                      Consumer<TransactionOutboxEntry> localExecutor) {
+                    // Leave everything for flush
+                  }
+
+                  @Override
+                  public void submitBatch(
+                      List<TransactionOutboxEntry> entries,
+                      Consumer<List<TransactionOutboxEntry>> localExecutor) {
+                    unreliableSubmitter.submitBatch(entries, localExecutor);
+                  }
+                })
+            .attemptFrequency(Duration.ofMillis(500))
+            .flushBatchSize(1000)
+            .processBatchSize(7)
+            .listener(
+                new TransactionOutboxListener() {
+                  @Override
+                  public void success(TransactionOutboxEntry entry, Object result) {
+                    Integer i = (Integer) entry.getInvocation().getArgs()[0];
+                    if (results.putIfAbsent(i, i) != null) {
+                      duplicates.put(i, i);
+                    }
+                    latch.countDown();
+                  }
+                })
+            .build();
+
+    clearOutbox();
+
+    withRunningFlusher(
+        outbox,
+        () -> {
+          IntStream.range(0, count)
+              .parallel()
+              .forEach(
+                  i ->
+                      transactionManager.inTransaction(
+                          () -> {
+                            for (int j = 0; j < 10; j++) {
+                              outbox.schedule(InterfaceProcessor.class).process(i * 10 + j, "Whee");
+                            }
+                          }));
+          assertTrue(latch.await(30, SECONDS), "Latch not opened in time");
+        });
+
+    assertThat(
+        "Should never get duplicates running to full completion", duplicates.keySet(), empty());
+    assertThat(
+        "Only got: " + results.keySet(),
+        results.keySet(),
+        containsInAnyOrder(IntStream.range(0, count * 10).boxed().toArray()));
+  }
+
+  /** Work left for flush is processed exactly once when claimed in several shards in parallel. */
+  @Test
+  final void shardedFlush() throws Exception {
+    int count = 100;
+
+    TransactionManager transactionManager = txManager();
+    CountDownLatch latch = new CountDownLatch(count);
+    ConcurrentHashMap<Integer, Integer> results = new ConcurrentHashMap<>();
+    ConcurrentHashMap<Integer, Integer> duplicates = new ConcurrentHashMap<>();
+    Instantiator instantiator =
+        Instantiator.using(
+            clazz ->
+                (InterfaceProcessor) (foo, bar) -> LOGGER.info("Processing ({}, {})", foo, bar));
+
+    TransactionOutbox scheduler =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter((entry, localExecutor) -> {}) // Leave everything for flush
+            .attemptFrequency(Duration.ofMillis(500))
+            .build();
+    TransactionOutbox outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter(Submitter.withExecutor(unreliablePool))
+            .attemptFrequency(Duration.ofMillis(500))
+            .flushBatchSize(10)
+            .flushShards(3)
+            .listener(
+                new TransactionOutboxListener() {
+                  @Override
+                  public void success(TransactionOutboxEntry entry, Object result) {
+                    Integer i = (Integer) entry.getInvocation().getArgs()[0];
+                    if (results.putIfAbsent(i, i) != null) {
+                      duplicates.put(i, i);
+                    }
+                    latch.countDown();
+                  }
+                })
+            .build();
+
+    clearOutbox();
+
+    transactionManager.inTransaction(
+        () ->
+            IntStream.range(0, count)
+                .forEach(i -> scheduler.schedule(InterfaceProcessor.class).process(i, "Whee")));
+    withRunningFlusher(
+        outbox, () -> assertTrue(latch.await(30, SECONDS), "Latch not opened in time"));
+
+    assertThat("Should never get duplicates", duplicates.keySet(), empty());
+    assertThat(
+        "Only got: " + results.keySet(),
+        results.keySet(),
+        containsInAnyOrder(IntStream.range(0, count).boxed().toArray()));
+  }
+
+  /** Flush claims no more work than the submitter can accept, leaving the rest for later. */
+  @Test
+  final void flushRespectsSubmitterCapacity() {
+    TransactionManager transactionManager = txManager();
+    Instantiator instantiator = Instantiator.using(clazz -> (InterfaceProcessor) (foo, bar) -> {});
+    List<TransactionOutboxEntry> submitted = new ArrayList<>();
+    AtomicInteger capacity = new AtomicInteger(3);
+
+    TransactionOutbox scheduler =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter((entry, localExecutor) -> {}) // Leave everything for flush
+            .build();
+    Clock later = Clock.offset(Clock.systemDefaultZone(), Duration.ofHours(1));
+    TransactionOutbox outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter(
+                new Submitter() {
+                  @Override
+                  public void submit(
+                      TransactionOutboxEntry entry,
+                      Consumer<TransactionOutboxEntry> localExecutor) {
+                    submitted.add(entry);
+                  }
+
+                  @Override
+                  public int availableCapacity() {
+                    return capacity.get();
+                  }
+                })
+            .clockProvider(() -> later)
+            .build();
+
+    clearOutbox();
+
+    transactionManager.inTransaction(
+        () ->
+            IntStream.range(0, 10)
+                .forEach(i -> scheduler.schedule(InterfaceProcessor.class).process(i, "Whee")));
+
+    assertTrue(outbox.flush());
+    assertEquals(3, submitted.size());
+
+    capacity.set(0);
+    assertFalse(outbox.flush());
+    assertEquals(3, submitted.size());
+
+    // Nothing beyond what was submitted was claimed, so the rest is still due
+    capacity.set(Integer.MAX_VALUE);
+    assertTrue(outbox.flush());
+    assertEquals(10, submitted.size());
+    assertEquals(10, submitted.stream().map(TransactionOutboxEntry::getId).distinct().count());
+  }
+
+  /** Work scheduled by a failing entry in a batch is rolled back with it. */
+  @Test
+  final void batchFailureDiscardsScheduledWork() {
+    TransactionManager transactionManager = txManager();
+    ConcurrentHashMap<Integer, AtomicInteger> invocations = new ConcurrentHashMap<>();
+    AtomicReference<TransactionOutbox> scheduler = new AtomicReference<>();
+    Instantiator instantiator =
+        Instantiator.using(
+            clazz ->
+                (InterfaceProcessor)
+                    (foo, bar) -> {
+                      invocations.computeIfAbsent(foo, k -> new AtomicInteger()).incrementAndGet();
+                      if (foo == 1) {
+                        scheduler
+                            .get()
+                            .schedule(InterfaceProcessor.class)
+                            .process(100, "Follow-up");
+                        throw new IllegalStateException("Failing as requested");
+                      }
+                    });
+    AtomicInteger successes = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+
+    scheduler.set(
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter((entry, localExecutor) -> {}) // Leave everything for flush
+            .build());
+    Clock later = Clock.offset(Clock.systemDefaultZone(), Duration.ofHours(1));
+    TransactionOutbox outbox =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter(
+                new Submitter() {
+                  @Override
+                  public void submit(
+                      TransactionOutboxEntry entry,
+                      Consumer<TransactionOutboxEntry> localExecutor) {
+                    localExecutor.accept(entry);
+                  }
+
+                  @Override
+                  public void submitBatch(
+                      List<TransactionOutboxEntry> entries,
+                      Consumer<List<TransactionOutboxEntry>> localExecutor) {
+                    localExecutor.accept(entries);
+                  }
+                })
+            .processBatchSize(3)
+            .clockProvider(() -> later)
+            .listener(
+                new TransactionOutboxListener() {
+                  @Override
+                  public void success(TransactionOutboxEntry entry, Object result) {
+                    successes.incrementAndGet();
+                  }
+
+                  @Override
+                  public void failure(TransactionOutboxEntry entry, Throwable cause) {
+                    failures.incrementAndGet();
+                  }
+                })
+            .build();
+
+    clearOutbox();
+
+    transactionManager.inTransaction(
+        () ->
+            IntStream.range(0, 3)
+                .forEach(
+                    i -> scheduler.get().schedule(InterfaceProcessor.class).process(i, "Whee")));
+
+    assertTrue(outbox.flush());
+    assertEquals(2, successes.get());
+    assertEquals(1, failures.get());
+    assertEquals(1, invocations.get(1).get());
+
+    // The follow-up would be due by now if it had been saved
+    assertFalse(outbox.flush());
+    assertNull(invocations.get(100));
+  }
+
+  /** Instances sizing claims to their throughput share a backlog and process it exactly once. */
+  @Test
+  final void claimsSizedToThroughput() throws Exception {
+    int count = 100;
+
+    TransactionManager transactionManager = txManager();
+    CountDownLatch latch = new CountDownLatch(count);
+    ConcurrentHashMap<Integer, Integer> results = new ConcurrentHashMap<>();
+    ConcurrentHashMap<Integer, Integer> duplicates = new ConcurrentHashMap<>();
+    Instantiator instantiator =
+        Instantiator.using(
+            clazz ->
+                (InterfaceProcessor) (foo, bar) -> LOGGER.info("Processing ({}, {})", foo, bar));
+
+    TransactionOutbox scheduler =
+        TransactionOutbox.builder()
+            .transactionManager(transactionManager)
+            .persistor(persistor())
+            .instantiator(instantiator)
+            .submitter((entry, localExecutor) -> {}) // Leave everything for flush
+            .build();
+    List<TransactionOutbox> outboxes = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      outboxes.add(
+          TransactionOutbox.builder()
+              .transactionManager(transactionManager)
+              .persistor(persistor())
+              .instantiator(instantiator)
+              .submitter(Submitter.withExecutor(unreliablePool))
+              .attemptFrequency(Duration.ofSeconds(5))
+              .claimWindow(Duration.ofMillis(200))
+              .listener(
+                  new TransactionOutboxListener() {
+                    @Override
+                    public void success(TransactionOutboxEntry entry, Object result) {
+                      Integer i = (Integer) entry.getInvocation().getArgs()[0];
+                      if (results.putIfAbsent(i, i) != null) {
+                        duplicates.put(i, i);
+                      }
+                      latch.countDown();
+                    }
+                  })
+              .build());
+    }
+
+    clearOutbox();
+
+    transactionManager.inTransaction(
+        () ->
+            IntStream.range(0, count)
+                .forEach(i -> scheduler.schedule(InterfaceProcessor.class).process(i, "Whee")));
+    withRunningFlusher(
+        outboxes.get(0),
+        () ->
+            withRunningFlusher(
+                outboxes.get(1),
+                () -> assertTrue(latch.await(30, SECONDS), "Latch not opened in time")));
+
+    assertThat("Should never get duplicates", duplicates.keySet(), empty());
+    assertThat(
+        "Only got: " + results.keySet(),
+        results.keySet(),
+        containsInAnyOrder(IntStream.range(0, count).boxed().toArray()));
+  }
+
+  /** High-priority work runs on its own executor, so is not held up by low-priority work. */
+  @Test
+  final void priorityLanes() throws Exception {
+    Assumptions.assumeTrue(
+        persistor() instanceof DefaultPersistor, "Persistor does not support priority");
+
+    TransactionManager transactionManager = txManager();
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch urgentLatch = new CountDownLatch(5);
+    CountDownLatch bulkLatch = new CountDownLatch(20);
+    ExecutorService bulkPool = Executors.newSingleThreadExecutor();
+    try {
+      TransactionOutbox outbox =
+          TransactionOutbox.builder()
+              .transactionManager(transactionManager)
+              .persistor(persistor())
+              .instantiator(
+                  Instantiator.using(
+                      clazz ->
+                          (InterfaceProcessor)
+                              (foo, bar) -> {
+                                if (foo < 100) {
+                                  try {
+                                    assertTrue(release.await(30, SECONDS));
+                                  } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                  }
+                                }
+                              }))
+              .submitter(
+                  ExecutorSubmitter.builder()
+                      .executor(bulkPool)
+                      .priorityExecutor(10, singleThreadPool)
+                      .build())
+              .attemptFrequency(Duration.ofMillis(500))
+              .listener(
+                  new TransactionOutboxListener() {
+                    @Override
+                    public void success(TransactionOutboxEntry entry, Object result) {
+                      (entry.getPriority() == 10 ? urgentLatch : bulkLatch).countDown();
+                    }
+                  })
+              .build();
+
+      clearOutbox();
+
+      transactionManager.inTransaction(
+          () -> {
+            IntStream.range(0, 20)
+                .forEach(i -> outbox.schedule(InterfaceProcessor.class).process(i, "Bulk"));
+            IntStream.range(100, 105)
+                .forEach(
+                    i ->
+                        outbox
+                            .with()
+                            .priority(10)
+                            .schedule(InterfaceProcessor.class)
+                            .process(i, "Urgent"));
+          });
+
+      assertTrue(urgentLatch.await(15, SECONDS), "Urgent work held up");
+      assertEquals(20, bulkLatch.getCount());
+      release.countDown();
+      assertTrue(bulkLatch.await(15, SECONDS), "Bulk work not processed");
+    } finally {
+      release.countDown();
+      bulkPool.shutdown();
+      assertTrue(bulkPool.awaitTermination(30, SECONDS));
+    }
+  }
+
   protected String createTestTable() {
     return "CREATE TABLE TEST_TABLE (topic VARCHAR(50), ix INTEGER, foo INTEGER, PRIMARY KEY (topic, ix))";
   }
@@ -7,8 +7,10 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.gruelbox.transactionoutbox.*;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
@@ -17,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -115,6 +118,115 @@ public abstract class AbstractPersistorTest {
                     containsInAnyOrder(entry1, entry2)));
   }
 
+  @Test
+  public void testInsertDuplicateId() throws Exception {
+    TransactionOutboxEntry entry1 = createEntry("FOO1", now, false);
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry1));
+    TransactionOutboxEntry entry2 = createEntry("FOO1", now.plusSeconds(1), false);
+    assertThrows(
+        Exception.class, () -> txManager().inTransactionThrows(tx -> persistor().save(tx, entry2)));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    setSequenceToNull(persistor().selectBatch(tx, 100, now.plusSeconds(2))),
+                    contains(entry1)));
+  }
+
+  @Test
+  public void testInsertDuplicateOfProcessed() throws Exception {
+    TransactionOutboxEntry entry1 = createEntry("FOO1", now, false, "context-clientkey1");
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry1));
+    entry1.setProcessed(true);
+    entry1.setNextAttemptTime(now.plus(1, ChronoUnit.DAYS));
+    txManager().inTransactionThrows(tx -> persistor().update(tx, entry1));
+
+    TransactionOutboxEntry entry2 = createEntry("FOO2", now, false, "context-clientkey1");
+    Assertions.assertThrows(
+        AlreadyScheduledException.class,
+        () -> txManager().inTransactionThrows(tx -> persistor().save(tx, entry2)));
+
+    // Once the processed record expires, the request can be made again
+    Instant later = now.plus(2, ChronoUnit.DAYS);
+    persistor().maintainPartitions(txManager(), later, Duration.ofDays(1));
+    txManager().inTransactionThrows(tx -> persistor().deleteProcessedAndExpired(tx, 100, later));
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry2));
+  }
+
+  @Test
+  public void testProcessedArchived() throws Exception {
+    var archiving = persistorArchivingProcessed();
+    Assumptions.assumeTrue(archiving != null, "Persistor does not archive processed records");
+    txManager().inTransactionThrows(archiving::clear);
+    TransactionOutboxEntry entry1 = createEntry("FOO1", now, false, "context-clientkey1");
+    TransactionOutboxEntry entry2 = createEntry("FOO2", now, false, "context-clientkey2");
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              archiving.save(tx, entry1);
+              archiving.save(tx, entry2);
+            });
+    entry1.setProcessed(true);
+    entry1.setNextAttemptTime(now.plus(1, ChronoUnit.DAYS));
+    entry2.setAttempts(1);
+    txManager().inTransactionThrows(tx -> archiving.updateBatch(tx, List.of(entry1, entry2)));
+
+    // Moved out of the outbox table, but still protecting its request id
+    Assertions.assertThrows(
+        OptimisticLockException.class,
+        () -> txManager().inTransactionThrows(tx -> archiving.delete(tx, entry1)));
+    txManager().inTransactionThrows(tx -> assertTrue(archiving.lock(tx, entry2)));
+    TransactionOutboxEntry entry3 = createEntry("FOO3", now, false, "context-clientkey1");
+    Assertions.assertThrows(
+        AlreadyScheduledException.class,
+        () -> txManager().inTransactionThrows(tx -> archiving.save(tx, entry3)));
+
+    Instant later = now.plus(2, ChronoUnit.DAYS);
+    txManager()
+        .inTransactionThrows(
+            tx -> assertEquals(1, archiving.deleteProcessedAndExpired(tx, 100, later)));
+    txManager().inTransactionThrows(tx -> archiving.save(tx, entry3));
+    txManager().inTransactionThrows(archiving::clear);
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but moving processed records to {@code
+   * TXNO_PROCESSED}.
+   *
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorArchivingProcessed() {
+    if (persistor() instanceof DefaultPersistor && dialect().getCheckArchived() != null) {
+      return DefaultPersistor.builder().dialect(dialect()).archiveProcessed(true).build();
+    }
+    return null;
+  }
+
+  @Test
+  public void testExpiredPartitionsDropped() throws Exception {
+    Assumptions.assumeTrue(
+        dialect().getFetchPartitions() != null, "Dialect does not partition processed records");
+    Duration retention = Duration.ofDays(1);
+    persistor().maintainPartitions(txManager(), now, retention);
+
+    TransactionOutboxEntry entry1 = createEntry("FOO1", now, false, "context-clientkey1");
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry1));
+    entry1.setProcessed(true);
+    entry1.setNextAttemptTime(now.plus(retention));
+    txManager().inTransactionThrows(tx -> persistor().update(tx, entry1));
+
+    TransactionOutboxEntry entry2 = createEntry("FOO2", now, false, "context-clientkey1");
+    Assertions.assertThrows(
+        AlreadyScheduledException.class,
+        () -> txManager().inTransactionThrows(tx -> persistor().save(tx, entry2)));
+
+    // Removed by dropping its partition rather than row by row
+    assertThat(
+        persistor().maintainPartitions(txManager(), now.plus(3, ChronoUnit.DAYS), retention),
+        greaterThanOrEqualTo(2));
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry2));
+  }
+
   @Test
   public void testBatchLimitUnderThreshold() throws Exception {
     txManager()
@@ -171,6 +283,379 @@ public abstract class AbstractPersistorTest {
             tx -> assertThat(persistor().selectBatch(tx, 3, now.plusMillis(1)), hasSize(2)));
   }
 
+  @Test
+  public void testSelectBacklog() throws Exception {
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var empty = persistor().selectBacklog(tx);
+              assertThat(empty.getSize(), equalTo(0L));
+              assertThat(empty.getOldestNextAttemptTime(), nullValue());
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, createEntry("FOO1", now.minusSeconds(2), false));
+              persistor().save(tx, createEntry("FOO2", now.plusSeconds(1), false));
+              persistor().save(tx, createEntry("FOO3", now.minusSeconds(3), true));
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var backlog = persistor().selectBacklog(tx);
+              assertThat(backlog.getSize(), equalTo(2L));
+              assertThat(backlog.getOldestNextAttemptTime(), equalTo(now.minusSeconds(2)));
+            });
+  }
+
+  @Test
+  public void testShardedClaimBatch() throws Exception {
+    List<String> ids = new ArrayList<>();
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              for (int i = 0; i < 30; i++) {
+                var entry = createEntry("FOO" + i, now.minusSeconds(1), false);
+                persistor().save(tx, entry);
+                ids.add(entry.getId());
+              }
+            });
+    var leaseExpiry = now.plusSeconds(60);
+
+    List<String> claimed = new ArrayList<>();
+    int nonEmptyShards = 0;
+    for (int shard = 0; shard < 3; shard++) {
+      int s = shard;
+      var batch =
+          txManager()
+              .inTransactionReturnsThrows(
+                  tx -> persistor().claimBatch(tx, 100, now, leaseExpiry, s, 3));
+      batch.forEach(entry -> claimed.add(entry.getId()));
+      if (!batch.isEmpty()) {
+        nonEmptyShards++;
+      }
+    }
+    assertThat(claimed, containsInAnyOrder(ids.toArray()));
+    if (persistor().supportsSharding()) {
+      assertThat(nonEmptyShards, greaterThan(1));
+    } else {
+      assertThat(nonEmptyShards, lessThanOrEqualTo(1));
+    }
+    txManager()
+        .inTransactionThrows(
+            tx -> assertThat(persistor().claimBatch(tx, 100, now, leaseExpiry, 0, 3), empty()));
+  }
+
+  @Test
+  public void testClaimBatchByPriority() throws Exception {
+    Assumptions.assumeTrue(
+        persistor() instanceof DefaultPersistor, "Persistor does not support priority");
+    List<String> urgent = new ArrayList<>();
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              for (int i = 0; i < 20; i++) {
+                persistor().save(tx, createEntry("LOW" + i, now.minusSeconds(60), false));
+              }
+              for (int i = 0; i < 3; i++) {
+                var entry =
+                    createEntry("HIGH" + i, now.minusSeconds(1), false).toBuilder()
+                        .priority(10)
+                        .build();
+                persistor().save(tx, entry);
+                urgent.add(entry.getId());
+              }
+              persistor()
+                  .save(
+                      tx,
+                      createEntry("MID", now.minusSeconds(1), false).toBuilder()
+                          .priority(5)
+                          .build());
+            });
+    var leaseExpiry = now.plusSeconds(60);
+
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var selected = persistor().selectBatch(tx, 3, now);
+              assertThat(
+                  selected.stream().map(TransactionOutboxEntry::getId).collect(Collectors.toList()),
+                  containsInAnyOrder(urgent.toArray()));
+            });
+    var firstClaim =
+        txManager()
+            .inTransactionReturnsThrows(tx -> persistor().claimBatch(tx, 3, now, leaseExpiry));
+    assertThat(
+        firstClaim.stream().map(TransactionOutboxEntry::getId).collect(Collectors.toList()),
+        containsInAnyOrder(urgent.toArray()));
+    firstClaim.forEach(entry -> assertThat(entry.getPriority(), equalTo(10)));
+    var secondClaim =
+        txManager()
+            .inTransactionReturnsThrows(tx -> persistor().claimBatch(tx, 1, now, leaseExpiry));
+    assertThat(secondClaim, hasSize(1));
+    assertThat(secondClaim.get(0).getId(), equalTo("MID"));
+  }
+
+  @Test
+  public void testClaimBatch() throws Exception {
+    var entry1 = createEntry("FOO1", now.minusSeconds(3), false);
+    var entry2 = createEntry("FOO2", now.minusSeconds(2), false);
+    var entry3 = createEntry("FOO3", now.minusSeconds(1), false);
+    var future = createEntry("FOO4", now.plusSeconds(1), false);
+    var blocked = createEntry("FOO5", now.minusSeconds(1), true);
+    var ordered = createEntry("FOO6", now.minusSeconds(1), false, "topic", false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry1);
+              persistor().save(tx, entry2);
+              persistor().save(tx, entry3);
+              persistor().save(tx, future);
+              persistor().save(tx, blocked);
+              persistor().save(tx, ordered);
+            });
+    var leaseExpiry = now.plusSeconds(60);
+
+    var firstClaim =
+        txManager()
+            .inTransactionReturnsThrows(tx -> persistor().claimBatch(tx, 2, now, leaseExpiry));
+    assertThat(firstClaim, hasSize(2));
+    for (var claimed : firstClaim) {
+      assertThat(claimed.getNextAttemptTime(), equalTo(leaseExpiry));
+      assertThat(claimed.getLastAttemptTime(), equalTo(now));
+      assertThat(claimed.getInvocation(), equalTo(entry1.getInvocation()));
+    }
+
+    var secondClaim =
+        txManager()
+            .inTransactionReturnsThrows(tx -> persistor().claimBatch(tx, 2, now, leaseExpiry));
+    assertThat(secondClaim, hasSize(1));
+    assertThat(
+        List.of(firstClaim.get(0).getId(), firstClaim.get(1).getId(), secondClaim.get(0).getId()),
+        containsInAnyOrder("FOO1", "FOO2", "FOO3"));
+
+    txManager()
+        .inTransactionThrows(
+            tx -> assertThat(persistor().claimBatch(tx, 2, now, leaseExpiry), empty()));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().claimBatch(tx, 10, leaseExpiry.plusMillis(1), leaseExpiry),
+                    hasSize(4)));
+  }
+
+  @Test
+  public void testBinaryInvocations() throws Exception {
+    var binary = persistorWithSerializer(BinaryInvocationSerializer.builder().build());
+    Assumptions.assumeTrue(binary != null, "Persistor does not support custom serializers");
+    var json = createEntry("FOO1", now, false);
+    var binaryEntry = createEntry("FOO2", now, false);
+    var binaryTopicEntry = createEntry("FOO3", now, false, "topic", false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, json);
+              binary.save(tx, binaryEntry);
+              binary.save(tx, binaryTopicEntry);
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var selected = binary.selectBatch(tx, 10, now.plusMillis(1));
+              assertThat(selected, hasSize(2));
+              for (var entry : selected) {
+                assertThat(entry.getInvocation(), equalTo(json.getInvocation()));
+              }
+              var inTopics = binary.selectNextInTopics(tx, 10, now.plusMillis(1));
+              assertThat(inTopics, hasSize(1));
+              assertThat(inTopics.iterator().next().getInvocation(), equalTo(json.getInvocation()));
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var toLock = binaryEntry.toBuilder().invocation(null).build();
+              assertTrue(binary.lock(tx, toLock));
+              assertThat(toLock.getInvocation(), equalTo(json.getInvocation()));
+            });
+  }
+
+  @Test
+  public void testCompressedInvocations() throws Exception {
+    var compressing = persistorWith(InvocationSerializer.createDefaultJsonSerializer(), 10);
+    var binaryCompressing = persistorWith(BinaryInvocationSerializer.builder().build(), 10);
+    Assumptions.assumeTrue(compressing != null, "Persistor does not support compression");
+    var plain = createEntry("FOO1", now, false);
+    var compressed = createEntry("FOO2", now, false);
+    var binaryCompressed = createEntry("FOO3", now, false, "topic", false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, plain);
+              compressing.save(tx, compressed);
+              binaryCompressing.save(tx, binaryCompressed);
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var selected = binaryCompressing.selectBatch(tx, 10, now.plusMillis(1));
+              assertThat(selected, hasSize(2));
+              for (var entry : selected) {
+                assertThat(entry.getInvocation(), equalTo(plain.getInvocation()));
+              }
+              var inTopics = binaryCompressing.selectNextInTopics(tx, 10, now.plusMillis(1));
+              assertThat(inTopics, hasSize(1));
+              assertThat(
+                  inTopics.iterator().next().getInvocation(), equalTo(plain.getInvocation()));
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var toLock = compressed.toBuilder().invocation(null).build();
+              assertTrue(persistor().lock(tx, toLock));
+              assertThat(toLock.getInvocation(), equalTo(plain.getInvocation()));
+            });
+  }
+
+  @Test
+  public void testDeferredInserts() throws Exception {
+    var deferring = persistorWithInsertBatchSize(2);
+    Assumptions.assumeTrue(deferring != null, "Persistor does not support deferred inserts");
+    var topic1 = createEntry("FOO1", now, false, "topic1", false);
+    var topic2 = createEntry("FOO2", now, false, "topic1", false);
+    var immediate =
+        createEntry("FOO3", now, false, "context-clientkey1").toBuilder().topic("topic1").build();
+    var topic3 = createEntry("FOO4", now, false, "topic1", false);
+    var other = createEntry("FOO5", now, false, "topic2", false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              deferring.save(tx, topic1);
+              deferring.save(tx, createEntry("BAR1", now, false));
+              deferring.save(tx, topic2);
+              deferring.save(tx, immediate);
+              deferring.save(tx, topic3);
+              deferring.save(tx, createEntry("BAR2", now, false));
+              deferring.save(tx, createEntry("BAR3", now, false));
+              deferring.save(tx, other);
+            });
+    assertTrue(topic1.getSequence() < topic2.getSequence());
+    assertTrue(topic2.getSequence() < immediate.getSequence());
+    assertTrue(immediate.getSequence() < topic3.getSequence());
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              assertThat(persistor().selectBatch(tx, 10, now.plusMillis(1)), hasSize(3));
+              var inTopics = persistor().selectNextInTopics(tx, 10, now.plusMillis(1));
+              assertThat(inTopics, containsInAnyOrder(matches(topic1), matches(other)));
+            });
+  }
+
+  @Test
+  public void testConcurrentWritesToTopicWithSequencesAllocatedAtCommit() throws Exception {
+    var atCommit = persistorAllocatingSequencesAtCommit();
+    Assumptions.assumeTrue(atCommit != null, "Persistor does not support allocation at commit");
+    var first = createEntry("FOO1", now, false, "topic1", false);
+    var second = createEntry("FOO2", now, false, "topic1", false);
+
+    var savedLatch = new CountDownLatch(1);
+    var commitLatch = new CountDownLatch(1);
+    var executorService = Executors.newFixedThreadPool(1);
+    try {
+      Future<?> future =
+          executorService.submit(
+              () -> {
+                txManager()
+                    .inTransactionThrows(
+                        tx -> {
+                          atCommit.save(tx, first);
+                          savedLatch.countDown();
+                          assertTrue(commitLatch.await(10, TimeUnit.SECONDS));
+                        });
+                return null;
+              });
+      assertTrue(savedLatch.await(10, TimeUnit.SECONDS));
+
+      // Would wait for the sequence lock if it were taken when saving
+      txManager().inTransactionThrows(tx -> atCommit.save(tx, second));
+      commitLatch.countDown();
+      future.get(10, TimeUnit.SECONDS);
+    } finally {
+      executorService.shutdown();
+      assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    assertTrue(second.getSequence() < first.getSequence());
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().selectNextInTopics(tx, 10, now.plusMillis(1)),
+                    contains(matches(second))));
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but allocating sequence numbers when the
+   * transaction commits.
+   *
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorAllocatingSequencesAtCommit() {
+    if (persistor() instanceof DefaultPersistor) {
+      return DefaultPersistor.builder().dialect(dialect()).allocateSequencesAtCommit(true).build();
+    }
+    return null;
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but deferring inserts until commit.
+   *
+   * @param insertBatchSize The maximum number of rows per insert.
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorWithInsertBatchSize(int insertBatchSize) {
+    if (persistor() instanceof DefaultPersistor) {
+      return DefaultPersistor.builder().dialect(dialect()).insertBatchSize(insertBatchSize).build();
+    } else if (persistor() instanceof PgSeqPersistor) {
+      return PgSeqPersistor.builder().insertBatchSize(insertBatchSize).build();
+    }
+    return null;
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but using the specified serializer.
+   *
+   * @param serializer The serializer.
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorWithSerializer(InvocationSerializer serializer) {
+    return persistorWith(serializer, null);
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but using the specified serializer and
+   * compression threshold.
+   *
+   * @param serializer The serializer.
+   * @param compressionThreshold The compression threshold, or null to disable compression.
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorWith(InvocationSerializer serializer, Integer compressionThreshold) {
+    if (persistor() instanceof DefaultPersistor) {
+      return DefaultPersistor.builder()
+          .dialect(dialect())
+          .serializer(serializer)
+          .compressionThreshold(compressionThreshold)
+          .build();
+    } else if (persistor() instanceof PgSeqPersistor) {
+      return PgSeqPersistor.builder()
+          .serializer(serializer)
+          .compressionThreshold(compressionThreshold)
+          .build();
+    }
+    return null;
+  }
+
   @Test
   public void testBlockedEntriesExcluded() throws Exception {
     txManager()
@@ -292,6 +777,90 @@ public abstract class AbstractPersistorTest {
         .inTransactionThrows(tx -> assertThat(persistor().lock(tx, original), equalTo(false)));
   }
 
+  @Test
+  public void testLockBatch() throws Exception {
+    var entry1 = createEntry("FOO1", now, false);
+    var entry2 = createEntry("FOO2", now, false);
+    var entry3 = createEntry("FOO3", now, false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry1);
+              persistor().save(tx, entry2);
+              persistor().save(tx, entry3);
+            });
+    var stale = entry2.toBuilder().build();
+    entry2.setAttempts(1);
+    txManager().inTransactionThrows(tx -> persistor().update(tx, entry2));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().lockBatch(tx, List.of(entry3, stale, entry1)),
+                    contains(entry3, entry1)));
+  }
+
+  @Test
+  public void testDeleteBatch() throws Exception {
+    var entry1 = createEntry("FOO1", now, false);
+    var entry2 = createEntry("FOO2", now, false);
+    var entry3 = createEntry("FOO3", now, false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry1);
+              persistor().save(tx, entry2);
+              persistor().save(tx, entry3);
+            });
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              var locked = persistor().lockBatch(tx, List.of(entry1, entry2));
+              assertThat(locked, hasSize(2));
+              persistor().deleteBatch(tx, locked);
+            });
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    setSequenceToNull(persistor().selectBatch(tx, 100, now.plusMillis(1))),
+                    contains(entry3)));
+    txManager()
+        .inTransaction(
+            tx ->
+                assertThrows(
+                    OptimisticLockException.class,
+                    () -> persistor().deleteBatch(tx, List.of(entry1, entry3))));
+  }
+
+  @Test
+  public void testUpdateBatch() throws Exception {
+    var entry1 = createEntry("FOO1", now, false);
+    var entry2 = createEntry("FOO2", now, false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry1);
+              persistor().save(tx, entry2);
+            });
+    var stale = entry2.toBuilder().build();
+    entry1.setAttempts(1);
+    entry2.setAttempts(2);
+    txManager().inTransactionThrows(tx -> persistor().updateBatch(tx, List.of(entry1, entry2)));
+    assertThat(entry1.getVersion(), equalTo(1));
+    assertThat(entry2.getVersion(), equalTo(1));
+    var updated =
+        txManager()
+            .inTransactionReturnsThrows(tx -> persistor().selectBatch(tx, 100, now.plusMillis(1)));
+    assertThat(updated, containsInAnyOrder(matches(entry1), matches(entry2)));
+    txManager()
+        .inTransaction(
+            tx ->
+                assertThrows(
+                    OptimisticLockException.class,
+                    () -> persistor().updateBatch(tx, List.of(stale))));
+  }
+
   @Test
   public void testSkipLocked() throws Exception {
     var entry1 = createEntry("FOO1", now.minusSeconds(1), false);
@@ -460,6 +1029,163 @@ public abstract class AbstractPersistorTest {
                 assertThat(
                     persistor().selectNextInTopics(tx, 100, now.plusMillis(1)),
                     containsInAnyOrder(entry11, entry23, entry33, entry51)));
+
+    var tracking = persistorTrackingActiveTopics();
+    if (tracking != null) {
+      txManager()
+          .inTransactionThrows(
+              tx ->
+                  assertThat(
+                      tracking.selectNextInTopics(tx, 100, now.plusMillis(1)),
+                      containsInAnyOrder(entry11, entry23, entry33, entry51)));
+    }
+  }
+
+  @Test
+  void testTakeLastSupersededOnSave() throws Exception {
+    Assumptions.assumeTrue(
+        persistor() instanceof DefaultPersistor && dialect().getLockSuperseded() != null,
+        "Persistor does not supersede records on save");
+    var entry1 = createEntry("FOO1", now, false, "GROUP1", true);
+    var entry2 = createEntry("FOO2", now, false, "GROUP1", true);
+    var entry3 = createEntry("FOO3", now, false, "GROUP1", false);
+    var entry4 = createEntry("FOO4", now, false, "GROUP1", true);
+    var deferred1 = createEntry("FOO5", now, false, "GROUP2", true);
+    var deferred2 = createEntry("FOO6", now, false, "GROUP2", true);
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry1));
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry2);
+              persistor().save(tx, entry3);
+              persistor().saveBatch(tx, List.of(deferred1, deferred2));
+            });
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().selectNextInTopics(tx, 100, now.plusMillis(1)),
+                    containsInAnyOrder(matches(entry2), matches(deferred2))));
+
+    // Only take-last records are superseded
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry4));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().selectNextInTopics(tx, 100, now.plusMillis(1)),
+                    containsInAnyOrder(matches(entry3), matches(deferred2))));
+  }
+
+  @Test
+  void testTakeLastSupersededWhileLocked() throws Exception {
+    var entry1 = createEntry("FOO1", now, false, "GROUP1", true);
+    var entry2 = createEntry("FOO2", now, false, "GROUP1", true);
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry1));
+
+    var gotLockLatch = new CountDownLatch(1);
+    var executorService = Executors.newFixedThreadPool(2);
+    try {
+      // Hold the lock on the older record, as if it were being processed
+      Future<?> future =
+          executorService.submit(
+              () -> {
+                txManager()
+                    .inTransactionThrows(
+                        tx -> {
+                          assertTrue(persistor().lock(tx, entry1));
+                          gotLockLatch.countDown();
+                          expectTobeInterrupted();
+                        });
+                return null;
+              });
+      assertTrue(gotLockLatch.await(10, TimeUnit.SECONDS));
+
+      // Saving a newer record must not wait for the lock
+      executorService
+          .submit(
+              () -> {
+                txManager().inTransactionThrows(tx -> persistor().save(tx, entry2));
+                return null;
+              })
+          .get(5, TimeUnit.SECONDS);
+
+      future.cancel(true);
+      assertThrows(CancellationException.class, future::get);
+    } finally {
+      executorService.shutdown();
+      assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    // Whether or not the older record was skipped on save, the sweep removes it
+    txManager()
+        .inTransactionThrows(
+            tx -> persistorSweepingOutdatedOnEveryFlush().deleteOutdatedInAllTopics(tx));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    persistor().selectNextInTopics(tx, 100, now.plusMillis(1)),
+                    contains(matches(entry2))));
+  }
+
+  @Test
+  void testIdleTopicsDeactivated() throws Exception {
+    var tracking = persistorTrackingActiveTopics();
+    Assumptions.assumeTrue(tracking != null, "Persistor does not track active topics");
+    var entry1 = createEntry("FOO1", now, false, "topic1", false);
+    var entry2 = createEntry("FOO2", now, false, "topic2", false);
+    var entry3 = createEntry("FOO3", now, false, "topic1", false);
+    txManager()
+        .inTransactionThrows(
+            tx -> {
+              persistor().save(tx, entry1);
+              persistor().save(tx, entry2);
+            });
+    txManager().inTransactionThrows(tx -> persistor().delete(tx, entry1));
+
+    assertThat(tracking.deactivateIdleTopics(txManager(), 1000), greaterThanOrEqualTo(1));
+    assertEquals(0, tracking.deactivateIdleTopics(txManager(), 1000));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    tracking.selectNextInTopics(tx, 100, now.plusMillis(1)),
+                    contains(matches(entry2))));
+
+    // Scheduling work reactivates the topic
+    txManager().inTransactionThrows(tx -> persistor().save(tx, entry3));
+    txManager()
+        .inTransactionThrows(
+            tx ->
+                assertThat(
+                    tracking.selectNextInTopics(tx, 100, now.plusMillis(1)),
+                    containsInAnyOrder(matches(entry2), matches(entry3))));
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but sweeping outdated records on every
+   * flush.
+   *
+   * @return The persistor.
+   */
+  protected Persistor persistorSweepingOutdatedOnEveryFlush() {
+    if (persistor() instanceof DefaultPersistor) {
+      return DefaultPersistor.builder().dialect(dialect()).outdatedSweepInterval(1).build();
+    }
+    return persistor();
+  }
+
+  /**
+   * Creates a persistor equivalent to {@link #persistor()} but tracking active topics.
+   *
+   * @return The persistor, or null if this is not supported.
+   */
+  protected Persistor persistorTrackingActiveTopics() {
+    if (persistor() instanceof DefaultPersistor) {
+      return DefaultPersistor.builder().dialect(dialect()).trackActiveTopics(true).build();
+    }
+    return null;
   }
 
   private TransactionOutboxEntry createEntry(String id, Instant nextAttemptTime, boolean blocked) {
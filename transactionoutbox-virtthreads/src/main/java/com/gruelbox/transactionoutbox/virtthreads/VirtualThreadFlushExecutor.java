@@ -0,0 +1,33 @@
+package com.gruelbox.transactionoutbox.virtthreads;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An {@link Executor} for {@link TransactionOutbox#flush(Executor)} which runs each flush query on
+ * its own virtual thread, so that they run in parallel without tying up platform threads while
+ * waiting on the database.
+ *
+ * <pre>while (outbox.flush(new VirtualThreadFlushExecutor())) {}</pre>
+ */
+public final class VirtualThreadFlushExecutor implements Executor {
+
+  private final ThreadFactory threadFactory;
+
+  public VirtualThreadFlushExecutor() {
+    this("transaction-outbox-flush-");
+  }
+
+  /**
+   * @param threadNamePrefix The prefix for the names of the virtual threads created.
+   */
+  public VirtualThreadFlushExecutor(String threadNamePrefix) {
+    this.threadFactory = Thread.ofVirtual().name(threadNamePrefix, 0).factory();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    threadFactory.newThread(command).start();
+  }
+}
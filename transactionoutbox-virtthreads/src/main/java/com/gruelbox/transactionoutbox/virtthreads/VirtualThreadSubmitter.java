@@ -0,0 +1,128 @@
+package com.gruelbox.transactionoutbox.virtthreads;
+
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.spi.Utils;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+
+/**
+ * Runs each piece of work on its own virtual thread. This suits work which spends most of its time
+ * blocked (on HTTP calls, for example), where {@link Submitter#withDefaultExecutor()}, with a
+ * platform thread pool sized to the number of CPUs, would cap throughput at a handful of concurrent
+ * calls.
+ *
+ * <p>Rather than queueing work in memory, the number of tasks in flight at once is capped by a
+ * {@link Semaphore}. Work submitted beyond that limit is left in the database and picked up by
+ * {@link TransactionOutbox#flush()} once capacity is available, so the database absorbs all
+ * backpressure.
+ *
+ * <p>Usage:
+ *
+ * <pre>TransactionOutbox.builder()
+ *     ...
+ *     .submitter(VirtualThreadSubmitter.builder().maxConcurrency(1000).build())
+ *     .build();</pre>
+ */
+@Slf4j
+public class VirtualThreadSubmitter implements Submitter {
+
+  private final Semaphore permits;
+  private final ThreadFactory threadFactory;
+  private final Level logLevelWorkQueueSaturation;
+
+  /**
+   * @param maxConcurrency The maximum number of tasks (or batches of tasks) which may run at once.
+   *     Defaults to 1024.
+   * @param threadNamePrefix The prefix for the names of the virtual threads created. Defaults to
+   *     {@code transaction-outbox-}.
+   * @param logLevelWorkQueueSaturation The log level to use when work submission hits {@code
+   *     maxConcurrency}. This usually indicates saturation and may be of greater interest than the
+   *     default {@code DEBUG} level.
+   */
+  @Builder
+  VirtualThreadSubmitter(
+      Integer maxConcurrency, String threadNamePrefix, Level logLevelWorkQueueSaturation) {
+    int permitCount = maxConcurrency == null ? 1024 : maxConcurrency;
+    if (permitCount < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be at least 1");
+    }
+    this.permits = new Semaphore(permitCount);
+    this.threadFactory =
+        Thread.ofVirtual()
+            .name(threadNamePrefix == null ? "transaction-outbox-" : threadNamePrefix, 0)
+            .factory();
+    this.logLevelWorkQueueSaturation =
+        logLevelWorkQueueSaturation == null ? Level.DEBUG : logLevelWorkQueueSaturation;
+  }
+
+  @Override
+  public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+    if (!permits.tryAcquire()) {
+      Utils.logAtLevel(
+          log,
+          logLevelWorkQueueSaturation,
+          "Queued {} for processing when capacity is available",
+          entry.description());
+      return;
+    }
+    if (start(() -> localExecutor.accept(entry))) {
+      log.debug("Submitted {} for immediate processing", entry.description());
+    }
+  }
+
+  @Override
+  public void submitBatch(
+      List<TransactionOutboxEntry> entries, Consumer<List<TransactionOutboxEntry>> localExecutor) {
+    if (!permits.tryAcquire()) {
+      Utils.logAtLevel(
+          log,
+          logLevelWorkQueueSaturation,
+          "Queued batch of {} for processing when capacity is available",
+          entries.size());
+      return;
+    }
+    if (start(() -> localExecutor.accept(entries))) {
+      log.debug("Submitted batch of {} for immediate processing", entries.size());
+    }
+  }
+
+  /**
+   * @return The number of further tasks which may be submitted before reaching the concurrency
+   *     limit.
+   */
+  public int availablePermits() {
+    return permits.availablePermits();
+  }
+
+  @Override
+  public int availableCapacity() {
+    return availablePermits();
+  }
+
+  private boolean start(Runnable work) {
+    try {
+      threadFactory
+          .newThread(
+              () -> {
+                try {
+                  work.run();
+                } finally {
+                  permits.release();
+                }
+              })
+          .start();
+      return true;
+    } catch (Exception e) {
+      permits.release();
+      log.warn("Failed to submit work for execution. It will be re-attempted later.", e);
+      return false;
+    }
+  }
+}
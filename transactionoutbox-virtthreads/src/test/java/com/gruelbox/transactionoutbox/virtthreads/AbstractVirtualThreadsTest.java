@@ -12,6 +12,7 @@ import java.time.Duration;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
@@ -31,6 +32,20 @@ abstract class AbstractVirtualThreadsTest extends BaseTest {
   @Test
   @ShouldNotPin
   final void highVolumeVirtualThreads() throws Exception {
+    highVolume(
+        Submitter.withExecutor(r -> Thread.ofVirtual().name(UUID.randomUUID().toString()).start(r)),
+        null);
+  }
+
+  @Test
+  @ShouldNotPin
+  final void highVolumeVirtualThreadSubmitter() throws Exception {
+    highVolume(
+        VirtualThreadSubmitter.builder().maxConcurrency(16).build(),
+        new VirtualThreadFlushExecutor());
+  }
+
+  private void highVolume(Submitter submitter, Executor flushExecutor) throws Exception {
     var count = 10;
     var latch = new CountDownLatch(count * 10);
     var transactionManager = txManager();
@@ -41,9 +56,7 @@ abstract class AbstractVirtualThreadsTest extends BaseTest {
             .transactionManager(transactionManager)
             .persistor(Persistor.forDialect(connectionDetails().dialect()))
             .instantiator(Instantiator.using(clazz -> (InterfaceProcessor) (foo, bar) -> {}))
-            .submitter(
-                Submitter.withExecutor(
-                    r -> Thread.ofVirtual().name(UUID.randomUUID().toString()).start(r)))
+            .submitter(submitter)
             .attemptFrequency(Duration.ofMillis(500))
             .flushBatchSize(1000)
             .listener(
@@ -62,8 +75,7 @@ abstract class AbstractVirtualThreadsTest extends BaseTest {
     var parallelism = System.getProperty(VIRTUAL_THREAD_SCHEDULER_PARALLELISM);
     System.setProperty(VIRTUAL_THREAD_SCHEDULER_PARALLELISM, "1");
     try {
-      withRunningFlusher(
-          outbox,
+      ThrowingRunnable work =
           () -> {
             var futures =
                 IntStream.range(0, count)
@@ -86,7 +98,12 @@ abstract class AbstractVirtualThreadsTest extends BaseTest {
               future.get(20, TimeUnit.SECONDS);
             }
             assertTrue(latch.await(30, TimeUnit.SECONDS), "Latch not opened in time");
-          });
+          };
+      if (flushExecutor == null) {
+        withRunningFlusher(outbox, work);
+      } else {
+        withRunningFlusher(outbox, work, flushExecutor);
+      }
     } finally {
       if (parallelism == null) {
         System.clearProperty(VIRTUAL_THREAD_SCHEDULER_PARALLELISM);